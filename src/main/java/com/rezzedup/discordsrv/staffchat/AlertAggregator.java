@@ -0,0 +1,280 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.config.MessagesConfig;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+import com.rezzedup.discordsrv.staffchat.util.MappedPlaceholder;
+import com.rezzedup.discordsrv.staffchat.util.Strings;
+
+import github.scarsz.discordsrv.dependencies.jda.api.entities.TextChannel;
+import net.md_5.bungee.api.ChatColor;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Collapses repeated alerts (same source, subject, and type) into a single
+ * announcement per window. The first occurrence is announced on the next flush,
+ * the Discord message is edited in place while the window is open (at most
+ * once per edit interval), and a final summary is sent once the window closes.
+ *
+ * <p>Alerts are posted to Discord through the outbox by the server that posts
+ * staff chat. Other servers in a cluster relay only the final summary, since
+ * they can't edit the leader's message.</p>
+ */
+public class AlertAggregator {
+	record AlertKey(String source, String subject, String type) {}
+
+	// How long a closed window may wait for Discord before its final edit is given up on.
+	private static final long FINISH_TIMEOUT_MILLIS = 60_000;
+
+	private static final class Window {
+		private final AlertKey key;
+		private final long startedAt;
+
+		// Only changed inside windows.compute(), so nothing is counted after the window is removed.
+		private volatile int count = 0;
+
+		// Only touched by the flush task.
+		private int announced = 0;
+		private boolean posted = false;
+		private long lastEdit = 0;
+
+		// Written by JDA callbacks.
+		private volatile @NullOr String discordMessageId;
+		private volatile int shownOnDiscord = 0;
+		private volatile boolean editing = false;
+
+		Window(AlertKey key, long startedAt) {
+			this.key = key;
+			this.startedAt = startedAt;
+		}
+	}
+
+	private final StaffChatPlugin plugin;
+	private final Map<AlertKey, Window> windows = new ConcurrentHashMap<>(64);
+	private final List<Window> finishing = new ArrayList<>(); // Only touched by the flush task.
+	private final AtomicInteger suppressed = new AtomicInteger();
+
+	private volatile long windowMillis;
+	private volatile long editIntervalMillis;
+	private volatile int maxTracked;
+	private @NullOr MyScheduledTask task;
+
+	AlertAggregator(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		reload();
+	}
+
+	public void reload() {
+		windowMillis = Math.max(1, plugin.config().getOrDefault(StaffChatConfig.ALERT_WINDOW_SECONDS)) * 1000L;
+		editIntervalMillis = Math.max(1, plugin.config().getOrDefault(StaffChatConfig.ALERT_DISCORD_EDIT_INTERVAL_SECONDS)) * 1000L;
+		maxTracked = Math.max(1, plugin.config().getOrDefault(StaffChatConfig.ALERT_MAX_TRACKED));
+
+		cancelTask();
+		long period = Math.max(1, plugin.config().getOrDefault(StaffChatConfig.ALERT_FLUSH_INTERVAL_TICKS));
+		task = StaffChatPlugin.getScheduler().runTaskTimer(this::flush, period, period);
+	}
+
+	public void end() {
+		cancelTask();
+		windows.clear();
+		finishing.clear();
+	}
+
+	private void cancelTask() {
+		if (task != null && !task.isCancelled()) {
+			try { task.cancel(); } catch (Throwable ignored) {}
+		}
+	}
+
+	public void submit(String source, String subject, String type) {
+		AlertKey key = new AlertKey(
+			Objects.requireNonNull(source, "source"),
+			Objects.requireNonNull(subject, "subject"),
+			Objects.requireNonNull(type, "type")
+		);
+
+		boolean[] tracked = {true};
+
+		windows.compute(key, (k, window) -> {
+			if (window == null) {
+				if (windows.size() >= maxTracked) {
+					tracked[0] = false;
+					return null;
+				}
+				window = new Window(k, System.currentTimeMillis());
+			}
+			window.count++;
+			return window;
+		});
+
+		if (!tracked[0]) {
+			suppressed.incrementAndGet();
+		}
+	}
+
+	private void flush() {
+		long now = System.currentTimeMillis();
+
+		// Closed windows still waiting on Discord for their final edit.
+		finishing.removeIf(window ->
+			updateDiscord(window, window.count, windowMillis, now, true)
+				|| now - window.startedAt >= windowMillis + FINISH_TIMEOUT_MILLIS
+		);
+
+		for (AlertKey key : windows.keySet()) {
+			Window[] removed = {null};
+
+			@NullOr Window open = windows.computeIfPresent(key, (k, window) -> {
+				if (now - window.startedAt < windowMillis) {
+					return window;
+				}
+				removed[0] = window;
+				return null;
+			});
+
+			@NullOr Window window = (open != null) ? open : removed[0];
+			if (window == null) {
+				continue;
+			}
+
+			// Once removed, submissions go to a new window, so this count is final.
+			boolean closed = open == null;
+			int count = window.count;
+			long elapsed = Math.min(windowMillis, now - window.startedAt);
+
+			if (count != window.announced && (window.announced == 0 || closed)) {
+				announceInGame(window, count, elapsed);
+				window.announced = count;
+			}
+
+			if (!updateDiscord(window, count, elapsed, now, closed) && closed) {
+				finishing.add(window);
+			}
+		}
+
+		int dropped = suppressed.getAndSet(0);
+		if (dropped > 0) {
+			plugin.debug(getClass()).log("Alerts", () ->
+				"Suppressed " + dropped + " alert(s): already tracking " + maxTracked + " distinct alerts"
+			);
+		}
+	}
+
+	private MappedPlaceholder placeholders(Window window, int count, long elapsedMillis) {
+		MappedPlaceholder placeholders = plugin.messages().placeholders();
+		placeholders.map("source").to(window.key::source);
+		placeholders.map("subject", "player").to(window.key::subject);
+		placeholders.map("type", "check").to(window.key::type);
+		placeholders.map("count").to(() -> count);
+		placeholders.map("seconds").to(() -> Math.max(1L, (elapsedMillis + 999L) / 1000L));
+
+		String alert = placeholders.update(plugin.messages().getOrDefault(
+			(count > 1) ? MessagesConfig.ALERT_SUMMARY_FORMAT : MessagesConfig.ALERT_FIRST_FORMAT
+		));
+		placeholders.map("alert", "message").to(() -> alert);
+
+		return placeholders;
+	}
+
+	private void announceInGame(Window window, int count, long elapsedMillis) {
+		plugin.processor().processAlert(placeholders(window, count, elapsedMillis));
+	}
+
+	private String discordContent(Window window, int count, long elapsedMillis) {
+		return ChatColor.stripColor(Strings.colorful(
+			placeholders(window, count, elapsedMillis).update(
+				plugin.messages().getOrDefault(MessagesConfig.DISCORD_ALERT_FORMAT)
+			)
+		));
+	}
+
+	/**
+	 * Brings the window's Discord message up to date, if it's time to.
+	 *
+	 * @return {@code true} if there's nothing left to send for this count
+	 */
+	private boolean updateDiscord(Window window, int count, long elapsedMillis, long now, boolean closed) {
+		if (count == window.shownOnDiscord) {
+			return true;
+		}
+
+		ChatChannel staff = plugin.channels().staff();
+
+		if (!plugin.discordEgress().isLeader(staff)) {
+			if (closed && plugin.discordEgress().isElecting()) {
+				// The leader posts it like any other relayed console message.
+				plugin.cluster().publishConsole(staff, discordContent(window, count, elapsedMillis));
+			}
+			return true;
+		}
+
+		if (!window.posted) {
+			window.posted = true;
+			window.lastEdit = now;
+			int shown = count;
+
+			plugin.discordOutbox().send(
+				DiscordOutbox.Outbound.raw(staff.discordChannel(), discordContent(window, count, elapsedMillis)),
+				messageId -> {
+					window.discordMessageId = messageId;
+					window.shownOnDiscord = shown;
+				}
+			);
+			return false;
+		}
+
+		// Edits are throttled, the last one included, to stay clear of Discord's rate limits.
+		@NullOr String messageId = window.discordMessageId;
+		if (messageId == null || window.editing || now - window.lastEdit < editIntervalMillis) {
+			return false;
+		}
+
+		@NullOr TextChannel channel = plugin.getDiscordChannelOrNull(staff);
+		if (channel == null) {
+			return false;
+		}
+
+		window.editing = true;
+		window.lastEdit = now;
+		int shown = count;
+
+		channel.editMessageById(messageId, discordContent(window, count, elapsedMillis)).queue(
+			edited -> {
+				window.shownOnDiscord = shown;
+				window.editing = false;
+			},
+			error -> window.editing = false
+		);
+		return false;
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.rezzedup.discordsrv.staffchat.audit.AuditRecord;
+import com.rezzedup.discordsrv.staffchat.audit.AuditStore;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * A durable record of every message accepted in a channel, for moderation
+ * appeals. Messages are recorded after event listeners had their say, and
+ * handed to a writer thread through a bounded queue: recording never
+ * blocks, if the writer falls behind the queue fills up and messages are
+ * counted as dropped instead.
+ */
+public class AuditLog {
+	private static final long FORCE_INTERVAL_MILLIS = 1000;
+	private static final long HOUSEKEEPING_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	private final StaffChatPlugin plugin;
+	private final AtomicInteger dropped = new AtomicInteger();
+
+	private volatile boolean enabled;
+	private volatile @NullOr AuditStore store;
+	private volatile @NullOr Consumer<AuditRecord> indexer;
+	private volatile @NullOr BlockingQueue<AuditRecord> queue;
+	private @NullOr Future<?> writer;
+	private @NullOr AtomicBoolean stopping;
+
+	AuditLog(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		reload();
+	}
+
+	public synchronized void reload() {
+		@NullOr Future<?> previous = stop();
+
+		enabled = plugin.config().getOrDefault(StaffChatConfig.AUDIT_ENABLED);
+		if (!enabled) {
+			return;
+		}
+
+		int segmentKilobytes = Math.max(1024, plugin.config().getOrDefault(StaffChatConfig.AUDIT_SEGMENT_SIZE_KB));
+		AuditStore opened = new AuditStore(plugin.directory().resolve("audit"), segmentKilobytes * 1024, ZoneId.systemDefault());
+		BlockingQueue<AuditRecord> pending = new ArrayBlockingQueue<>(
+			Math.max(1, plugin.config().getOrDefault(StaffChatConfig.AUDIT_QUEUE_CAPACITY))
+		);
+
+		AtomicBoolean stop = new AtomicBoolean();
+
+		store = opened;
+		queue = pending;
+		stopping = stop;
+
+		writer = plugin.io().submit(() -> {
+			// Waits here rather than on the server thread: both would write to the same segments.
+			if (previous != null) {
+				awaitStopped(previous, Long.MAX_VALUE);
+			}
+			write(opened, pending, stop);
+		});
+	}
+
+	/**
+	 * Stops the writer after it has written everything already queued,
+	 * waiting until the shutdown deadline.
+	 */
+	public void end() {
+		@NullOr Future<?> running = stop();
+		if (running != null) {
+			awaitStopped(running, plugin.shutdown().remainingMillis());
+		}
+	}
+
+	/**
+	 * Tells the writer to stop once it has written everything already
+	 * queued, without waiting for it.
+	 *
+	 * @return the stopping writer, or {@code null} if there was none
+	 */
+	private synchronized @NullOr Future<?> stop() {
+		@NullOr Future<?> running = writer;
+		enabled = false;
+		writer = null;
+
+		if (stopping != null) {
+			// Not an interrupt: that would close the store's file channels mid-write.
+			stopping.set(true);
+		}
+
+		int lost = dropped.getAndSet(0);
+		if (lost > 0) {
+			plugin.getLogger().warning("Audit log dropped " + lost + " message(s) because the writer couldn't keep up");
+		}
+		return running;
+	}
+
+	private void awaitStopped(Future<?> running, long timeoutMillis) {
+		try {
+			running.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			plugin.getLogger().warning("Audit log writer did not stop cleanly: " + e);
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Hands every written record to {@code indexer} on the writer thread,
+	 * or stops doing so when it's {@code null}.
+	 */
+	public void indexWith(@NullOr Consumer<AuditRecord> indexer) {
+		this.indexer = indexer;
+	}
+
+	private void write(AuditStore target, BlockingQueue<AuditRecord> pending, AtomicBoolean stop) {
+		long nextForce = System.currentTimeMillis() + FORCE_INTERVAL_MILLIS;
+		long nextHousekeeping = System.currentTimeMillis();
+
+		try {
+			// Once stopped, finish writing what's queued.
+			while (!stop.get() || !pending.isEmpty()) {
+				long now = System.currentTimeMillis();
+
+				if (!stop.get() && now >= nextHousekeeping) {
+					housekeep(target);
+					nextHousekeeping = now + HOUSEKEEPING_INTERVAL_MILLIS;
+				}
+
+				@NullOr AuditRecord record;
+				try {
+					record = pending.poll(Math.max(1, nextForce - now), TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				if (record != null) {
+					boolean written = false;
+					try {
+						target.append(record);
+						written = true;
+					} catch (IOException | RuntimeException e) {
+						plugin.getLogger().warning("Could not write to the audit log: " + e);
+					}
+
+					@NullOr Consumer<AuditRecord> index = indexer;
+					if (written && index != null) {
+						index.accept(record);
+					}
+				}
+
+				if (System.currentTimeMillis() >= nextForce) {
+					target.force();
+					nextForce = System.currentTimeMillis() + FORCE_INTERVAL_MILLIS;
+				}
+			}
+		} finally {
+			target.close();
+		}
+	}
+
+	private void housekeep(AuditStore target) {
+		try {
+			List<String> problems = target.housekeep(
+				LocalDate.now(),
+				plugin.config().getOrDefault(StaffChatConfig.AUDIT_RETENTION_DAYS),
+				plugin.config().getOrDefault(StaffChatConfig.AUDIT_COMPRESS_AFTER_DAYS)
+			);
+			for (String problem : problems) {
+				plugin.debug(getClass()).log("Audit", () -> "Housekeeping skipped " + problem);
+			}
+		} catch (IOException e) {
+			plugin.getLogger().warning("Could not clean up old audit log segments: " + e);
+		}
+	}
+
+	void record(ChatChannel channel, ChatService source, @NullOr UUID author, String authorName, String text) {
+		@NullOr BlockingQueue<AuditRecord> pending = queue;
+		if (!enabled || pending == null) {
+			return;
+		}
+
+		AuditRecord record = new AuditRecord(
+			System.currentTimeMillis(), (byte) source.ordinal(), author, channel.name(), authorName, text
+		);
+
+		if (!pending.offer(record)) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Visits recorded messages between two times (epoch millis, inclusive)
+	 * in the order they were recorded. Reads from disk, so call it off the
+	 * server thread.
+	 *
+	 * @param visitor returns {@code false} to stop early
+	 */
+	public void scan(long from, long to, Predicate<AuditRecord> visitor) throws IOException {
+		@NullOr AuditStore current = store;
+		if (current != null) {
+			current.scan(from, to, visitor);
+		}
+	}
+}
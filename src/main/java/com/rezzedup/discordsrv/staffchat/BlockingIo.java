@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The plugin's own executor for blocking I/O: Discord sends, file writes,
+ * HTTP requests and storage. Every task gets its own virtual thread, so
+ * slow calls don't tie up the server's shared async threads, and shutting
+ * down waits for everything the plugin started.
+ */
+public class BlockingIo implements Executor {
+	private final StaffChatPlugin plugin;
+	private final ExecutorService executor =
+		Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("staffchat-io-", 0).factory());
+	private final AtomicInteger running = new AtomicInteger();
+
+	BlockingIo(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		submit(task);
+	}
+
+	/**
+	 * Starts a task that may block, including long-running loops that check
+	 * for their own stop condition.
+	 *
+	 * @throws RejectedExecutionException after {@link #end(long)}
+	 */
+	public Future<?> submit(Runnable task) {
+		running.incrementAndGet();
+		try {
+			return executor.submit(() -> {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					plugin.getLogger().warning("Background task failed: " + e);
+				} finally {
+					running.decrementAndGet();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			running.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates an executor that runs its tasks one at a time, in order, on
+	 * this executor's threads (e.g. for appending to a file).
+	 */
+	public Serial serial() {
+		return new Serial();
+	}
+
+	/**
+	 * Stops accepting tasks and waits for running ones. Tasks still running
+	 * after the timeout are interrupted.
+	 */
+	public void end(long timeoutMillis) {
+		executor.shutdown();
+		try {
+			if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		int unfinished = running.get();
+		executor.shutdownNow();
+		if (unfinished > 0) {
+			plugin.getLogger().warning("Interrupted " + unfinished + " background task(s) that didn't finish in time");
+		}
+	}
+
+	public final class Serial implements Executor {
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		private boolean draining; // Guarded by this.
+
+		private Serial() {}
+
+		@Override
+		public void execute(Runnable task) {
+			tasks.add(task);
+			schedule();
+		}
+
+		private synchronized void schedule() {
+			if (draining || tasks.isEmpty()) {
+				return;
+			}
+			try {
+				submit(this::drain);
+				draining = true;
+			} catch (RejectedExecutionException e) {
+				// Shut down: await() reports these as dropped.
+			}
+		}
+
+		private void drain() {
+			try {
+				for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+					task.run();
+				}
+			} finally {
+				synchronized (this) {
+					draining = false;
+					// Picks up tasks added while this was finishing.
+					schedule();
+					notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Waits until every task has run.
+		 *
+		 * @return the number of tasks dropped because they didn't run in time
+		 */
+		public int await(long timeoutMillis) {
+			long deadline = System.currentTimeMillis() + timeoutMillis;
+			synchronized (this) {
+				try {
+					// Once nothing is draining, whatever is left can't be run anymore.
+					for (long remaining = timeoutMillis; draining && remaining > 0; remaining = deadline - System.currentTimeMillis()) {
+						wait(remaining);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			int dropped = tasks.size();
+			tasks.clear();
+			return dropped;
+		}
+	}
+}
@@ -0,0 +1,547 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.bukkit.entity.Player;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import com.rezzedup.discordsrv.staffchat.DiscordOutbox.Outbound;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.cluster.ClusterTransport;
+import com.rezzedup.discordsrv.staffchat.cluster.LoopbackTransport;
+import com.rezzedup.discordsrv.staffchat.cluster.PluginMessagingTransport;
+import com.rezzedup.discordsrv.staffchat.cluster.RelayMessage;
+import com.rezzedup.discordsrv.staffchat.cluster.TcpTransport;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+import com.rezzedup.discordsrv.staffchat.util.Strings;
+
+import github.scarsz.discordsrv.dependencies.jda.api.entities.User;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Shares messages accepted on this server with the other servers in a
+ * network, and shows theirs here. Outgoing messages wait in a bounded queue
+ * and are sent in batches off the server thread; if the transport can't keep
+ * up, the queue fills and new messages are dropped rather than piling up.
+ * Received messages are shown in-game and never relayed again; they only go
+ * to Discord from here if this server is the channel's Discord egress leader.
+ *
+ * <p>A follower's message only counts as forwarded to Discord once the
+ * leader acknowledges it. Until then a copy is kept, and it's posted from
+ * here if no ack arrives within a lease, if the message couldn't be queued,
+ * or if the relay stops first. A lost ack means the message is posted
+ * twice, never that it's lost.</p>
+ */
+public class ClusterRelay {
+	private static final int MAX_REMEMBERED_IDS = 4096;
+	private static final int MAX_AWAITING_ACK = 4096;
+
+	private record AwaitingAck(Outbound fallback, long deadline) {}
+
+	private final StaffChatPlugin plugin;
+	private final AtomicInteger dropped = new AtomicInteger();
+	private final AtomicBoolean flushing = new AtomicBoolean();
+
+	private final Set<UUID> seen = Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+			return size() > MAX_REMEMBERED_IDS;
+		}
+	}));
+
+	// Followers' messages that the Discord egress leader hasn't acknowledged yet.
+	private final Map<UUID, AwaitingAck> awaitingAck = new ConcurrentHashMap<>();
+
+	private volatile BlockingQueue<RelayMessage> queue = new ArrayBlockingQueue<>(1);
+	private volatile @NullOr ClusterTransport transport;
+	private volatile String serverName = "";
+	private volatile int batchSize;
+	private volatile long ackTimeoutMillis;
+
+	// Only touched while flushing, which is serialized by the flush lock.
+	private final Object flushLock = new Object();
+	private @NullOr byte[] unsent;
+	private @NullOr ClusterTransport unsentVia;
+
+	private @NullOr MyScheduledTask task;
+
+	ClusterRelay(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		reload();
+	}
+
+	public synchronized void reload() {
+		// Doesn't wait for the last flush, which may sit in connect timeouts.
+		stop();
+
+		if (!plugin.config().getOrDefault(StaffChatConfig.CLUSTER_ENABLED)) {
+			return;
+		}
+
+		serverName = configuredServerName(plugin);
+		batchSize = Math.max(1, plugin.config().getOrDefault(StaffChatConfig.CLUSTER_BATCH_SIZE));
+		ackTimeoutMillis = Math.max(1000, plugin.config().getOrDefault(StaffChatConfig.EGRESS_LEASE_MILLIS));
+
+		// The previous queue is still being sent through the previous transport.
+		queue = new ArrayBlockingQueue<>(Math.max(1, plugin.config().getOrDefault(StaffChatConfig.CLUSTER_QUEUE_CAPACITY)));
+
+		@NullOr ClusterTransport created = createTransport(plugin.config().getOrDefault(StaffChatConfig.CLUSTER_TRANSPORT));
+		if (created == null) {
+			return;
+		}
+
+		try {
+			created.start(this::receive);
+		} catch (IOException | RuntimeException e) {
+			plugin.getLogger().warning("Could not start cluster relay: " + e);
+			created.close();
+			return;
+		}
+
+		transport = created;
+		task = scheduleFlush();
+		plugin.getLogger().info("Relaying chat to other servers as: " + serverName);
+	}
+
+	private MyScheduledTask scheduleFlush() {
+		// Sending may block on connecting to peers, so it runs on the plugin's own threads, one flush at a time.
+		return StaffChatPlugin.getScheduler().runTaskTimer(() -> {
+			if (flushing.compareAndSet(false, true)) {
+				plugin.io().execute(() -> {
+					try {
+						@NullOr ClusterTransport current = transport;
+						if (current != null) {
+							flush(current, queue);
+						}
+					} finally {
+						flushing.set(false);
+					}
+				});
+			}
+		}, 1L, 1L);
+	}
+
+	/**
+	 * This server's name within the network. Unless configured, a random
+	 * name is generated once and kept in the plugin directory: names based
+	 * on the port would collide, since backends often share the same one.
+	 */
+	static String configuredServerName(StaffChatPlugin plugin) {
+		String configured = plugin.config().getOrDefault(StaffChatConfig.CLUSTER_SERVER_NAME).trim();
+		if (!configured.isEmpty()) {
+			return configured;
+		}
+
+		Path file = plugin.directory().resolve("server-name");
+		try {
+			if (Files.isRegularFile(file)) {
+				String stored = Files.readString(file, StandardCharsets.UTF_8).trim();
+				if (!stored.isEmpty()) {
+					return stored;
+				}
+			}
+
+			String generated = "server-" + UUID.randomUUID();
+			Files.createDirectories(file.getParent());
+			Files.writeString(file, generated, StandardCharsets.UTF_8);
+			plugin.getLogger().info("Generated cluster server name \"" + generated + "\" (set cluster.server-name to choose one)");
+			return generated;
+		} catch (IOException e) {
+			String generated = "server-" + UUID.randomUUID();
+			plugin.getLogger().warning(
+				"Could not store the generated cluster server name, using \"" + generated + "\" until restart: " + e.getMessage()
+			);
+			return generated;
+		}
+	}
+
+	private @NullOr ClusterTransport createTransport(String name) {
+		switch (name.trim().toLowerCase(Locale.ROOT)) {
+			case "tcp":
+				int port = plugin.config().getOrDefault(StaffChatConfig.CLUSTER_TCP_PORT);
+				if (plugin.config().getOrDefault(StaffChatConfig.CLUSTER_TCP_SECRET).isEmpty()) {
+					plugin.getLogger().warning("Cluster relay over TCP needs a shared secret: set cluster.tcp.secret on every server");
+					return null;
+				}
+				try {
+					return new TcpTransport(
+						TcpTransport.parseAddress(plugin.config().getOrDefault(StaffChatConfig.CLUSTER_TCP_BIND), port),
+						Arrays.stream(plugin.config().getOrDefault(StaffChatConfig.CLUSTER_TCP_PEERS).split(","))
+							.filter(peer -> !Strings.isEmptyOrNull(peer.trim()))
+							.map(peer -> TcpTransport.parseAddress(peer, port))
+							.toList(),
+						plugin.config().getOrDefault(StaffChatConfig.CLUSTER_TCP_SECRET),
+						plugin.io(),
+						plugin.getLogger()
+					);
+				} catch (IllegalArgumentException e) {
+					plugin.getLogger().warning("Invalid cluster relay TCP address: " + e.getMessage());
+					return null;
+				}
+			case "plugin-messaging":
+				return new PluginMessagingTransport(plugin);
+			case "loopback":
+				return new LoopbackTransport.Hub().connect();
+			default:
+				plugin.getLogger().warning("Unknown cluster relay transport: " + name + " (expected: tcp, plugin-messaging, loopback)");
+				return null;
+		}
+	}
+
+	/**
+	 * Uses the given transport instead of the configured one, e.g. a
+	 * {@link LoopbackTransport} connected to other in-process relays.
+	 */
+	public synchronized void useTransport(String serverName, ClusterTransport replacement) throws IOException {
+		stop();
+		this.serverName = serverName;
+		this.batchSize = Math.max(1, plugin.config().getOrDefault(StaffChatConfig.CLUSTER_BATCH_SIZE));
+		this.ackTimeoutMillis = Math.max(1000, plugin.config().getOrDefault(StaffChatConfig.EGRESS_LEASE_MILLIS));
+		replacement.start(this::receive);
+		transport = replacement;
+		task = scheduleFlush();
+	}
+
+	/**
+	 * Stops relaying, waiting until the shutdown deadline for what's queued
+	 * to be sent.
+	 */
+	public void end() {
+		@NullOr Future<?> closing = stop();
+		if (closing == null) {
+			return;
+		}
+
+		try {
+			closing.get(plugin.shutdown().remainingMillis(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			plugin.getLogger().warning("Cluster relay did not send its queued messages in time: " + e);
+		}
+	}
+
+	/**
+	 * Detaches the transport, then sends what's queued and closes it on the
+	 * plugin's own threads, since sending may block on connecting to peers.
+	 *
+	 * @return the final flush, or {@code null} if the relay wasn't running
+	 */
+	private synchronized @NullOr Future<?> stop() {
+		if (task != null && !task.isCancelled()) {
+			try { task.cancel(); } catch (Throwable ignored) {}
+		}
+		task = null;
+
+		@NullOr ClusterTransport current = transport;
+		BlockingQueue<RelayMessage> pending = queue;
+		transport = null;
+
+		// Nobody can acknowledge these anymore.
+		for (UUID id : List.copyOf(awaitingAck.keySet())) {
+			postUnacknowledged(id, "relay stopped");
+		}
+
+		if (current == null) {
+			return null;
+		}
+
+		Runnable close = () -> {
+			try {
+				flush(current, pending);
+			} finally {
+				synchronized (flushLock) {
+					if (unsentVia == current) {
+						unsent = null;
+						unsentVia = null;
+					}
+				}
+				current.close();
+			}
+		};
+
+		try {
+			return plugin.io().submit(close);
+		} catch (RejectedExecutionException e) {
+			close.run();
+			return null;
+		}
+	}
+
+	public boolean isEnabled() {
+		return transport != null;
+	}
+
+	public String serverName() {
+		return serverName;
+	}
+
+	public void publishConsole(ChatChannel channel, String text) {
+		publishConsole(channel, text, null);
+	}
+
+	/**
+	 * @param unlessAcked posted to Discord from here unless the channel's
+	 *                    egress leader acknowledges the message in time
+	 */
+	public void publishConsole(ChatChannel channel, String text, @NullOr Outbound unlessAcked) {
+		publish(new RelayMessage(
+			idFor(unlessAcked), serverName, channel.name(), RelayMessage.Kind.CONSOLE, null, "", text
+		), unlessAcked);
+	}
+
+	public void publishPlayer(ChatChannel channel, Player author, String text) {
+		publishPlayer(channel, author, text, null);
+	}
+
+	/**
+	 * @param unlessAcked posted to Discord from here unless the channel's
+	 *                    egress leader acknowledges the message in time
+	 */
+	public void publishPlayer(ChatChannel channel, Player author, String text, @NullOr Outbound unlessAcked) {
+		publish(new RelayMessage(
+			idFor(unlessAcked), serverName, channel.name(), RelayMessage.Kind.PLAYER, author.getUniqueId(), author.getName(), text
+		), unlessAcked);
+	}
+
+	// Shares the outbox id, so the leader posts it under the same id as the fallback would.
+	private static UUID idFor(@NullOr Outbound unlessAcked) {
+		return (unlessAcked == null) ? UUID.randomUUID() : unlessAcked.id();
+	}
+
+	public void publishDiscord(ChatChannel channel, User author, String text) {
+		publish(new RelayMessage(
+			UUID.randomUUID(), serverName, channel.name(), RelayMessage.Kind.DISCORD, null, author.getName(), text
+		), null);
+	}
+
+	/**
+	 * Tells the server a message came from that this server, as the
+	 * channel's Discord egress leader, took it for posting.
+	 */
+	void acknowledge(RelayMessage message) {
+		if (transport != null) {
+			queue.offer(new RelayMessage(
+				message.id(), serverName, message.channel(), RelayMessage.Kind.ACK, null, "", message.origin()
+			));
+		}
+	}
+
+	void publishHeartbeat(Set<String> channels) {
+		if (transport != null) {
+			queue.offer(new RelayMessage(
+				UUID.randomUUID(), serverName, "", RelayMessage.Kind.HEARTBEAT, null, "", String.join(",", channels)
+			));
+		}
+	}
+
+	private void publish(RelayMessage message, @NullOr Outbound unlessAcked) {
+		if (transport == null) {
+			if (unlessAcked != null) {
+				plugin.discordOutbox().send(unlessAcked);
+			}
+			return;
+		}
+
+		seen.add(message.id());
+
+		if (unlessAcked != null) {
+			if (awaitingAck.size() < MAX_AWAITING_ACK) {
+				awaitingAck.put(message.id(), new AwaitingAck(unlessAcked, System.currentTimeMillis() + ackTimeoutMillis));
+			} else {
+				plugin.discordOutbox().send(unlessAcked);
+			}
+		}
+
+		if (!queue.offer(message)) {
+			int total = dropped.incrementAndGet();
+			plugin.debug(getClass()).log("Cluster", () ->
+				"Relay queue is full, dropped message " + message.id() + " (" + total + " dropped so far)"
+			);
+			postUnacknowledged(message.id(), "relay queue is full");
+		}
+	}
+
+	private void postUnacknowledged(UUID id, String reason) {
+		@NullOr AwaitingAck awaiting = awaitingAck.remove(id);
+		if (awaiting != null) {
+			plugin.debug(getClass()).log("Cluster", () ->
+				"Posting message " + id + " to Discord from here instead of the egress leader: " + reason
+			);
+			plugin.discordOutbox().send(awaiting.fallback());
+		}
+	}
+
+	private void expireAcks() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<UUID, AwaitingAck> entry : awaitingAck.entrySet()) {
+			if (now >= entry.getValue().deadline()) {
+				postUnacknowledged(entry.getKey(), "no ack within " + ackTimeoutMillis + "ms");
+			}
+		}
+	}
+
+	private void flush(ClusterTransport current, BlockingQueue<RelayMessage> pending) {
+		expireAcks();
+
+		synchronized (flushLock) {
+			while (true) {
+				if (unsent != null && unsentVia != current) {
+					// Left over from the previous transport, whose final flush hasn't run yet.
+					return;
+				}
+
+				byte[] frame = (unsent != null) ? unsent : nextFrame(pending, current.maxFrameSize());
+				if (frame == null) {
+					return;
+				}
+
+				boolean sent;
+				try {
+					sent = current.send(frame);
+				} catch (RuntimeException e) {
+					plugin.debug(getClass()).logException("Cluster", e);
+					sent = false;
+				}
+
+				// Keep the batch for the next attempt; meanwhile the bounded queue provides backpressure.
+				unsent = (sent) ? null : frame;
+				unsentVia = (sent) ? null : current;
+				if (!sent) {
+					return;
+				}
+			}
+		}
+	}
+
+	private @NullOr byte[] nextFrame(BlockingQueue<RelayMessage> pending, int maxFrameSize) {
+		List<byte[]> batch = new ArrayList<>();
+		int bytes = 0;
+
+		while (batch.size() < batchSize) {
+			@NullOr RelayMessage message = pending.peek();
+			if (message == null) {
+				break;
+			}
+
+			byte[] encoded;
+			try {
+				encoded = message.encode();
+			} catch (RuntimeException e) {
+				// Never leave an unencodable message at the head of the queue.
+				pending.poll();
+				dropped.incrementAndGet();
+				plugin.debug(getClass()).logException("Cluster", e);
+				continue;
+			}
+
+			if (RelayMessage.frameSize(batch.size() + 1, bytes + encoded.length) > maxFrameSize) {
+				if (!batch.isEmpty()) {
+					break;
+				}
+				// Too big to ever send.
+				pending.poll();
+				dropped.incrementAndGet();
+				plugin.debug(getClass()).log("Cluster", () -> "Message " + message.id() + " is too large to relay, dropped");
+				continue;
+			}
+
+			pending.poll();
+			batch.add(encoded);
+			bytes += encoded.length;
+		}
+
+		return (batch.isEmpty()) ? null : RelayMessage.frame(batch);
+	}
+
+	private void receive(byte[] frame) {
+		List<RelayMessage> messages;
+		try {
+			messages = RelayMessage.unframe(frame);
+		} catch (IOException e) {
+			plugin.debug(getClass()).log("Cluster", () -> "Discarded invalid frame: " + e.getMessage());
+			return;
+		}
+
+		for (RelayMessage message : messages) {
+			if (message.origin().equals(serverName)) {
+				continue;
+			}
+
+			if (message.kind() == RelayMessage.Kind.HEARTBEAT) {
+				plugin.discordEgress().onHeartbeat(
+					message.origin(),
+					Arrays.stream(message.text().split(",")).filter(name -> !name.isEmpty()).collect(Collectors.toUnmodifiableSet())
+				);
+				continue;
+			}
+
+			if (message.kind() == RelayMessage.Kind.ACK) {
+				if (message.text().equals(serverName) && awaitingAck.remove(message.id()) != null) {
+					plugin.debug(getClass()).log("Cluster", () -> "Message " + message.id() + " acknowledged by " + message.origin());
+				}
+				continue;
+			}
+
+			if (!seen.add(message.id())) {
+				continue;
+			}
+
+			@NullOr ChatChannel channel = plugin.channels().byName(message.channel()).orElse(null);
+			if (channel == null) {
+				plugin.debug(getClass()).log("Cluster", () ->
+					"Received message for unknown channel: " + message.channel() + " from " + message.origin()
+				);
+				continue;
+			}
+
+			plugin.sync().run(() -> plugin.processor().deliverRemoteChat(channel, message));
+		}
+	}
+}
@@ -23,19 +23,30 @@
 package com.rezzedup.discordsrv.staffchat;
 
 import java.time.Instant;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 
 import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import com.rezzedup.discordsrv.staffchat.channels.ChannelRegistry;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
 import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
 import com.rezzedup.discordsrv.staffchat.events.AutoStaffChatToggleEvent;
 import com.rezzedup.discordsrv.staffchat.events.AutoTeamChatToggleEvent;
 import com.rezzedup.discordsrv.staffchat.events.ReceivingStaffChatToggleEvent;
 import com.rezzedup.discordsrv.staffchat.events.ReceivingTeamChatToggleEvent;
+import com.rezzedup.discordsrv.staffchat.storage.ProfileStore;
+import com.rezzedup.discordsrv.staffchat.storage.SqlProfileStore;
+import com.rezzedup.discordsrv.staffchat.storage.StoredProfile;
 
 import community.leaf.configvalues.bukkit.YamlValue;
 import community.leaf.configvalues.bukkit.data.YamlDataFile;
@@ -48,8 +59,11 @@ public class Data extends YamlDataFile implements StaffChatData {
 	private final Map<UUID, Profile> profilesByUuid = new java.util.concurrent.ConcurrentHashMap<>(128);
 	
 	private final StaffChatPlugin plugin;
+	private final ProfileStore store;
+	private final AtomicBoolean synchronizing = new AtomicBoolean();
 	
 	private @NullOr MyScheduledTask task = null;
+	private @NullOr MyScheduledTask syncTask = null;
 	
 	Data(StaffChatPlugin plugin) {
 		super(plugin.directory().resolve("data"), "staff-chat.data.yml");
@@ -62,16 +76,98 @@ public class Data extends YamlDataFile implements StaffChatData {
 				save();
 			}
 		}, periodTicks, periodTicks);
-
+		
+		this.store = createStore();
+		
+		if (store instanceof SqlProfileStore) {
+			// Changes made by other servers are found by sequence number, so a slow sync doesn't miss any (see SqlProfileStore).
+			long syncTicks = Math.max(1, plugin.config().getOrDefault(StaffChatConfig.STORAGE_SQL_FLUSH_TICKS));
+			syncTask = StaffChatPlugin.getScheduler().runTaskTimer(() -> {
+				// Database calls block, so they run on the plugin's own threads, one sync at a time.
+				if (synchronizing.compareAndSet(false, true)) {
+					plugin.io().execute(() -> {
+						try {
+							synchronizeStore();
+						} finally {
+							synchronizing.set(false);
+						}
+					});
+				}
+			}, syncTicks, syncTicks);
+		}
 		
 		// Update profiles of all online players when reloaded.
 		reloadsWith(() -> plugin.getServer().getOnlinePlayers().forEach(this::updateProfile));
 	}
 	
+	private ProfileStore createStore() {
+		String type = plugin.config().getOrDefault(StaffChatConfig.STORAGE_TYPE).trim().toLowerCase(Locale.ROOT);
+		if (!type.equals("sql")) {
+			if (!type.equals("yaml")) {
+				plugin.getLogger().warning("Unknown storage type: " + type + " (using yaml)");
+			}
+			return new YamlStore();
+		}
+		
+		String url = plugin.config().getOrDefault(StaffChatConfig.STORAGE_SQL_URL).trim();
+		if (url.isEmpty()) {
+			url = "jdbc:sqlite:" + plugin.directory().resolve("data").resolve("staff-chat.data.db").toAbsolutePath();
+		}
+		
+		try {
+			SqlProfileStore sql = new SqlProfileStore(url, ClusterRelay.configuredServerName(plugin), plugin.getLogger());
+			importYamlProfiles(sql);
+			return sql;
+		} catch (SQLException e) {
+			plugin.getLogger().warning("Could not connect to the profile database, using yaml instead: " + e);
+			return new YamlStore();
+		}
+	}
+	
+	private void importYamlProfiles(SqlProfileStore sql) {
+		if (!sql.isEmpty()) {
+			return;
+		}
+		
+		YamlStore yaml = new YamlStore();
+		Sections.get(data(), PROFILES_PATH).ifPresent(profiles -> {
+			for (String key : profiles.getKeys(false)) {
+				try {
+					yaml.load(UUID.fromString(key)).ifPresent(sql::save);
+				} catch (IllegalArgumentException ignored) {}
+			}
+		});
+		sql.flush();
+	}
+	
+	private void synchronizeStore() {
+		store.flush();
+		
+		Set<UUID> changed = store.pollChanges();
+		if (changed.isEmpty()) {
+			return;
+		}
+		
+		for (UUID uuid : changed) {
+			profilesByUuid.computeIfPresent(uuid, (k, stale) -> new Profile(plugin, this, k));
+		}
+		
+		plugin.debug(getClass()).log("Storage", () -> "Reloaded " + changed.size() + " profile(s) changed by other servers");
+		plugin.invalidatePlayerCache();
+	}
+	
+	ProfileStore store() {
+		return store;
+	}
+	
 	protected void end() {
 		if (task != null && !task.isCancelled()) {
 			try { task.cancel(); } catch (Throwable ignored) {}
 		}
+		if (syncTask != null && !syncTask.isCancelled()) {
+			try { syncTask.cancel(); } catch (Throwable ignored) {}
+		}
+		store.close();
 		if (isUpdated()) {
 			save();
 		}
@@ -93,8 +189,9 @@ public class Data extends YamlDataFile implements StaffChatData {
 		@NullOr Profile profile = profilesByUuid.get(player.getUniqueId());
 		boolean isStaffMember = Permissions.ACCESS.allows(player);
 		boolean isTeamMember = Permissions.TEAM_ACCESS.allows(player);
+		boolean isChannelMember = plugin.channels().extras().stream().anyMatch(channel -> channel.allows(player));
 		
-		if (isStaffMember || isTeamMember) {
+		if (isStaffMember || isTeamMember || isChannelMember) {
 			// Ensure that this staff/team member has an active profile.
 			if (profile == null) {
 				profile = (Profile) getOrCreateProfile(player);
@@ -127,6 +224,11 @@ public class Data extends YamlDataFile implements StaffChatData {
 				if (profile.automaticTeamChat()) {
 					profile.automaticTeamChat(false);
 				}
+				for (ChatChannel channel : plugin.channels().extras()) {
+					if (profile.automaticChat(channel)) {
+						profile.automaticChat(channel, false);
+					}
+				}
 				
 				// No longer staff/team, delete data.
 				profile.clearStoredProfileData();
@@ -140,9 +242,35 @@ public class Data extends YamlDataFile implements StaffChatData {
 	@Override
 	public void evictProfile(UUID uuid) {
 		profilesByUuid.remove(uuid);
+		store.forget(uuid);
 	}
 	
-	static class Profile implements StaffChatProfile {
+	/**
+	 * Reads a player's stored toggles before they join, so that loading
+	 * their profile on the server thread doesn't wait on storage. Blocks.
+	 */
+	public void preloadProfile(UUID uuid) {
+		if (plugin.config().getOrDefault(StaffChatConfig.PERSIST_TOGGLES) && !profilesByUuid.containsKey(uuid)) {
+			store.preload(uuid);
+		}
+	}
+	
+	/**
+	 * Gets the ids of every channel the player has automatic chat enabled in,
+	 * as a bitset (see {@link ChatChannel#bit()}).
+	 */
+	public long automaticChannels(Player player) {
+		return getProfile(player).map(profile -> ((Profile) profile).autoChannels).orElse(0L);
+	}
+	
+	static long withBit(long bits, int id, boolean set) {
+		return (set) ? bits | (1L << id) : bits & ~(1L << id);
+	}
+	
+	/**
+	 * Stores profiles in this data file, which is only used by this server.
+	 */
+	private class YamlStore implements ProfileStore {
 		static final YamlValue<Instant> AUTO_TOGGLE_DATE = YamlValue.ofInstant("toggles.auto").maybe();
 		static final YamlValue<Instant> LEFT_TOGGLE_DATE = YamlValue.ofInstant("toggles.left").maybe();
 		static final YamlValue<Boolean> MUTED_SOUNDS_TOGGLE = YamlValue.ofBoolean("toggles.muted-sounds").maybe();
@@ -152,8 +280,83 @@ public class Data extends YamlDataFile implements StaffChatData {
 		static final YamlValue<Instant> TEAM_LEFT_TOGGLE_DATE = YamlValue.ofInstant("toggles.team-left").maybe();
 		static final YamlValue<Boolean> TEAM_MUTED_SOUNDS_TOGGLE = YamlValue.ofBoolean("toggles.team-muted-sounds").maybe();
 		
+		// Other channel toggles, stored by channel name since ids are only stable while running
+		static final String CHANNELS_AUTO_PATH = "toggles.channels.auto";
+		static final String CHANNELS_LEFT_PATH = "toggles.channels.left";
+		static final String CHANNELS_MUTED_SOUNDS_PATH = "toggles.channels.muted-sounds";
+		
+		private String path(UUID uuid) {
+			return PROFILES_PATH + "." + uuid;
+		}
+		
+		@Override
+		public Optional<StoredProfile> load(UUID uuid) {
+			return Sections.get(data(), path(uuid)).map(section -> new StoredProfile(
+				uuid,
+				// Staff chat toggles
+				AUTO_TOGGLE_DATE.get(section).orElse(null),
+				LEFT_TOGGLE_DATE.get(section).orElse(null),
+				MUTED_SOUNDS_TOGGLE.get(section).orElse(false),
+				// Team chat toggles
+				TEAM_AUTO_TOGGLE_DATE.get(section).orElse(null),
+				TEAM_LEFT_TOGGLE_DATE.get(section).orElse(null),
+				TEAM_MUTED_SOUNDS_TOGGLE.get(section).orElse(false),
+				// Other channel toggles
+				section.getStringList(CHANNELS_AUTO_PATH),
+				section.getStringList(CHANNELS_LEFT_PATH),
+				section.getStringList(CHANNELS_MUTED_SOUNDS_PATH)
+			));
+		}
+		
+		private void setChannelNames(ConfigurationSection section, String path, List<String> names) {
+			section.set(path, (names.isEmpty()) ? null : names);
+		}
+		
+		@Override
+		public void save(StoredProfile profile) {
+			ConfigurationSection section = Sections.getOrCreate(data(), path(profile.uuid()));
+			
+			// Staff chat toggles
+			AUTO_TOGGLE_DATE.set(section, profile.auto());
+			LEFT_TOGGLE_DATE.set(section, profile.left());
+			MUTED_SOUNDS_TOGGLE.set(section, profile.mutedSounds());
+			
+			// Team chat toggles
+			TEAM_AUTO_TOGGLE_DATE.set(section, profile.teamAuto());
+			TEAM_LEFT_TOGGLE_DATE.set(section, profile.teamLeft());
+			TEAM_MUTED_SOUNDS_TOGGLE.set(section, profile.teamMutedSounds());
+			
+			// Other channel toggles
+			setChannelNames(section, CHANNELS_AUTO_PATH, profile.autoChannels());
+			setChannelNames(section, CHANNELS_LEFT_PATH, profile.leftChannels());
+			setChannelNames(section, CHANNELS_MUTED_SOUNDS_PATH, profile.mutedChannels());
+			
+			updated(true);
+		}
+		
+		@Override
+		public void delete(UUID uuid) {
+			data().set(path(uuid), null);
+			updated(true);
+		}
+		
+		@Override
+		public void flush() {
+			// Saved periodically by the data file itself.
+		}
+		
+		@Override
+		public Set<UUID> pollChanges() {
+			return Set.of();
+		}
+		
+		@Override
+		public void close() {}
+	}
+	
+	static class Profile implements StaffChatProfile {
 		private final StaffChatPlugin plugin;
-		private final YamlDataFile yaml;
+		private final Data data;
 		private final UUID uuid;
 		
 		private @NullOr Instant auto;
@@ -165,29 +368,60 @@ public class Data extends YamlDataFile implements StaffChatData {
 		private @NullOr Instant teamLeft;
 		private boolean teamMutedSounds = false;
 		
-		Profile(StaffChatPlugin plugin, YamlDataFile yaml, UUID uuid) {
+		// Channel state as bitsets indexed by channel id (includes staff and team chat)
+		private volatile long autoChannels = 0L;
+		private volatile long leftChannels = 0L;
+		private volatile long mutedChannels = 0L;
+		
+		Profile(StaffChatPlugin plugin, Data data, UUID uuid) {
 			this.plugin = plugin;
-			this.yaml = yaml;
+			this.data = data;
 			this.uuid = uuid;
 			
 			if (plugin.config().getOrDefault(StaffChatConfig.PERSIST_TOGGLES)) {
-				Sections.get(yaml.data(), path()).ifPresent(section ->
+				data.store().load(uuid).ifPresent(stored ->
 				{
 					// Staff chat toggles
-					auto = AUTO_TOGGLE_DATE.get(section).orElse(null);
-					left = LEFT_TOGGLE_DATE.get(section).orElse(null);
-					mutedSounds = MUTED_SOUNDS_TOGGLE.get(section).orElse(false);
+					auto = stored.auto();
+					left = stored.left();
+					mutedSounds = stored.mutedSounds();
 					
 					// Team chat toggles
-					teamAuto = TEAM_AUTO_TOGGLE_DATE.get(section).orElse(null);
-					teamLeft = TEAM_LEFT_TOGGLE_DATE.get(section).orElse(null);
-					teamMutedSounds = TEAM_MUTED_SOUNDS_TOGGLE.get(section).orElse(false);
+					teamAuto = stored.teamAuto();
+					teamLeft = stored.teamLeft();
+					teamMutedSounds = stored.teamMutedSounds();
+					
+					// Other channel toggles
+					autoChannels = channelBits(stored.autoChannels());
+					leftChannels = channelBits(stored.leftChannels());
+					mutedChannels = channelBits(stored.mutedChannels());
 				});
 			}
+			
+			autoChannels = withBit(withBit(autoChannels, ChannelRegistry.STAFF_ID, auto != null), ChannelRegistry.TEAM_ID, teamAuto != null);
+			leftChannels = withBit(withBit(leftChannels, ChannelRegistry.STAFF_ID, left != null), ChannelRegistry.TEAM_ID, teamLeft != null);
+			mutedChannels = withBit(withBit(mutedChannels, ChannelRegistry.STAFF_ID, mutedSounds), ChannelRegistry.TEAM_ID, teamMutedSounds);
 		}
 		
-		String path() {
-			return PROFILES_PATH + "." + uuid;
+		private long channelBits(List<String> names) {
+			long bits = 0L;
+			for (String name : names) {
+				@NullOr ChatChannel channel = plugin.channels().byName(name).orElse(null);
+				if (channel != null && !channel.isBuiltIn()) {
+					bits |= channel.bit();
+				}
+			}
+			return bits;
+		}
+		
+		private List<String> channelNames(long bits) {
+			List<String> names = new ArrayList<>();
+			for (ChatChannel channel : plugin.channels().extras()) {
+				if ((bits & channel.bit()) != 0) {
+					names.add(channel.name());
+				}
+			}
+			return names;
 		}
 		
 		@Override
@@ -209,11 +443,12 @@ public class Data extends YamlDataFile implements StaffChatData {
 		
 		@Override
 		public void automaticStaffChat(boolean enabled) {
-			if (plugin.events().call(new AutoStaffChatToggleEvent(this, enabled)).isCancelled()) {
+			if (plugin.eventDispatcher().call(new AutoStaffChatToggleEvent(this, enabled)).isCancelled()) {
 				return;
 			}
 			
 			auto = (enabled) ? Instant.now() : null;
+			autoChannels = withBit(autoChannels, ChannelRegistry.STAFF_ID, enabled);
 			updateStoredProfileData();
 		}
 		
@@ -230,11 +465,12 @@ public class Data extends YamlDataFile implements StaffChatData {
 		
 		@Override
 		public void receivesStaffChatMessages(boolean enabled) {
-			if (plugin.events().call(new ReceivingStaffChatToggleEvent(this, enabled)).isCancelled()) {
+			if (plugin.eventDispatcher().call(new ReceivingStaffChatToggleEvent(this, enabled)).isCancelled()) {
 				return;
 			}
 			
 			left = (enabled) ? null : Instant.now();
+			leftChannels = withBit(leftChannels, ChannelRegistry.STAFF_ID, !enabled);
 			updateStoredProfileData();
 		}
 		
@@ -246,6 +482,7 @@ public class Data extends YamlDataFile implements StaffChatData {
 		@Override
 		public void receivesStaffChatSounds(boolean enabled) {
 			mutedSounds = !enabled;
+			mutedChannels = withBit(mutedChannels, ChannelRegistry.STAFF_ID, !enabled);
 			updateStoredProfileData();
 		}
 		
@@ -263,11 +500,12 @@ public class Data extends YamlDataFile implements StaffChatData {
 		
 		@Override
 		public void automaticTeamChat(boolean enabled) {
-			if (plugin.events().call(new AutoTeamChatToggleEvent(this, enabled)).isCancelled()) {
+			if (plugin.eventDispatcher().call(new AutoTeamChatToggleEvent(this, enabled)).isCancelled()) {
 				return;
 			}
 			
 			teamAuto = (enabled) ? Instant.now() : null;
+			autoChannels = withBit(autoChannels, ChannelRegistry.TEAM_ID, enabled);
 			updateStoredProfileData();
 		}
 		
@@ -284,11 +522,12 @@ public class Data extends YamlDataFile implements StaffChatData {
 		
 		@Override
 		public void receivesTeamChatMessages(boolean enabled) {
-			if (plugin.events().call(new ReceivingTeamChatToggleEvent(this, enabled)).isCancelled()) {
+			if (plugin.eventDispatcher().call(new ReceivingTeamChatToggleEvent(this, enabled)).isCancelled()) {
 				return;
 			}
 			
 			teamLeft = (enabled) ? null : Instant.now();
+			leftChannels = withBit(leftChannels, ChannelRegistry.TEAM_ID, !enabled);
 			updateStoredProfileData();
 		}
 		
@@ -300,12 +539,99 @@ public class Data extends YamlDataFile implements StaffChatData {
 		@Override
 		public void receivesTeamChatSounds(boolean enabled) {
 			teamMutedSounds = !enabled;
-		 updateStoredProfileData();
+			mutedChannels = withBit(mutedChannels, ChannelRegistry.TEAM_ID, !enabled);
+			updateStoredProfileData();
+		}
+		
+		// Channel methods
+		
+		@Override
+		public boolean automaticChat(ChatChannel channel) {
+			return (autoChannels & channel.bit()) != 0;
+		}
+		
+		@Override
+		public void automaticChat(ChatChannel channel, boolean enabled) {
+			if (channel.isStaffChat()) {
+				automaticStaffChat(enabled);
+			} else if (channel.isTeamChat()) {
+				automaticTeamChat(enabled);
+			} else {
+				autoChannels = withBit(autoChannels, channel.id(), enabled);
+				updateStoredProfileData();
+			}
+		}
+		
+		@Override
+		public boolean receivesMessages(ChatChannel channel) {
+			if (channel.isStaffChat()) {
+				return receivesStaffChatMessages();
+			}
+			if (channel.isTeamChat()) {
+				return receivesTeamChatMessages();
+			}
+			return (leftChannels & channel.bit()) == 0;
+		}
+		
+		@Override
+		public void receivesMessages(ChatChannel channel, boolean enabled) {
+			if (channel.isStaffChat()) {
+				receivesStaffChatMessages(enabled);
+			} else if (channel.isTeamChat()) {
+				receivesTeamChatMessages(enabled);
+			} else {
+				leftChannels = withBit(leftChannels, channel.id(), !enabled);
+				updateStoredProfileData();
+			}
+		}
+		
+		@Override
+		public boolean receivesSounds(ChatChannel channel) {
+			return (mutedChannels & channel.bit()) == 0;
+		}
+		
+		@Override
+		public void receivesSounds(ChatChannel channel, boolean enabled) {
+			if (channel.isStaffChat()) {
+				receivesStaffChatSounds(enabled);
+			} else if (channel.isTeamChat()) {
+				receivesTeamChatSounds(enabled);
+			} else {
+				mutedChannels = withBit(mutedChannels, channel.id(), !enabled);
+				updateStoredProfileData();
+			}
+		}
+		
+		@Override
+		public void toggleAutomaticChat(ChatChannel channel) {
+			boolean enabled = !automaticChat(channel);
+			automaticChat(channel, enabled);
+			
+			if (!enabled || !automaticChat(channel)) {
+				return;
+			}
+			
+			for (ChatChannel other : plugin.channels().all()) {
+				if (other.id() != channel.id() && automaticChat(other)) {
+					automaticChat(other, false);
+				}
+			}
+		}
+		
+		@Override
+		public void toggleAutomaticStaffChat() {
+			toggleAutomaticChat(plugin.channels().staff());
+		}
+		
+		@Override
+		public void toggleAutomaticTeamChat() {
+			toggleAutomaticChat(plugin.channels().team());
 		}
 		
 		boolean hasDefaultSettings() {
 			return auto == null && left == null && !mutedSounds
-				&& teamAuto == null && teamLeft == null && !teamMutedSounds;
+				&& teamAuto == null && teamLeft == null && !teamMutedSounds
+				&& autoChannels == 0L && leftChannels == 0L && mutedChannels == 0L;
 		}
 		
 		void clearStoredProfileData() {
@@ -313,8 +639,7 @@ public class Data extends YamlDataFile implements StaffChatData {
 				return;
 			}
 			
-			yaml.data().set(path(), null);
-			yaml.updated(true);
+			data.store().delete(uuid);
 		}
 		
 		void updateStoredProfileData() {
@@ -327,19 +652,18 @@ public class Data extends YamlDataFile implements StaffChatData {
 				return;
 			}
 			
-			ConfigurationSection section = Sections.getOrCreate(yaml.data(), path());
-			
-			// Staff chat toggles
-			AUTO_TOGGLE_DATE.set(section, auto);
-			LEFT_TOGGLE_DATE.set(section, left);
-			MUTED_SOUNDS_TOGGLE.set(section, mutedSounds);
-			
-			// Team chat toggles
-			TEAM_AUTO_TOGGLE_DATE.set(section, teamAuto);
-			TEAM_LEFT_TOGGLE_DATE.set(section, teamLeft);
-			TEAM_MUTED_SOUNDS_TOGGLE.set(section, teamMutedSounds);
-			
-			yaml.updated(true);
+			data.store().save(new StoredProfile(
+				uuid,
+				auto,
+				left,
+				mutedSounds,
+				teamAuto,
+				teamLeft,
+				teamMutedSounds,
+				channelNames(autoChannels),
+				channelNames(leftChannels),
+				channelNames(mutedChannels)
+			));
 		}
 	}
 }
\ No newline at end of file
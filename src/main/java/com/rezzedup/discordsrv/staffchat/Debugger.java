@@ -29,8 +29,6 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -53,11 +51,7 @@ public class Debugger {
 	private final StaffChatPlugin plugin;
 	private final Path debugToggleFile;
 	private final Path debugLogFile;
-	private final ExecutorService logExecutor = Executors.newSingleThreadExecutor(r -> {
-		Thread thread = new Thread(r, "staffchat-debug-logger");
-		thread.setDaemon(true);
-		return thread;
-	});
+	private final BlockingIo.Serial logWriter;
 	
 	private boolean isEnabled;
 	
@@ -65,6 +59,7 @@ public class Debugger {
 		this.plugin = plugin;
 		this.debugToggleFile = plugin.directory().resolve("debugging-is-enabled");
 		this.debugLogFile = plugin.directory().resolve("debug.log");
+		this.logWriter = plugin.io().serial();
 		this.isEnabled = isToggleFilePresent();
 	}
 	
@@ -111,7 +106,7 @@ public class Debugger {
 	private void printThenWriteToLogFile(String message) {
 		plugin.getLogger().info("[Debug] " + message);
 
-		logExecutor.execute(() -> {
+		logWriter.execute(() -> {
 			try {
 				Files.write(
 					debugLogFile,
@@ -126,14 +121,16 @@ public class Debugger {
 	}
 
 	public void end() {
-		logExecutor.shutdown();
-		try {
-			if (!logExecutor.awaitTermination(3, TimeUnit.SECONDS)) {
-				logExecutor.shutdownNow();
-			}
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			logExecutor.shutdownNow();
+		end(TimeUnit.SECONDS.toMillis(3));
+	}
+	
+	public void end(long timeoutMillis) {
+		reportDropped(logWriter.await(timeoutMillis));
+	}
+	
+	private void reportDropped(int entries) {
+		if (entries > 0) {
+			plugin.getLogger().warning("Debug log closed before " + entries + " entries could be written");
 		}
 	}
 	
@@ -0,0 +1,298 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Decides which server in a network talks to Discord for each channel, so
+ * that messages are posted once and inbound Discord messages are processed
+ * once. The leader posts for everyone (followers' messages reach it through
+ * the cluster relay) and relays what it receives from Discord to the others.
+ *
+ * <p>Leadership is a lease, held either as a lock on a file in a directory
+ * shared by all servers (released by the OS if the leader dies), or agreed
+ * on through heartbeats sent over the cluster relay: every server picks the
+ * same leader among those it has heard from recently.</p>
+ *
+ * <p>Over plugin messaging, heartbeats only get through while a player is
+ * online on both ends, so a server without players hears from nobody and
+ * elects itself. Messages then reach Discord from more than one server;
+ * the file election doesn't have that problem.</p>
+ */
+public class DiscordEgress {
+	public enum Election {
+		NONE,
+		FILE,
+		CLUSTER
+	}
+
+	private record Node(Set<String> channels, long lastSeen) {}
+
+	private final StaffChatPlugin plugin;
+	private final AtomicBoolean renewing = new AtomicBoolean();
+
+	// Cluster election: other servers' latest heartbeats.
+	private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+
+	// File election: locks held by this server.
+	private final Map<String, FileLock> locks = new HashMap<>();
+
+	private volatile Election election = Election.NONE;
+	private volatile long leaseMillis;
+	private volatile Set<String> leading = Set.of();
+	private @NullOr Path lockDirectory;
+	private @NullOr MyScheduledTask task;
+
+	DiscordEgress(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		reload();
+	}
+
+	public synchronized void reload() {
+		end();
+
+		election = (plugin.cluster().isEnabled())
+			? parseElection(plugin.config().getOrDefault(StaffChatConfig.EGRESS_ELECTION))
+			: Election.NONE;
+
+		if (election == Election.NONE) {
+			return;
+		}
+
+		leaseMillis = Math.max(1000, plugin.config().getOrDefault(StaffChatConfig.EGRESS_LEASE_MILLIS));
+
+		if (election == Election.CLUSTER
+			&& plugin.config().getOrDefault(StaffChatConfig.CLUSTER_TRANSPORT).trim().equalsIgnoreCase("plugin-messaging")) {
+			plugin.getLogger().warning(
+				"The cluster Discord egress election needs players online: over plugin messaging, heartbeats only get through " +
+					"while a player is online on both servers, and a server that hears from nobody posts to Discord itself. " +
+					"Use the file election to avoid duplicate posts."
+			);
+		}
+
+		if (election == Election.FILE) {
+			String directory = plugin.config().getOrDefault(StaffChatConfig.EGRESS_LOCK_DIRECTORY).trim();
+			lockDirectory = (directory.isEmpty()) ? plugin.directory().resolve("egress") : Path.of(directory);
+		}
+
+		// Renew at a third of the lease so that a couple of missed heartbeats don't cause a failover.
+		long periodTicks = Math.max(1, leaseMillis / 3 / 50);
+		task = StaffChatPlugin.getScheduler().runTaskTimer(() -> {
+			// Lock files block, so renewing runs on the plugin's own threads, one renewal at a time.
+			if (renewing.compareAndSet(false, true)) {
+				plugin.io().execute(() -> {
+					try {
+						renew();
+					} finally {
+						renewing.set(false);
+					}
+				});
+			}
+		}, 1L, periodTicks);
+	}
+
+	private Election parseElection(String name) {
+		try {
+			return Election.valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			plugin.getLogger().warning("Unknown Discord egress election: " + name + " (expected: none, file, cluster)");
+			return Election.NONE;
+		}
+	}
+
+	public synchronized void end() {
+		if (task != null && !task.isCancelled()) {
+			try { task.cancel(); } catch (Throwable ignored) {}
+		}
+		task = null;
+
+		for (FileLock lock : locks.values()) {
+			release(lock);
+		}
+		locks.clear();
+		nodes.clear();
+		leading = Set.of();
+		election = Election.NONE;
+	}
+
+	public boolean isElecting() {
+		return election != Election.NONE;
+	}
+
+	/**
+	 * Whether this server should post to and read from Discord for the
+	 * channel. Without an election, every server with DiscordSRV does.
+	 */
+	public boolean isLeader(ChatChannel channel) {
+		return (isElecting()) ? leading.contains(channel.name()) : plugin.isDiscordSrvHookEnabled();
+	}
+
+	private Set<String> eligibleChannels() {
+		return plugin.channels().all().stream()
+			.filter(channel -> plugin.getDiscordChannelOrNull(channel) != null)
+			.map(ChatChannel::name)
+			.collect(Collectors.toUnmodifiableSet());
+	}
+
+	private synchronized void renew() {
+		if (election == Election.NONE) {
+			return;
+		}
+
+		Set<String> eligible = eligibleChannels();
+		Set<String> previous = leading;
+
+		leading = (election == Election.FILE) ? renewLocks(eligible) : electByHeartbeat(eligible);
+
+		if (!leading.equals(previous)) {
+			plugin.getLogger().info("Posting to Discord for channels: " + ((leading.isEmpty()) ? "(none)" : String.join(", ", leading)));
+		}
+	}
+
+	private Set<String> renewLocks(Set<String> eligible) {
+		// Give up channels this server can no longer post to.
+		locks.entrySet().removeIf(entry -> {
+			if (eligible.contains(entry.getKey()) && entry.getValue().isValid()) {
+				return false;
+			}
+			release(entry.getValue());
+			return true;
+		});
+
+		for (String channel : eligible) {
+			if (!locks.containsKey(channel)) {
+				@NullOr FileLock lock = tryLock(channel);
+				if (lock != null) {
+					locks.put(channel, lock);
+				}
+			}
+		}
+
+		return Set.copyOf(locks.keySet());
+	}
+
+	private @NullOr FileLock tryLock(String channel) {
+		if (lockDirectory == null) {
+			return null;
+		}
+
+		@NullOr FileChannel file = null;
+		try {
+			Files.createDirectories(lockDirectory);
+			file = FileChannel.open(
+				lockDirectory.resolve(channel + ".lock"),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE
+			);
+
+			@NullOr FileLock lock = file.tryLock();
+			if (lock == null) {
+				file.close();
+				return null;
+			}
+
+			// Record the holder for anyone wondering which server is posting.
+			file.truncate(0);
+			file.write(StandardCharsets.UTF_8.encode(plugin.cluster().serverName()));
+			return lock;
+		} catch (IOException | OverlappingFileLockException e) {
+			if (file != null) {
+				try { file.close(); } catch (IOException ignored) {}
+			}
+			return null;
+		}
+	}
+
+	private static void release(FileLock lock) {
+		try {
+			lock.release();
+			lock.channel().close();
+		} catch (IOException ignored) {}
+	}
+
+	private Set<String> electByHeartbeat(Set<String> eligible) {
+		plugin.cluster().publishHeartbeat(eligible);
+
+		long now = System.currentTimeMillis();
+		nodes.values().removeIf(node -> now - node.lastSeen() > leaseMillis);
+
+		String self = plugin.cluster().serverName();
+		return eligible.stream()
+			.filter(channel -> self.equals(leaderAmong(channel, self)))
+			.collect(Collectors.toUnmodifiableSet());
+	}
+
+	/**
+	 * Rendezvous hashing: every server computes the same leader from the same
+	 * set of live nodes, and channels are spread across them.
+	 */
+	private String leaderAmong(String channel, String self) {
+		Comparator<String> byWeight = Comparator
+			.<String>comparingInt(node -> mix((node + "/" + channel).hashCode()))
+			.thenComparing(Comparator.reverseOrder());
+
+		String leader = self;
+		for (Map.Entry<String, Node> entry : nodes.entrySet()) {
+			if (entry.getValue().channels().contains(channel) && byWeight.compare(entry.getKey(), leader) > 0) {
+				leader = entry.getKey();
+			}
+		}
+		return leader;
+	}
+
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		hash *= 0xC2B2AE35;
+		return hash ^ (hash >>> 16);
+	}
+
+	void onHeartbeat(String origin, Set<String> channels) {
+		if (election == Election.CLUSTER) {
+			nodes.put(origin, new Node(channels, System.currentTimeMillis()));
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+
+import github.scarsz.discordsrv.dependencies.jda.api.entities.Message;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.User;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Hands messages received on JDA's threads over to the server thread. Any
+ * number of JDA threads add to the inbox, and a timer task drains up to a
+ * configured number of messages per tick. The inbox is bounded; when it's
+ * full, either the new message or the oldest queued one is dropped, and the
+ * drops are reported as a warning at most once a minute.
+ *
+ * <p>On Folia the timer runs on the global region, not per region: a
+ * Discord message isn't tied to any region, and its recipients can be
+ * anywhere, so it's drained once for everyone.</p>
+ */
+public class DiscordInbox {
+	private static final long DROP_WARNING_INTERVAL_MILLIS = 60_000;
+
+	public enum OverflowPolicy {
+		DROP_NEWEST,
+		DROP_OLDEST
+	}
+
+	record Inbound(ChatChannel channel, User author, Message message) {}
+
+	private final StaffChatPlugin plugin;
+	private final Queue<Inbound> queue = new ConcurrentLinkedQueue<>();
+
+	// ConcurrentLinkedQueue.size() is a full traversal, so the size is tracked separately.
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicInteger dropped = new AtomicInteger();
+	private final AtomicLong nextDropWarning = new AtomicLong();
+
+	private volatile int capacity;
+	private volatile int budgetPerTick;
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+	private @NullOr MyScheduledTask task;
+
+	DiscordInbox(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		reload();
+	}
+
+	public void reload() {
+		capacity = Math.max(1, plugin.config().getOrDefault(StaffChatConfig.DISCORD_INBOX_CAPACITY));
+		budgetPerTick = Math.max(1, plugin.config().getOrDefault(StaffChatConfig.DISCORD_INBOX_MESSAGES_PER_TICK));
+		overflowPolicy = parsePolicy(plugin.config().getOrDefault(StaffChatConfig.DISCORD_INBOX_OVERFLOW_POLICY));
+
+		cancelTask();
+		task = StaffChatPlugin.getScheduler().runTaskTimer(this::drain, 1L, 1L);
+	}
+
+	private OverflowPolicy parsePolicy(String name) {
+		try {
+			return OverflowPolicy.valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+		} catch (IllegalArgumentException e) {
+			plugin.getLogger().warning("Unknown Discord inbox overflow policy: " + name + " (using drop-newest)");
+			return OverflowPolicy.DROP_NEWEST;
+		}
+	}
+
+	public void end() {
+		cancelTask();
+	}
+
+	private void cancelTask() {
+		if (task != null && !task.isCancelled()) {
+			try { task.cancel(); } catch (Throwable ignored) {}
+		}
+	}
+
+	/**
+	 * Queues a message received from Discord. Safe to call from any thread.
+	 *
+	 * @return {@code false} if the message was dropped
+	 */
+	public boolean offer(ChatChannel channel, User author, Message message) {
+		if (!plugin.discordEgress().isLeader(channel)) {
+			plugin.debug(getClass()).log("Discord Inbox", () ->
+				"Ignored " + channel.name() + " message, another server reads it from discord"
+			);
+			return true;
+		}
+
+		Inbound inbound = new Inbound(channel, author, message);
+
+		while (true) {
+			int current = size.get();
+			if (current < capacity) {
+				if (size.compareAndSet(current, current + 1)) {
+					queue.offer(inbound);
+					return true;
+				}
+				continue;
+			}
+
+			if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+				dropped.incrementAndGet();
+				return false;
+			}
+
+			// Make room by dropping the oldest message, keeping the size as is.
+			if (queue.poll() != null) {
+				dropped.incrementAndGet();
+				queue.offer(inbound);
+				return true;
+			}
+		}
+	}
+
+	public int pending() {
+		return size.get();
+	}
+
+	/**
+	 * Delivers queued messages. Normally runs once a tick on the server
+	 * thread, bounded by the per-tick budget.
+	 */
+	void drain() {
+		drain(budgetPerTick);
+	}
+
+	int drain(int budget) {
+		int delivered = 0;
+
+		while (delivered < budget) {
+			@NullOr Inbound inbound = queue.poll();
+			if (inbound == null) {
+				break;
+			}
+			size.decrementAndGet();
+			delivered++;
+
+			try {
+				deliver(inbound);
+			} catch (RuntimeException e) {
+				plugin.debug(getClass()).log("Discord Inbox", () -> "Failed to deliver message: " + e);
+			}
+		}
+
+		reportDropped();
+		return delivered;
+	}
+
+	private void reportDropped() {
+		if (dropped.get() == 0) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		long next = nextDropWarning.get();
+		if (now < next || !nextDropWarning.compareAndSet(next, now + DROP_WARNING_INTERVAL_MILLIS)) {
+			// Keeps counting until the next warning is due.
+			return;
+		}
+
+		int lost = dropped.getAndSet(0);
+		plugin.getLogger().warning(
+			"Dropped " + lost + " Discord message(s) since the last warning: inbox is full (" +
+				overflowPolicy + ", capacity: " + capacity + "). Consider raising the inbox capacity or messages per tick."
+		);
+	}
+
+	private void deliver(Inbound inbound) {
+		ChatChannel channel = inbound.channel();
+		if (channel.isStaffChat()) {
+			plugin.submitMessageFromDiscord(inbound.author(), inbound.message());
+		} else if (channel.isTeamChat()) {
+			plugin.submitTeamMessageFromDiscord(inbound.author(), inbound.message());
+		} else {
+			plugin.submitChannelMessageFromDiscord(channel, inbound.author(), inbound.message());
+		}
+	}
+}
@@ -0,0 +1,658 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.bukkit.entity.Player;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.dependencies.jda.api.JDA;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.Message;
+import github.scarsz.discordsrv.dependencies.jda.api.entities.TextChannel;
+import github.scarsz.discordsrv.dependencies.jda.api.exceptions.ErrorResponseException;
+import github.scarsz.discordsrv.util.DiscordUtil;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Makes sure messages meant for Discord get there even if Discord isn't
+ * reachable when they're sent. Each Discord channel has its own queue, so a
+ * channel that can't be posted to doesn't hold up the others. Undeliverable
+ * messages are kept in memory up to a limit, then appended to segment files
+ * in the channel's "outbox" directory (up to a size limit), and replayed in
+ * order once the channel is available again.
+ *
+ * <p>One message per channel is in flight at a time, and it only counts as
+ * delivered once Discord confirms it was posted. Ids of delivered messages
+ * are recorded next to their segment so that nothing is sent twice if replay
+ * is interrupted. Chat from online players is handed to DiscordSRV to format
+ * instead, which doesn't report back, so for those delivery ends at DiscordSRV.</p>
+ *
+ * <p>Messages for channels that DiscordSRV has no destination for are
+ * dropped rather than held. All file access happens on a background thread.</p>
+ */
+public class DiscordOutbox {
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String DELIVERED_SUFFIX = ".delivered";
+	private static final int MAX_REMEMBERED_IDS = 4096;
+	private static final int MIN_SEGMENT_LINES = 16;
+	private static final long WARNING_INTERVAL_MILLIS = 60_000;
+
+	public record Outbound(UUID id, String channel, @NullOr UUID author, String authorName, String text, boolean raw) {
+		public static Outbound raw(String channel, String text) {
+			return new Outbound(UUID.randomUUID(), channel, null, "", text, true);
+		}
+
+		public static Outbound chat(String channel, Player author, String text) {
+			return new Outbound(UUID.randomUUID(), channel, author.getUniqueId(), author.getName(), text, false);
+		}
+
+		String encode() {
+			return String.join("\t",
+				id.toString(),
+				channel,
+				(author == null) ? "-" : author.toString(),
+				base64(authorName),
+				base64(text),
+				(raw) ? "r" : "c"
+			);
+		}
+
+		static @NullOr Outbound decode(String line) {
+			String[] parts = line.split("\t", -1);
+			if (parts.length != 6) {
+				return null;
+			}
+			try {
+				return new Outbound(
+					UUID.fromString(parts[0]),
+					parts[1],
+					(parts[2].equals("-")) ? null : UUID.fromString(parts[2]),
+					unbase64(parts[3]),
+					unbase64(parts[4]),
+					parts[5].equals("r")
+				);
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		private static String base64(String text) {
+			return Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+		}
+
+		private static String unbase64(String encoded) {
+			return new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static final class Segment {
+		private final Path path;
+		private final long number;
+		private long bytes;
+		private int lines;
+
+		Segment(Path path, long number, long bytes) {
+			this.path = path;
+			this.number = number;
+			this.bytes = bytes;
+		}
+	}
+
+	private final StaffChatPlugin plugin;
+	private final Path directory;
+	private final BlockingIo.Serial disk;
+	private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+	private final Map<UUID, Consumer<String>> onPosted = new ConcurrentHashMap<>();
+	private final AtomicInteger dropped = new AtomicInteger();
+	private final AtomicLong nextDropWarning = new AtomicLong();
+
+	// Recently delivered ids, to skip them if they come up again.
+	private final Set<UUID> delivered = Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+			return size() > MAX_REMEMBERED_IDS;
+		}
+	}));
+
+	private volatile int memoryLimit;
+	private volatile int replayBatchSize;
+	private volatile long maxDiskBytes;
+	private @NullOr MyScheduledTask task;
+
+	DiscordOutbox(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		this.directory = plugin.directory().resolve("outbox");
+		this.disk = plugin.io().serial();
+
+		reload();
+		recover();
+	}
+
+	public synchronized void reload() {
+		memoryLimit = Math.max(0, plugin.config().getOrDefault(StaffChatConfig.DISCORD_OUTBOX_MEMORY_LIMIT));
+		replayBatchSize = Math.max(1, plugin.config().getOrDefault(StaffChatConfig.DISCORD_OUTBOX_REPLAY_BATCH));
+		maxDiskBytes = Math.max(0, plugin.config().getOrDefault(StaffChatConfig.DISCORD_OUTBOX_MAX_DISK_KB)) * 1024L;
+
+		cancelTask();
+		// Only hands out this second's budget and starts sends, files are read and written on the disk thread.
+		task = StaffChatPlugin.getScheduler().runTaskTimer(() -> lanes.values().forEach(Lane::refill), 20L, 20L);
+	}
+
+	/**
+	 * Stops replaying and moves anything still held only in memory to disk,
+	 * so that it's sent after the next start.
+	 */
+	public synchronized void end() {
+		cancelTask();
+
+		for (Lane lane : lanes.values()) {
+			lane.close();
+		}
+
+		int unsaved = disk.await(plugin.shutdown().remainingMillis());
+		if (unsaved > 0) {
+			plugin.getLogger().warning("Could not save " + unsaved + " Discord outbox write(s) before shutting down");
+		}
+	}
+
+	private void cancelTask() {
+		if (task != null && !task.isCancelled()) {
+			try { task.cancel(); } catch (Throwable ignored) {}
+		}
+	}
+
+	// Startup only: finds the segments left behind by the last run.
+	private void recover() {
+		if (!Files.isDirectory(directory)) {
+			return;
+		}
+
+		try (Stream<Path> channels = Files.list(directory)) {
+			for (Path channelDirectory : channels.filter(Files::isDirectory).toList()) {
+				String channel = URLDecoder.decode(channelDirectory.getFileName().toString(), StandardCharsets.UTF_8);
+				List<Segment> found = segmentsIn(channelDirectory);
+				if (!found.isEmpty()) {
+					lanes.computeIfAbsent(channel, Lane::new).recover(found);
+				}
+			}
+		} catch (IOException e) {
+			plugin.getLogger().warning("Could not read the Discord outbox: " + e);
+		}
+	}
+
+	private static List<Segment> segmentsIn(Path channelDirectory) throws IOException {
+		try (Stream<Path> files = Files.list(channelDirectory)) {
+			List<Segment> found = new ArrayList<>();
+			for (Path path : files.sorted().toList()) {
+				String name = path.getFileName().toString();
+				if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+					continue;
+				}
+				try {
+					long number = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+					found.add(new Segment(path, number, Files.size(path)));
+				} catch (NumberFormatException ignored) {}
+			}
+			return found;
+		}
+	}
+
+	public boolean hasPending() {
+		return lanes.values().stream().anyMatch(Lane::hasPending);
+	}
+
+	/**
+	 * Sends the message to Discord now if possible, otherwise keeps it until
+	 * it can be. Messages to the same channel are always delivered in the
+	 * order they're sent.
+	 */
+	public void send(Outbound message) {
+		send(message, null);
+	}
+
+	/**
+	 * Like {@link #send(Outbound)}, and once Discord confirms the message was
+	 * posted, calls {@code posted} with its Discord message id (from a
+	 * Discord thread). Not called for messages formatted by DiscordSRV, or if
+	 * the message doesn't make it before the server stops.
+	 */
+	public void send(Outbound message, @NullOr Consumer<String> posted) {
+		if (delivered.contains(message.id())) {
+			return;
+		}
+
+		if (plugin.isDiscordSrvHookEnabled() && !isMapped(message.channel())) {
+			plugin.debug(getClass()).log("Outbox", () ->
+				"DiscordSRV has no destination for: " + message.channel() + ", message dropped (" + message.id() + ")"
+			);
+			return;
+		}
+
+		if (posted != null) {
+			onPosted.put(message.id(), posted);
+		}
+		lanes.computeIfAbsent(message.channel(), Lane::new).add(message);
+	}
+
+	private static boolean isMapped(String channel) {
+		return DiscordSRV.getPlugin().getChannels().keySet().stream().anyMatch(channel::equalsIgnoreCase);
+	}
+
+	private static boolean isConnected() {
+		@NullOr JDA jda = DiscordUtil.getJda();
+		return jda != null && jda.getStatus() == JDA.Status.CONNECTED;
+	}
+
+	private void reportDropped(String channel, int count, String reason) {
+		int total = dropped.addAndGet(count);
+		long now = System.currentTimeMillis();
+		long next = nextDropWarning.get();
+
+		if (now >= next && nextDropWarning.compareAndSet(next, now + WARNING_INTERVAL_MILLIS)) {
+			dropped.addAndGet(-total);
+			plugin.getLogger().warning(
+				"Dropped " + total + " message(s) meant for Discord (latest: " + channel + ", " + reason + ")"
+			);
+		}
+	}
+
+	private Path channelDirectory(String channel) {
+		return directory.resolve(URLEncoder.encode(channel, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * One channel's queue. Messages sit in memory until that fills up, then
+	 * everything (including what's in memory) lives in segment files, and
+	 * memory only holds the segment being replayed.
+	 */
+	private final class Lane {
+		private final String channel;
+		private final Path folder;
+
+		// Guarded by this.
+		private final Deque<Outbound> memory = new ArrayDeque<>();
+		private final Deque<Segment> segments = new ArrayDeque<>();
+		private final Map<Path, List<String>> writes = new LinkedHashMap<>();
+		private @NullOr Segment replaying;
+		private @NullOr Segment appending;
+		private @NullOr Outbound inFlight;
+		private long nextSegment;
+		private long diskBytes;
+		private int budget = replayBatchSize;
+		private boolean loading;
+		private boolean writing;
+		private boolean closed;
+
+		Lane(String channel) {
+			this.channel = channel;
+			this.folder = channelDirectory(channel);
+		}
+
+		synchronized void recover(List<Segment> found) {
+			for (Segment segment : found) {
+				segments.add(segment);
+				diskBytes += segment.bytes;
+				nextSegment = Math.max(nextSegment, segment.number + 1);
+			}
+		}
+
+		synchronized boolean hasPending() {
+			return !memory.isEmpty() || !segments.isEmpty() || replaying != null || loading;
+		}
+
+		private boolean onDisk() {
+			return replaying != null || !segments.isEmpty() || loading;
+		}
+
+		synchronized void add(Outbound message) {
+			if (closed) {
+				persist(List.of(message));
+				return;
+			}
+
+			if (!onDisk() && memory.size() < memoryLimit) {
+				memory.add(message);
+				pump();
+				return;
+			}
+
+			plugin.debug(DiscordOutbox.class).log("Outbox", () ->
+				"Holding message for discord channel: " + channel + " (" + message.id() + ")"
+			);
+
+			if (!onDisk() && !memory.isEmpty()) {
+				// Memory is full: it becomes the first segment, still replayed from memory.
+				Segment first = newSegment();
+				for (Outbound held : memory) {
+					write(first, held.encode());
+				}
+				replaying = first;
+				appending = null;
+			}
+
+			persist(List.of(message));
+			pump();
+		}
+
+		private void persist(List<Outbound> messages) {
+			for (Outbound message : messages) {
+				String line = message.encode();
+				long size = line.getBytes(StandardCharsets.UTF_8).length + 1;
+
+				if (maxDiskBytes > 0 && diskBytes + size > maxDiskBytes) {
+					onPosted.remove(message.id());
+					reportDropped(channel, 1, "outbox is full, see discord.outbox.max-disk-kb-per-channel");
+					continue;
+				}
+
+				if (appending == null || appending.lines >= Math.max(MIN_SEGMENT_LINES, memoryLimit)) {
+					appending = newSegment();
+					segments.add(appending);
+				}
+				write(appending, line);
+			}
+		}
+
+		private Segment newSegment() {
+			Path path = folder.resolve(SEGMENT_PREFIX + String.format("%012d", nextSegment) + SEGMENT_SUFFIX);
+			return new Segment(path, nextSegment++, 0);
+		}
+
+		private void write(Segment segment, String line) {
+			segment.lines++;
+			long size = line.getBytes(StandardCharsets.UTF_8).length + 1;
+			segment.bytes += size;
+			diskBytes += size;
+			queueWrite(segment.path, line);
+		}
+
+		// Batches lines until the disk thread gets to them, so each batch is written and flushed once.
+		private void queueWrite(Path path, String line) {
+			writes.computeIfAbsent(path, k -> new ArrayList<>()).add(line);
+			if (!writing) {
+				writing = true;
+				disk.execute(this::writeBatch);
+			}
+		}
+
+		private void writeBatch() {
+			Map<Path, List<String>> batch;
+			synchronized (this) {
+				batch = new LinkedHashMap<>(writes);
+				writes.clear();
+				writing = false;
+			}
+
+			try {
+				Files.createDirectories(folder);
+			} catch (IOException e) {
+				plugin.getLogger().warning("Could not create Discord outbox folder " + folder + ": " + e);
+			}
+
+			batch.forEach((path, lines) -> {
+				try {
+					Files.write(path, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				} catch (IOException e) {
+					plugin.getLogger().warning(
+						"Could not write to Discord outbox " + path.getFileName() + ", " + lines.size() + " line(s) lost: " + e
+					);
+				}
+			});
+		}
+
+		synchronized void refill() {
+			budget = replayBatchSize;
+			pump();
+		}
+
+		// Starts the next send, or the next disk read, if nothing is in progress.
+		private void pump() {
+			if (closed || inFlight != null || loading) {
+				return;
+			}
+
+			if (memory.isEmpty()) {
+				if (replaying != null) {
+					Segment finished = replaying;
+					replaying = null;
+					diskBytes -= finished.bytes;
+					disk.execute(() -> delete(finished));
+				}
+				if (!segments.isEmpty()) {
+					load(segments.poll());
+				}
+				return;
+			}
+
+			if (budget <= 0 || !plugin.isDiscordSrvHookEnabled() || !isConnected()) {
+				return;
+			}
+
+			if (!isMapped(channel)) {
+				// Unmapped by a reload: holding these would only fill up the disk.
+				int count = memory.size();
+				memory.forEach(message -> onPosted.remove(message.id()));
+				memory.clear();
+				reportDropped(channel, count, "DiscordSRV no longer has a destination for it");
+				pump();
+				return;
+			}
+
+			@NullOr TextChannel destination = DiscordSRV.getPlugin().getDestinationTextChannelForGameChannelName(channel);
+			if (destination == null) {
+				plugin.debug(DiscordOutbox.class).log("Outbox", () -> "Discord channel not available yet: " + channel);
+				return;
+			}
+
+			Outbound message = memory.peek();
+			if (delivered.contains(message.id())) {
+				memory.poll();
+				pump();
+				return;
+			}
+
+			inFlight = message;
+			budget--;
+			deliver(destination, message);
+		}
+
+		private void deliver(TextChannel destination, Outbound message) {
+			plugin.debug(DiscordOutbox.class).log("Outbox", () ->
+				"Sending message to discord channel: " + channel + " => " + destination
+			);
+
+			@NullOr Player author = (message.author() == null) ? null : plugin.getServer().getPlayer(message.author());
+
+			if (!message.raw() && author != null) {
+				// DiscordSRV formats chat from online players itself, but doesn't say when it's posted.
+				plugin.io().execute(() -> {
+					try {
+						DiscordSRV.getPlugin().processChatMessage(author, message.text(), message.channel(), false);
+						posted(message, null);
+					} catch (RuntimeException e) {
+						failed(message, e);
+					}
+				});
+				return;
+			}
+
+			String text = (message.raw())
+				? message.text()
+				// DiscordSRV can only format chat from online players.
+				: DiscordUtil.escapeMarkdown(message.authorName()) + " » " + message.text();
+
+			destination.sendMessage(limit(text)).queue(
+				sent -> posted(message, sent.getId()),
+				error -> failed(message, error)
+			);
+		}
+
+		private void posted(Outbound message, @NullOr String messageId) {
+			delivered.add(message.id());
+
+			synchronized (this) {
+				if (inFlight == message) {
+					inFlight = null;
+					memory.poll();
+				}
+				if (replaying != null) {
+					queueWrite(deliveredFileOf(replaying.path), message.id().toString());
+				}
+				pump();
+			}
+
+			@NullOr Consumer<String> callback = onPosted.remove(message.id());
+			if (callback != null && messageId != null) {
+				callback.accept(messageId);
+			}
+		}
+
+		private void failed(Outbound message, Throwable error) {
+			// Discord refusing the message (e.g. missing permissions) won't change by retrying it.
+			boolean rejected = error instanceof ErrorResponseException;
+
+			synchronized (this) {
+				if (inFlight == message) {
+					inFlight = null;
+					if (rejected) {
+						memory.poll();
+					}
+				}
+				if (rejected) {
+					onPosted.remove(message.id());
+					if (replaying != null) {
+						queueWrite(deliveredFileOf(replaying.path), message.id().toString());
+					}
+					pump();
+				}
+			}
+
+			if (rejected) {
+				reportDropped(channel, 1, "Discord rejected it: " + error.getMessage());
+			} else {
+				// Retried on the next second's refill.
+				plugin.debug(DiscordOutbox.class).log("Outbox", () -> "Could not send to " + channel + ", will retry: " + error);
+			}
+		}
+
+		private void load(Segment segment) {
+			loading = true;
+			if (appending == segment) {
+				appending = null;
+			}
+
+			disk.execute(() -> {
+				List<Outbound> messages = read(segment);
+				synchronized (this) {
+					loading = false;
+					replaying = segment;
+					memory.addAll(messages);
+					pump();
+				}
+			});
+		}
+
+		private List<Outbound> read(Segment segment) {
+			Path deliveredFile = deliveredFileOf(segment.path);
+			List<Outbound> messages = new ArrayList<>();
+
+			try {
+				Set<UUID> done = new HashSet<>();
+				if (Files.isRegularFile(deliveredFile)) {
+					for (String id : Files.readAllLines(deliveredFile, StandardCharsets.UTF_8)) {
+						try { done.add(UUID.fromString(id.trim())); } catch (IllegalArgumentException ignored) {}
+					}
+				}
+				if (Files.isRegularFile(segment.path)) {
+					for (String line : Files.readAllLines(segment.path, StandardCharsets.UTF_8)) {
+						@NullOr Outbound message = Outbound.decode(line);
+						if (message != null && !done.contains(message.id())) {
+							messages.add(message);
+						}
+					}
+				}
+			} catch (IOException e) {
+				plugin.getLogger().warning("Could not replay Discord outbox segment " + segment.path + ": " + e);
+			}
+			return messages;
+		}
+
+		private void delete(Segment segment) {
+			try {
+				Files.deleteIfExists(segment.path);
+				Files.deleteIfExists(deliveredFileOf(segment.path));
+			} catch (IOException e) {
+				plugin.getLogger().warning("Could not delete replayed Discord outbox segment " + segment.path + ": " + e);
+			}
+		}
+
+		synchronized void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+
+			// Whatever is replayed from a segment is already on disk, only memory-only messages need saving.
+			if (!onDisk() && !memory.isEmpty()) {
+				persist(List.copyOf(memory));
+			}
+			memory.clear();
+			inFlight = null;
+		}
+	}
+
+	private static String limit(String text) {
+		return (text.length() <= Message.MAX_CONTENT_LENGTH) ? text : text.substring(0, Message.MAX_CONTENT_LENGTH - 1) + "…";
+	}
+
+	private static Path deliveredFileOf(Path segment) {
+		return segment.resolveSibling(segment.getFileName() + DELIVERED_SUFFIX);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
+import org.bukkit.plugin.RegisteredListener;
+
+import community.leaf.eventful.bukkit.ListenerOrder;
+import community.leaf.eventful.bukkit.annotations.EventListener;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Skips Bukkit's event machinery for this plugin's own events when no other
+ * plugin is listening to them. Internal listeners that must still run are
+ * registered with {@link #internal(Class, Consumer)} and called directly.
+ */
+public class EventDispatcher implements Listener {
+	private record Presence(RegisteredListener[] listeners, boolean external) {}
+
+	private final StaffChatPlugin plugin;
+	private final Map<HandlerList, Presence> presence = new ConcurrentHashMap<>();
+	private final Map<Class<?>, Consumer<Event>> internalHandlers = new ConcurrentHashMap<>();
+
+	EventDispatcher(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Checks whether any plugin other than this one listens to the handler list.
+	 * The result is cached until a plugin is enabled or disabled, or until the
+	 * handler list is re-baked because listeners were registered or removed.
+	 */
+	public boolean hasExternalListeners(HandlerList handlers) {
+		RegisteredListener[] listeners = handlers.getRegisteredListeners();
+		@NullOr Presence cached = presence.get(handlers);
+
+		if (cached != null && cached.listeners() == listeners) {
+			return cached.external();
+		}
+
+		boolean external = false;
+		for (RegisteredListener listener : listeners) {
+			if (listener.getPlugin() != plugin) {
+				external = true;
+				break;
+			}
+		}
+
+		presence.put(handlers, new Presence(listeners, external));
+		return external;
+	}
+
+	/**
+	 * Registers a handler to run in place of Bukkit dispatch when the event
+	 * has no external listeners. Only one handler per event type is kept, so
+	 * handlers for events with several internal listeners should call them in
+	 * priority order themselves.
+	 */
+	@SuppressWarnings("unchecked")
+	public <E extends Event> void internal(Class<E> type, Consumer<? super E> handler) {
+		internalHandlers.put(type, (Consumer<Event>) handler);
+	}
+
+	public <E extends Event> E call(E event) {
+		if (hasExternalListeners(event.getHandlers())) {
+			return plugin.events().call(event);
+		}
+
+		@NullOr Consumer<Event> handler = internalHandlers.get(event.getClass());
+		if (handler != null) {
+			handler.accept(event);
+		}
+
+		return event;
+	}
+
+	public void invalidate() {
+		presence.clear();
+	}
+
+	@EventListener(ListenerOrder.MONITOR)
+	public void onPluginEnable(PluginEnableEvent event) {
+		invalidate();
+	}
+
+	@EventListener(ListenerOrder.MONITOR)
+	public void onPluginDisable(PluginDisableEvent event) {
+		invalidate();
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import com.rezzedup.discordsrv.staffchat.channels.ChannelRegistry;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+import com.rezzedup.discordsrv.staffchat.util.Strings;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Remembers the last messages of each channel, as they were shown in-game,
+ * so that they can be shown again without formatting them again. Each
+ * channel has a fixed-size ring of preallocated arrays.
+ */
+public class MessageHistory {
+	private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm").withZone(ZoneId.systemDefault());
+	private static final ChatService[] SOURCES = ChatService.values();
+
+	public record Entry(Instant time, ChatService source, @NullOr UUID author, String content) {}
+
+	private final StaffChatPlugin plugin;
+	private final Ring[] rings = new Ring[ChannelRegistry.MAX_CHANNELS];
+
+	private volatile int capacity;
+
+	MessageHistory(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		reload();
+	}
+
+	public synchronized void reload() {
+		int updated = Math.max(0, plugin.config().getOrDefault(StaffChatConfig.HISTORY_CAPACITY));
+		if (updated != capacity) {
+			// Rings are preallocated, so changing the capacity starts over.
+			Arrays.fill(rings, null);
+			capacity = updated;
+		}
+	}
+
+	public boolean isEnabled() {
+		return capacity > 0;
+	}
+
+	private @NullOr Ring ring(ChatChannel channel, boolean create) {
+		synchronized (this) {
+			@NullOr Ring ring = rings[channel.id()];
+
+			// Channel ids may be reassigned by a reload.
+			if (ring == null || !ring.channel.equals(channel.name())) {
+				if (!create) {
+					return null;
+				}
+				ring = new Ring(channel.name(), capacity);
+				rings[channel.id()] = ring;
+			}
+			return ring;
+		}
+	}
+
+	void record(ChatChannel channel, ChatService source, @NullOr UUID author, String content) {
+		if (isEnabled()) {
+			ring(channel, true).add(System.currentTimeMillis(), source, author, content);
+		}
+	}
+
+	/**
+	 * The channel's last messages, oldest first.
+	 */
+	public List<Entry> recent(ChatChannel channel, int count) {
+		@NullOr Ring ring = (isEnabled()) ? ring(channel, false) : null;
+		return (ring == null) ? List.of() : ring.last(count);
+	}
+
+	private static String line(Entry entry) {
+		return Strings.colorful("&8[" + TIME.format(entry.time()) + "]&r ") + entry.content();
+	}
+
+	public void show(CommandSender sender, ChatChannel channel, int count) {
+		if (!isEnabled()) {
+			sender.sendMessage(Strings.colorful(channel.formats().tag() + " &7Message history is turned off."));
+			return;
+		}
+
+		List<Entry> entries = recent(channel, Math.max(1, count));
+
+		if (entries.isEmpty()) {
+			sender.sendMessage(Strings.colorful(channel.formats().tag() + " &7No recent messages."));
+			return;
+		}
+
+		sender.sendMessage(Strings.colorful(channel.formats().tag() + " &7Last " + entries.size() + " message(s):"));
+		for (Entry entry : entries) {
+			sender.sendMessage(line(entry));
+		}
+	}
+
+	/**
+	 * Catches a participant up on a channel's recent messages, e.g. when
+	 * they join.
+	 */
+	public void replay(Player player, ChatChannel channel, int count) {
+		for (Entry entry : recent(channel, count)) {
+			plugin.outgoing().send(player, line(entry));
+		}
+	}
+
+	private static final class Ring {
+		private final String channel;
+		private final String[] content;
+		private final long[] timestamps;
+		private final byte[] sources;
+		private final long[] authorMost;
+		private final long[] authorLeast;
+		private final boolean[] hasAuthor;
+
+		private int next = 0;
+		private int size = 0;
+
+		Ring(String channel, int capacity) {
+			this.channel = channel;
+			this.content = new String[capacity];
+			this.timestamps = new long[capacity];
+			this.sources = new byte[capacity];
+			this.authorMost = new long[capacity];
+			this.authorLeast = new long[capacity];
+			this.hasAuthor = new boolean[capacity];
+		}
+
+		synchronized void add(long timestamp, ChatService source, @NullOr UUID author, String text) {
+			int i = next;
+			content[i] = text;
+			timestamps[i] = timestamp;
+			sources[i] = (byte) source.ordinal();
+			hasAuthor[i] = author != null;
+			authorMost[i] = (author == null) ? 0L : author.getMostSignificantBits();
+			authorLeast[i] = (author == null) ? 0L : author.getLeastSignificantBits();
+
+			next = (i + 1) % content.length;
+			size = Math.min(size + 1, content.length);
+		}
+
+		synchronized List<Entry> last(int count) {
+			int n = Math.min(count, size);
+			List<Entry> entries = new ArrayList<>(n);
+
+			for (int k = n; k > 0; k--) {
+				int i = Math.floorMod(next - k, content.length);
+				entries.add(new Entry(
+					Instant.ofEpochMilli(timestamps[i]),
+					SOURCES[sources[i]],
+					(hasAuthor[i]) ? new UUID(authorMost[i], authorLeast[i]) : null,
+					content[i]
+				));
+			}
+			return entries;
+		}
+	}
+}
@@ -5,36 +5,48 @@
 package com.rezzedup.discordsrv.staffchat;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.bukkit.entity.Player;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
 
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.cluster.RelayMessage;
 import com.rezzedup.discordsrv.staffchat.config.MessagesConfig;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
 import com.rezzedup.discordsrv.staffchat.events.ConsoleStaffChatMessageEvent;
 import com.rezzedup.discordsrv.staffchat.events.ConsoleTeamChatMessageEvent;
 import com.rezzedup.discordsrv.staffchat.events.DiscordStaffChatMessageEvent;
 import com.rezzedup.discordsrv.staffchat.events.DiscordTeamChatMessageEvent;
 import com.rezzedup.discordsrv.staffchat.events.PlayerStaffChatMessageEvent;
 import com.rezzedup.discordsrv.staffchat.events.PlayerTeamChatMessageEvent;
+import com.rezzedup.discordsrv.staffchat.events.StaffChatMessageEvent;
+import com.rezzedup.discordsrv.staffchat.events.TeamChatMessageEvent;
 import com.rezzedup.discordsrv.staffchat.util.DiscordRolePlaceholders;
+import com.rezzedup.discordsrv.staffchat.util.EmojiAliases;
+import com.rezzedup.discordsrv.staffchat.util.Lazy;
 import com.rezzedup.discordsrv.staffchat.util.MappedPlaceholder;
-import com.rezzedup.discordsrv.staffchat.util.SecureMessageDelivery;
 import com.rezzedup.discordsrv.staffchat.util.Strings;
 
-import community.leaf.configvalues.bukkit.DefaultYamlValue;
-import github.scarsz.discordsrv.DiscordSRV;
-import github.scarsz.discordsrv.dependencies.emoji.EmojiParser;
 import github.scarsz.discordsrv.dependencies.jda.api.entities.Message;
-import github.scarsz.discordsrv.dependencies.jda.api.entities.TextChannel;
 import github.scarsz.discordsrv.dependencies.jda.api.entities.User;
-import github.scarsz.discordsrv.util.DiscordUtil;
-import me.clip.placeholderapi.PlaceholderAPI;
 import pl.tlinkowski.annotation.basic.NullOr;
 
 public class MessageProcessor {
 	private final StaffChatPlugin plugin;
 
+	// The last async event task per sender, for the next one to run after.
+	private final Map<Object, CompletableFuture<?>> bySender = new ConcurrentHashMap<>();
+
 	MessageProcessor(StaffChatPlugin plugin) {
 		this.plugin = plugin;
 	}
@@ -44,117 +56,353 @@ public class MessageProcessor {
 	}
 
 	private String parsePlaceholders(@NullOr Player player, String text) {
-		return hasPlaceholderAPI() ? PlaceholderAPI.setPlaceholders(player, text) : text;
+		return hasPlaceholderAPI() ? plugin.placeholderCache().apply(player, text) : text;
 	}
 
 	private static String sanitizeUserMessage(String message) {
 		return message.replace('%', '\uFF05');
 	}
 
+	private static @NullOr String textOf(Event event) {
+		if (event instanceof Cancellable cancellable && cancellable.isCancelled()) {
+			return null;
+		}
+		if (event instanceof StaffChatMessageEvent<?, ?> staffChat) {
+			return staffChat.getText();
+		}
+		if (event instanceof TeamChatMessageEvent<?, ?> teamChat) {
+			return teamChat.getText();
+		}
+		return null;
+	}
+
+	/**
+	 * Lets other plugins cancel or rewrite a message before it's delivered.
+	 * The event is only constructed when something else listens to it, and
+	 * it's fired on a worker thread if asynchronous message events are enabled,
+	 * in which case delivery resumes on the main thread afterwards. A sender's
+	 * messages are filtered one at a time, so they're delivered in the order
+	 * they were sent.
+	 */
+	private void filterThroughEvent(
+		Object sender,
+		HandlerList handlers,
+		String text,
+		ChatService source,
+		Function<Boolean, Event> event,
+		Consumer<String> delivery
+	) {
+		if (!plugin.eventDispatcher().hasExternalListeners(handlers)) {
+			deliverIfPresent(source, text, delivery);
+			return;
+		}
+
+		if (!plugin.config().getOrDefault(StaffChatConfig.ASYNC_MESSAGE_EVENTS)) {
+			deliverIfPresent(source, textOf(plugin.events().call(event.apply(false))), delivery);
+			return;
+		}
+
+		runInOrder(sender, () -> {
+			@NullOr String filtered = textOf(plugin.events().call(event.apply(true)));
+			// Handed back in the same order, and the server runs its tasks in the order they're scheduled.
+			plugin.sync().run(() -> deliverIfPresent(source, filtered, delivery));
+		});
+	}
+
+	private void runInOrder(Object sender, Runnable task) {
+		Runnable tracked = plugin.shutdown().track(task, true);
+		CompletableFuture<?>[] queued = {null};
+
+		bySender.compute(sender, (k, previous) -> queued[0] = (previous == null)
+			? CompletableFuture.runAsync(tracked, plugin.io())
+			: previous.exceptionally(e -> null).thenRunAsync(tracked, plugin.io())
+		);
+
+		queued[0].whenComplete((ignored, e) -> {
+			bySender.remove(sender, queued[0]);
+			if (e != null) {
+				plugin.debug(getClass()).logException("Message", e);
+			}
+		});
+	}
+
+	private void deliverIfPresent(ChatService source, @NullOr String text, Consumer<String> delivery) {
+		if (Strings.isEmptyOrNull(text)) {
+			plugin.debug(getClass()).log(source, "Message", () -> "Cancelled or text is empty");
+			return;
+		}
+		delivery.accept(text);
+	}
+
 	private void sendFormattedChatMessage(
-		boolean teamChat,
+		ChatChannel channel,
 		@NullOr Object author,
-		DefaultYamlValue<String> format,
+		String format,
 		MappedPlaceholder placeholders,
-		DefaultYamlValue<String> leftChatReminder
+		String leftChatReminder
 	) {
+		// Work out who will see the message before rendering anything.
+		List<Player> recipients = plugin.getCachedParticipants(channel);
+		boolean echoToConsole = plugin.config().getOrDefault(StaffChatConfig.ECHO_TO_CONSOLE);
+
+		@NullOr Player leftChat = null;
+		if (author instanceof Player player && !plugin.data().getOrCreateProfile(player).receivesMessages(channel)) {
+			leftChat = player;
+		}
+
+		boolean toPlayers = !recipients.isEmpty() || leftChat != null;
+
+		if (!toPlayers && !echoToConsole && !plugin.history().isEnabled()) {
+			plugin.debug(getClass()).log("Message", () -> "Nobody to show " + channel.name() + " message to, skipped");
+			return;
+		}
+
 		if (Strings.isEmptyOrNull(placeholders.get("message"))) {
 			return;
 		}
 
-		String formatted = plugin.messages().getOrDefault(format);
+		placeholders.map("channel").to(channel::displayName);
+		placeholders.map("channel-prefix").to(() -> channel.formats().tag());
+
+		ChatService source = (author instanceof User) ? ChatService.DISCORD : ChatService.MINECRAFT;
+		@NullOr UUID authorId = (author instanceof Player player) ? player.getUniqueId() : null;
+
+		if (!toPlayers) {
+			// Nobody in-game sees it, so this line skips PlaceholderAPI.
+			String line = Strings.colorful(placeholders.update(format));
+			plugin.history().record(channel, source, authorId, line);
+			if (echoToConsole) {
+				plugin.getServer().getConsoleSender().sendMessage(line);
+			}
+			return;
+		}
+
+		String formatted = format;
 		if (hasPlaceholderAPI()) {
 			@NullOr Player player = (author instanceof Player) ? (Player) author : null;
 			formatted = parsePlaceholders(player, formatted);
 		}
-
 		String content = Strings.colorful(placeholders.update(formatted));
+		plugin.history().record(channel, source, authorId, content);
 
-		if (author instanceof Player player) {
-			StaffChatProfile profile = plugin.data().getOrCreateProfile(player);
-			boolean receives = teamChat ? profile.receivesTeamChatMessages() : profile.receivesStaffChatMessages();
-			if (!receives) {
-				String reminder = Strings.colorful(placeholders.update(
-					plugin.messages().getOrDefault(leftChatReminder)
-				));
-				SecureMessageDelivery.send(player, content);
-				SecureMessageDelivery.send(player, reminder);
-				if (teamChat) {
-					plugin.config().playTeamNotificationSound(player);
-				} else {
-					plugin.config().playNotificationSound(player);
-				}
-			}
+		if (leftChat != null) {
+			String reminder = Strings.colorful(placeholders.update(leftChatReminder));
+			plugin.outgoing().send(leftChat, content);
+			plugin.outgoing().send(leftChat, reminder);
+			plugin.outgoing().playNotificationSound(channel, leftChat);
 		}
 
-		List<Player> recipients = teamChat
-			? plugin.getCachedTeamParticipants()
-			: plugin.getCachedStaffParticipants();
-
-		SecureMessageDelivery.sendToMany(recipients, content);
+		plugin.outgoing().sendToMany(recipients, content);
 		for (Player recipient : recipients) {
-			if (teamChat) {
-				plugin.config().playTeamMessageSound(recipient);
-			} else {
-				plugin.config().playMessageSound(recipient);
-			}
+			plugin.outgoing().playMessageSound(channel, recipient);
 		}
 
-		plugin.getServer().getConsoleSender().sendMessage(content);
+		if (echoToConsole) {
+			plugin.getServer().getConsoleSender().sendMessage(content);
+		}
 	}
 
-	private void sendToDiscord(String channel, Consumer<TextChannel> sender) {
-		@NullOr TextChannel discordChannel = channel.equals(StaffChatPlugin.TEAM_CHANNEL)
-			? plugin.getTeamDiscordChannelOrNull()
-			: plugin.getDiscordChannelOrNull();
+	private boolean postsToDiscord(ChatChannel channel) {
+		if (plugin.discordEgress().isLeader(channel)) {
+			return true;
+		}
 
-		if (discordChannel == null) {
+		if (plugin.discordEgress().isElecting()) {
 			plugin.debug(getClass()).log(ChatService.MINECRAFT, "Message", () ->
-				"Unable to send message to discord: " + channel + " => null"
+				"Another server posts " + channel.name() + " messages to discord, relayed instead"
+			);
+		} else {
+			plugin.debug(getClass()).log(ChatService.MINECRAFT, "Message", () ->
+				"DiscordSRV hook is not enabled, cannot send to discord"
 			);
-			return;
 		}
+		return false;
+	}
 
-		plugin.debug(getClass()).log(ChatService.MINECRAFT, "Message", () ->
-			"Sending message to discord channel: " + channel + " => " + discordChannel
+	/**
+	 * Whether a message that another server posts to Discord should be kept
+	 * here in case that server never acknowledges it.
+	 */
+	private boolean postsIfUnacknowledged(ChatChannel channel) {
+		return plugin.discordEgress().isElecting() && plugin.getDiscordChannelOrNull(channel) != null;
+	}
+
+	private void deliverConsoleChat(ChatChannel channel, String text) {
+		MappedPlaceholder placeholders = plugin.messages().placeholders();
+		placeholders.map("message", "content", "text").to(() -> sanitizeUserMessage(text));
+
+		sendFormattedChatMessage(
+			channel,
+			null,
+			channel.formats().inGameConsole(),
+			placeholders,
+			channel.formats().leftReminder()
 		);
 
-		sender.accept(discordChannel);
+		plugin.audit().record(channel, ChatService.MINECRAFT, null, "CONSOLE", text);
+
+		// Rendered up front: the outbox may hold onto it until Discord is reachable again.
+		Supplier<DiscordOutbox.Outbound> toDiscord = () ->
+			DiscordOutbox.Outbound.raw(channel.discordChannel(), placeholders.update(channel.formats().discordConsole()));
+
+		if (postsToDiscord(channel)) {
+			plugin.cluster().publishConsole(channel, text);
+			plugin.discordOutbox().send(toDiscord.get());
+		} else if (postsIfUnacknowledged(channel)) {
+			plugin.cluster().publishConsole(channel, text, toDiscord.get());
+		} else {
+			plugin.cluster().publishConsole(channel, text);
+		}
 	}
 
-	public void processConsoleChat(String message) {
-		Objects.requireNonNull(message, "message");
-		plugin.debug(getClass()).logConsoleChatMessage(message);
+	private void deliverPlayerChat(ChatChannel channel, Player author, String text) {
+		MappedPlaceholder placeholders = plugin.messages().placeholders(author);
+		placeholders.map("message", "content", "text").to(() -> sanitizeUserMessage(text));
 
-		ConsoleStaffChatMessageEvent event =
-			plugin.events().call(new ConsoleStaffChatMessageEvent(message));
+		sendFormattedChatMessage(
+			channel,
+			author,
+			channel.formats().inGamePlayer(),
+			placeholders,
+			channel.formats().leftReminder()
+		);
 
-		if (event.isCancelled() || event.getText().isEmpty()) {
-			plugin.debug(getClass()).log(ChatService.MINECRAFT, event, () -> "Cancelled or text is empty");
-			return;
+		plugin.audit().record(channel, ChatService.MINECRAFT, author.getUniqueId(), author.getName(), text);
+
+		Supplier<DiscordOutbox.Outbound> toDiscord = () ->
+			DiscordOutbox.Outbound.chat(channel.discordChannel(), author, sanitizeUserMessage(text));
+
+		if (postsToDiscord(channel)) {
+			plugin.cluster().publishPlayer(channel, author, text);
+			plugin.discordOutbox().send(toDiscord.get());
+		} else if (postsIfUnacknowledged(channel)) {
+			plugin.cluster().publishPlayer(channel, author, text, toDiscord.get());
+		} else {
+			plugin.cluster().publishPlayer(channel, author, text);
+		}
+	}
+
+	private void deliverDiscordChat(ChatChannel channel, User author, Message message, String text) {
+		plugin.audit().record(channel, ChatService.DISCORD, null, author.getName() + " (" + author.getId() + ")", text);
+
+		// Emoji and roles are only looked up if someone actually sees the message.
+		MappedPlaceholder placeholders = DiscordRolePlaceholders.forDiscordMessage(
+			author,
+			message,
+			Lazy.of(() -> EmojiAliases.parseToAliases(text))
+		);
+
+		sendFormattedChatMessage(
+			channel,
+			author,
+			channel.formats().inGameDiscord(),
+			placeholders,
+			channel.formats().leftReminder()
+		);
+
+		// Only the egress leader reads from Discord, so it shares messages with the other servers.
+		if (plugin.discordEgress().isElecting()) {
+			plugin.cluster().publishDiscord(channel, author, text);
 		}
+	}
+
+	/**
+	 * Shows a message relayed from another server. It was already filtered
+	 * by its origin; it's posted to Discord here only if this server is the
+	 * channel's egress leader and the origin isn't.
+	 */
+	void deliverRemoteChat(ChatChannel channel, RelayMessage message) {
+		plugin.debug(getClass()).log(ChatService.MINECRAFT, "Message", () ->
+			"from(" + message.authorName() + "@" + message.origin() + ") message(\"" + message.text() + "\")"
+		);
 
 		MappedPlaceholder placeholders = plugin.messages().placeholders();
-		placeholders.map("message", "content", "text").to(() -> sanitizeUserMessage(event.getText()));
+		placeholders.map("message", "content", "text").to(() -> sanitizeUserMessage(message.text()));
+		placeholders.map("server", "origin").to(message::origin);
 
+		String format = switch (message.kind()) {
+			case PLAYER -> channel.formats().inGamePlayer();
+			case DISCORD -> channel.formats().inGameDiscord();
+			default -> channel.formats().inGameConsole();
+		};
+
+		if (message.kind() != RelayMessage.Kind.CONSOLE) {
+			placeholders.map("user", "name", "username", "player", "sender", "nickname", "displayname").to(message::authorName);
+		}
+
+		sendFormattedChatMessage(channel, null, format, placeholders, channel.formats().leftReminder());
+
+		if (message.kind() == RelayMessage.Kind.DISCORD
+			|| !plugin.discordEgress().isElecting()
+			|| !plugin.discordEgress().isLeader(channel)) {
+			return;
+		}
+
+		// The relayed id doubles as the outbox id, so a message forwarded twice is posted once.
+		plugin.discordOutbox().send((message.kind() == RelayMessage.Kind.PLAYER)
+			? new DiscordOutbox.Outbound(
+				message.id(),
+				channel.discordChannel(),
+				message.author(),
+				message.authorName(),
+				sanitizeUserMessage(message.text()),
+				false
+			)
+			: new DiscordOutbox.Outbound(
+				message.id(),
+				channel.discordChannel(),
+				null,
+				"",
+				placeholders.update(channel.formats().discordConsole()),
+				true
+			)
+		);
+		plugin.cluster().acknowledge(message);
+	}
+
+	private void notifyRateLimited(ChatChannel channel, Player player) {
+		if (channel.isStaffChat()) {
+			plugin.messages().notifyRateLimited(player);
+		} else if (channel.isTeamChat()) {
+			plugin.messages().notifyTeamRateLimited(player);
+		} else {
+			MappedPlaceholder placeholders = plugin.messages().placeholders(player);
+			placeholders.map("channel").to(channel::displayName);
+			placeholders.map("channel-prefix").to(() -> channel.formats().tag());
+			player.sendMessage(Strings.colorful(placeholders.update(channel.formats().rateLimited())));
+			plugin.channels().playNotificationSound(channel, player);
+		}
+	}
+
+	public void processAlert(MappedPlaceholder placeholders) {
+		ChatChannel staff = plugin.channels().staff();
 		sendFormattedChatMessage(
-			false,
+			staff,
 			null,
-			MessagesConfig.IN_GAME_CONSOLE_FORMAT,
+			plugin.messages().getOrDefault(MessagesConfig.IN_GAME_ALERT_FORMAT),
 			placeholders,
-			MessagesConfig.LEFT_CHAT_NOTIFICATION_REMINDER
+			staff.formats().leftReminder()
 		);
+	}
 
-		if (plugin.isDiscordSrvHookEnabled()) {
-			String discordMessage = placeholders.update(
-				plugin.messages().getOrDefault(MessagesConfig.DISCORD_CONSOLE_FORMAT)
-			);
-			sendToDiscord(StaffChatPlugin.CHANNEL, channel -> DiscordUtil.queueMessage(channel, discordMessage, true));
-		} else {
-			plugin.debug(getClass()).log(ChatService.MINECRAFT, "Message", () ->
-				"DiscordSRV hook is not enabled, cannot send to discord"
-			);
+	public void processConsoleChat(String message) {
+		Objects.requireNonNull(message, "message");
+		plugin.debug(getClass()).logConsoleChatMessage(message);
+
+		ChatChannel channel = plugin.channels().staff();
+		if (!plugin.floodControl().tryAcquireConsole(channel)) {
+			plugin.floodControl().reportConsoleRejected(channel, message);
+			return;
 		}
+
+		filterThroughEvent(
+			"CONSOLE",
+			ConsoleStaffChatMessageEvent.getHandlerList(),
+			message,
+			ChatService.MINECRAFT,
+			isAsync -> new ConsoleStaffChatMessageEvent(message, isAsync),
+			text -> deliverConsoleChat(channel, text)
+		);
 	}
 
 	public void processPlayerChat(Player author, String message) {
@@ -170,35 +418,20 @@ public class MessageProcessor {
 
 		plugin.debug(getClass()).logPlayerChatMessage(author, message);
 
-		PlayerStaffChatMessageEvent event =
-			plugin.events().call(new PlayerStaffChatMessageEvent(author, message));
-
-		if (event.isCancelled() || event.getText().isEmpty()) {
-			plugin.debug(getClass()).log(ChatService.MINECRAFT, event, () -> "Cancelled or text is empty");
+		ChatChannel channel = plugin.channels().staff();
+		if (!plugin.floodControl().tryAcquire(channel, author)) {
+			notifyRateLimited(channel, author);
 			return;
 		}
 
-		MappedPlaceholder placeholders = plugin.messages().placeholders(author);
-		placeholders.map("message", "content", "text").to(() -> sanitizeUserMessage(event.getText()));
-
-		sendFormattedChatMessage(
-			false,
-			author,
-			MessagesConfig.IN_GAME_PLAYER_FORMAT,
-			placeholders,
-			MessagesConfig.LEFT_CHAT_NOTIFICATION_REMINDER
+		filterThroughEvent(
+			author.getUniqueId(),
+			PlayerStaffChatMessageEvent.getHandlerList(),
+			message,
+			ChatService.MINECRAFT,
+			isAsync -> new PlayerStaffChatMessageEvent(author, message, isAsync),
+			text -> deliverPlayerChat(channel, author, text)
 		);
-
-		if (plugin.isDiscordSrvHookEnabled()) {
-			String sanitized = sanitizeUserMessage(message);
-			sendToDiscord(StaffChatPlugin.CHANNEL, channel -> plugin.runAsync(() ->
-				DiscordSRV.getPlugin().processChatMessage(author, sanitized, StaffChatPlugin.CHANNEL, false)
-			));
-		} else {
-			plugin.debug(getClass()).log(ChatService.MINECRAFT, "Message", () ->
-				"DiscordSRV hook is not enabled, cannot send to discord"
-			);
-		}
 	}
 
 	public void processDiscordChat(User author, Message message) {
@@ -207,23 +440,18 @@ public class MessageProcessor {
 
 		plugin.debug(getClass()).logDiscordChatMessage(author, message);
 
-		DiscordStaffChatMessageEvent event =
-			plugin.events().call(new DiscordStaffChatMessageEvent(author, message, message.getContentStripped()));
-
-		if (event.isCancelled() || event.getText().isEmpty()) {
-			plugin.debug(getClass()).log(ChatService.DISCORD, "Message", () -> "Cancelled or text is empty");
+		ChatChannel channel = plugin.channels().staff();
+		if (!plugin.floodControl().tryAcquire(channel, author)) {
 			return;
 		}
 
-		String text = EmojiParser.parseToAliases(event.getText());
-		MappedPlaceholder placeholders = DiscordRolePlaceholders.forDiscordMessage(author, message, text);
-
-		sendFormattedChatMessage(
-			false,
-			author,
-			MessagesConfig.IN_GAME_DISCORD_FORMAT,
-			placeholders,
-			MessagesConfig.LEFT_CHAT_NOTIFICATION_REMINDER
+		filterThroughEvent(
+			author.getId(),
+			DiscordStaffChatMessageEvent.getHandlerList(),
+			message.getContentStripped(),
+			ChatService.DISCORD,
+			isAsync -> new DiscordStaffChatMessageEvent(author, message, message.getContentStripped(), isAsync),
+			text -> deliverDiscordChat(channel, author, message, text)
 		);
 	}
 
@@ -231,35 +459,20 @@ public class MessageProcessor {
 		Objects.requireNonNull(message, "message");
 		plugin.debug(getClass()).logConsoleChatMessage(message);
 
-		ConsoleTeamChatMessageEvent event =
-			plugin.events().call(new ConsoleTeamChatMessageEvent(message));
-
-		if (event.isCancelled() || event.getText().isEmpty()) {
-			plugin.debug(getClass()).log(ChatService.MINECRAFT, event, () -> "Cancelled or text is empty");
+		ChatChannel channel = plugin.channels().team();
+		if (!plugin.floodControl().tryAcquireConsole(channel)) {
+			plugin.floodControl().reportConsoleRejected(channel, message);
 			return;
 		}
 
-		MappedPlaceholder placeholders = plugin.messages().placeholders();
-		placeholders.map("message", "content", "text").to(() -> sanitizeUserMessage(event.getText()));
-
-		sendFormattedChatMessage(
-			true,
-			null,
-			MessagesConfig.TEAM_IN_GAME_CONSOLE_FORMAT,
-			placeholders,
-			MessagesConfig.LEFT_TEAM_CHAT_NOTIFICATION_REMINDER
+		filterThroughEvent(
+			"CONSOLE",
+			ConsoleTeamChatMessageEvent.getHandlerList(),
+			message,
+			ChatService.MINECRAFT,
+			isAsync -> new ConsoleTeamChatMessageEvent(message, isAsync),
+			text -> deliverConsoleChat(channel, text)
 		);
-
-		if (plugin.isDiscordSrvHookEnabled()) {
-			String discordMessage = placeholders.update(
-				plugin.messages().getOrDefault(MessagesConfig.TEAM_DISCORD_CONSOLE_FORMAT)
-			);
-			sendToDiscord(StaffChatPlugin.TEAM_CHANNEL, channel -> DiscordUtil.queueMessage(channel, discordMessage, true));
-		} else {
-			plugin.debug(getClass()).log(ChatService.MINECRAFT, "Message", () ->
-				"DiscordSRV hook is not enabled, cannot send to discord"
-			);
-		}
 	}
 
 	public void processPlayerTeamChat(Player author, String message) {
@@ -275,60 +488,95 @@ public class MessageProcessor {
 
 		plugin.debug(getClass()).logPlayerChatMessage(author, message);
 
-		PlayerTeamChatMessageEvent event =
-			plugin.events().call(new PlayerTeamChatMessageEvent(author, message));
-
-		if (event.isCancelled() || event.getText().isEmpty()) {
-			plugin.debug(getClass()).log(ChatService.MINECRAFT, event, () -> "Cancelled or text is empty");
+		ChatChannel channel = plugin.channels().team();
+		if (!plugin.floodControl().tryAcquire(channel, author)) {
+			notifyRateLimited(channel, author);
 			return;
 		}
 
-		MappedPlaceholder placeholders = plugin.messages().placeholders(author);
-		placeholders.map("message", "content", "text").to(() -> sanitizeUserMessage(event.getText()));
+		filterThroughEvent(
+			author.getUniqueId(),
+			PlayerTeamChatMessageEvent.getHandlerList(),
+			message,
+			ChatService.MINECRAFT,
+			isAsync -> new PlayerTeamChatMessageEvent(author, message, isAsync),
+			text -> deliverPlayerChat(channel, author, text)
+		);
+	}
 
-		sendFormattedChatMessage(
-			true,
-			author,
-			MessagesConfig.TEAM_IN_GAME_PLAYER_FORMAT,
-			placeholders,
-			MessagesConfig.LEFT_TEAM_CHAT_NOTIFICATION_REMINDER
+	public void processDiscordTeamChat(User author, Message message) {
+		Objects.requireNonNull(author, "author");
+		Objects.requireNonNull(message, "message");
+
+		plugin.debug(getClass()).logDiscordChatMessage(author, message);
+
+		ChatChannel channel = plugin.channels().team();
+		if (!plugin.floodControl().tryAcquire(channel, author)) {
+			return;
+		}
+
+		filterThroughEvent(
+			author.getId(),
+			DiscordTeamChatMessageEvent.getHandlerList(),
+			message.getContentStripped(),
+			ChatService.DISCORD,
+			isAsync -> new DiscordTeamChatMessageEvent(author, message, message.getContentStripped(), isAsync),
+			text -> deliverDiscordChat(channel, author, message, text)
 		);
+	}
 
-		if (plugin.isDiscordSrvHookEnabled()) {
-			String sanitized = sanitizeUserMessage(message);
-			sendToDiscord(StaffChatPlugin.TEAM_CHANNEL, channel -> plugin.runAsync(() ->
-				DiscordSRV.getPlugin().processChatMessage(author, sanitized, StaffChatPlugin.TEAM_CHANNEL, false)
-			));
-		} else {
+	// Channels defined in the config don't have API events, so these deliver directly.
+
+	public void processConsoleChat(ChatChannel channel, String message) {
+		Objects.requireNonNull(channel, "channel");
+		Objects.requireNonNull(message, "message");
+		plugin.debug(getClass()).logConsoleChatMessage(message);
+
+		if (!plugin.floodControl().tryAcquireConsole(channel)) {
+			plugin.floodControl().reportConsoleRejected(channel, message);
+			return;
+		}
+
+		deliverIfPresent(ChatService.MINECRAFT, message, text -> deliverConsoleChat(channel, text));
+	}
+
+	public void processPlayerChat(ChatChannel channel, Player author, String message) {
+		Objects.requireNonNull(channel, "channel");
+		Objects.requireNonNull(author, "author");
+		Objects.requireNonNull(message, "message");
+
+		if (channel.denies(author)) {
 			plugin.debug(getClass()).log(ChatService.MINECRAFT, "Message", () ->
-				"DiscordSRV hook is not enabled, cannot send to discord"
+				"Rejected " + channel.name() + " chat from " + author.getName() + ": missing permission"
 			);
+			return;
 		}
+
+		plugin.debug(getClass()).logPlayerChatMessage(author, message);
+
+		if (!plugin.floodControl().tryAcquire(channel, author)) {
+			notifyRateLimited(channel, author);
+			return;
+		}
+
+		deliverIfPresent(ChatService.MINECRAFT, message, text -> deliverPlayerChat(channel, author, text));
 	}
 
-	public void processDiscordTeamChat(User author, Message message) {
+	public void processDiscordChat(ChatChannel channel, User author, Message message) {
+		Objects.requireNonNull(channel, "channel");
 		Objects.requireNonNull(author, "author");
 		Objects.requireNonNull(message, "message");
 
 		plugin.debug(getClass()).logDiscordChatMessage(author, message);
 
-		DiscordTeamChatMessageEvent event =
-			plugin.events().call(new DiscordTeamChatMessageEvent(author, message, message.getContentStripped()));
-
-		if (event.isCancelled() || event.getText().isEmpty()) {
-			plugin.debug(getClass()).log(ChatService.DISCORD, "Message", () -> "Cancelled or text is empty");
+		if (!plugin.floodControl().tryAcquire(channel, author)) {
 			return;
 		}
 
-		String text = EmojiParser.parseToAliases(event.getText());
-		MappedPlaceholder placeholders = DiscordRolePlaceholders.forDiscordMessage(author, message, text);
-
-		sendFormattedChatMessage(
-			true,
-			author,
-			MessagesConfig.TEAM_IN_GAME_DISCORD_FORMAT,
-			placeholders,
-			MessagesConfig.LEFT_TEAM_CHAT_NOTIFICATION_REMINDER
+		deliverIfPresent(
+			ChatService.DISCORD,
+			message.getContentStripped(),
+			text -> deliverDiscordChat(channel, author, message, text)
 		);
 	}
 }
@@ -0,0 +1,206 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.bukkit.entity.Player;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+import com.rezzedup.discordsrv.staffchat.util.SecureMessageDelivery;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Buffers chat lines per recipient and sends them once per tick as a single
+ * multi-line message, with at most one sound. Recipients that end up with
+ * the exact same lines are sent to together. When coalescing is disabled,
+ * everything is sent immediately instead.
+ */
+public class OutgoingMessages {
+	private static final class Pending {
+		private final Player player;
+		private final List<String> lines = new ArrayList<>(2);
+		private @NullOr ChatChannel soundChannel;
+		private boolean notificationSound = false;
+		private boolean flushed = false; // Once set, lines go to a new entry instead.
+
+		Pending(Player player) {
+			this.player = player;
+		}
+	}
+
+	private final StaffChatPlugin plugin;
+	private final Map<UUID, Pending> pending = new ConcurrentHashMap<>(64);
+
+	private volatile boolean coalescing;
+	private @NullOr MyScheduledTask task;
+
+	OutgoingMessages(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		reload();
+	}
+
+	public void reload() {
+		coalescing = plugin.config().getOrDefault(StaffChatConfig.COALESCE_MESSAGES);
+
+		cancelTask();
+		flush();
+
+		if (coalescing) {
+			task = StaffChatPlugin.getScheduler().runTaskTimer(this::flush, 1L, 1L);
+		}
+	}
+
+	public void end() {
+		cancelTask();
+		flush();
+	}
+
+	private void cancelTask() {
+		if (task != null && !task.isCancelled()) {
+			try { task.cancel(); } catch (Throwable ignored) {}
+		}
+		task = null;
+	}
+
+	/**
+	 * Runs the update on the recipient's pending entry, under its lock. If
+	 * the entry was flushed in the meantime, it's retried on a new one.
+	 */
+	private void update(Player player, Consumer<Pending> update) {
+		while (true) {
+			Pending entry = pending.computeIfAbsent(player.getUniqueId(), uuid -> new Pending(player));
+			synchronized (entry) {
+				if (!entry.flushed) {
+					update.accept(entry);
+					return;
+				}
+			}
+		}
+	}
+
+	public void send(Player recipient, String message) {
+		if (!coalescing) {
+			SecureMessageDelivery.send(recipient, message);
+			return;
+		}
+
+		update(recipient, entry -> entry.lines.add(message));
+	}
+
+	public void sendToMany(Collection<? extends Player> recipients, String message) {
+		if (!coalescing) {
+			deliver(recipients, message);
+			return;
+		}
+
+		for (Player recipient : recipients) {
+			send(recipient, message);
+		}
+	}
+
+	public void playMessageSound(ChatChannel channel, Player recipient) {
+		queueSound(channel, recipient, false);
+	}
+
+	public void playNotificationSound(ChatChannel channel, Player recipient) {
+		queueSound(channel, recipient, true);
+	}
+
+	private void queueSound(ChatChannel channel, Player recipient, boolean notification) {
+		if (!coalescing) {
+			playSound(channel, recipient, notification);
+			return;
+		}
+
+		update(recipient, entry -> {
+			// A notification is more important than a regular message sound.
+			if (entry.soundChannel == null || (notification && !entry.notificationSound)) {
+				entry.soundChannel = channel;
+				entry.notificationSound = notification;
+			}
+		});
+	}
+
+	private void playSound(ChatChannel channel, Player recipient, boolean notification) {
+		if (notification) {
+			plugin.channels().playNotificationSound(channel, recipient);
+		} else {
+			plugin.channels().playMessageSound(channel, recipient);
+		}
+	}
+
+	private void deliver(Collection<? extends Player> recipients, String message) {
+		SecureMessageDelivery.sendToMany(recipients, message);
+	}
+
+	private void flush() {
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		Map<String, List<Player>> recipientsByMessage = new HashMap<>();
+
+		for (UUID uuid : pending.keySet()) {
+			@NullOr Pending entry = pending.remove(uuid);
+			if (entry == null) {
+				continue;
+			}
+
+			String message;
+			@NullOr ChatChannel soundChannel;
+			boolean notification;
+
+			synchronized (entry) {
+				entry.flushed = true;
+				message = String.join("\n", entry.lines);
+				soundChannel = entry.soundChannel;
+				notification = entry.notificationSound;
+			}
+
+			if (!entry.player.isOnline()) {
+				continue;
+			}
+
+			if (!message.isEmpty()) {
+				recipientsByMessage.computeIfAbsent(message, k -> new ArrayList<>()).add(entry.player);
+			}
+
+			if (soundChannel != null) {
+				playSound(soundChannel, entry.player, notification);
+			}
+		}
+
+		recipientsByMessage.forEach((message, recipients) -> deliver(recipients, message));
+	}
+}
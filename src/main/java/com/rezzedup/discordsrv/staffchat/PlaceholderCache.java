@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+
+import community.leaf.configvalues.bukkit.util.Sections;
+import community.leaf.eventful.bukkit.ListenerOrder;
+import community.leaf.eventful.bukkit.annotations.EventListener;
+import me.clip.placeholderapi.PlaceholderAPI;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Resolves PlaceholderAPI placeholders in chat formats. Formats are split
+ * into tokens once, only tokens belonging to a registered expansion are
+ * resolved, and results are kept per player for as long as the config says
+ * that expansion's values may be reused.
+ */
+public class PlaceholderCache implements Listener {
+	private static final Pattern TOKEN = Pattern.compile("%([^%\\s_]+)(_[^%\\s]*)?%");
+
+	private static final int MAX_COMPILED_FORMATS = 256;
+	private static final String TTL_OVERRIDES_PATH = "placeholderapi.cache-seconds";
+
+	// Results for placeholders resolved without a player.
+	private static final UUID NO_PLAYER = new UUID(0L, 0L);
+
+	private record Token(int start, int end, String text, String identifier) {}
+
+	private record CompiledFormat(String format, List<Token> tokens) {}
+
+	private record Result(String value, long expiresAt) {}
+
+	private final StaffChatPlugin plugin;
+	private final Map<String, CompiledFormat> compiled = new ConcurrentHashMap<>();
+	private final Map<UUID, Map<String, Result>> results = new ConcurrentHashMap<>();
+
+	private volatile long defaultTtlMillis;
+	private volatile Map<String, Long> ttlMillisByIdentifier = Map.of();
+
+	PlaceholderCache(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		reload();
+	}
+
+	public void reload() {
+		defaultTtlMillis = Math.max(0, plugin.config().getOrDefault(StaffChatConfig.PLACEHOLDER_CACHE_SECONDS)) * 1000L;
+
+		Map<String, Long> overrides = new ConcurrentHashMap<>();
+		Sections.get(plugin.config().data(), TTL_OVERRIDES_PATH).ifPresent(section -> {
+			for (String identifier : section.getKeys(false)) {
+				overrides.put(identifier.toLowerCase(), Math.max(0L, section.getLong(identifier)) * 1000L);
+			}
+		});
+
+		ttlMillisByIdentifier = Map.copyOf(overrides);
+		compiled.clear();
+		results.clear();
+	}
+
+	public void invalidate(UUID uuid) {
+		results.remove(uuid);
+	}
+
+	private long ttlMillis(String identifier) {
+		@NullOr Long override = ttlMillisByIdentifier.get(identifier.toLowerCase());
+		return (override != null) ? override : defaultTtlMillis;
+	}
+
+	private CompiledFormat compile(String format) {
+		@NullOr CompiledFormat existing = compiled.get(format);
+		if (existing != null) {
+			return existing;
+		}
+
+		List<Token> tokens = new ArrayList<>();
+		Matcher matcher = TOKEN.matcher(format);
+		while (matcher.find()) {
+			tokens.add(new Token(matcher.start(), matcher.end(), matcher.group(), matcher.group(1)));
+		}
+
+		if (compiled.size() >= MAX_COMPILED_FORMATS) {
+			compiled.clear();
+		}
+
+		CompiledFormat result = new CompiledFormat(format, List.copyOf(tokens));
+		compiled.put(format, result);
+		return result;
+	}
+
+	/**
+	 * Replaces PlaceholderAPI placeholders in the format. Anything that isn't a
+	 * registered expansion's placeholder, like this plugin's own placeholders,
+	 * is left untouched.
+	 */
+	public String apply(@NullOr Player player, String format) {
+		CompiledFormat compiledFormat = compile(format);
+		if (compiledFormat.tokens().isEmpty()) {
+			return format;
+		}
+
+		@NullOr StringBuilder builder = null;
+		int copied = 0;
+
+		for (Token token : compiledFormat.tokens()) {
+			if (!PlaceholderAPI.isRegistered(token.identifier())) {
+				continue;
+			}
+
+			if (builder == null) {
+				builder = new StringBuilder(format.length() + 32);
+			}
+
+			builder.append(format, copied, token.start());
+			builder.append(resolve(player, token));
+			copied = token.end();
+		}
+
+		if (builder == null) {
+			return format;
+		}
+
+		builder.append(format, copied, format.length());
+		return builder.toString();
+	}
+
+	private String resolve(@NullOr Player player, Token token) {
+		long ttl = ttlMillis(token.identifier());
+		if (ttl <= 0) {
+			return PlaceholderAPI.setPlaceholders(player, token.text());
+		}
+
+		long now = System.currentTimeMillis();
+		UUID uuid = (player != null) ? player.getUniqueId() : NO_PLAYER;
+		Map<String, Result> cached = results.computeIfAbsent(uuid, k -> new ConcurrentHashMap<>());
+
+		@NullOr Result result = cached.get(token.text());
+		if (result != null && now < result.expiresAt()) {
+			return result.value();
+		}
+
+		String value = PlaceholderAPI.setPlaceholders(player, token.text());
+		cached.put(token.text(), new Result(value, now + ttl));
+		return value;
+	}
+
+	@EventListener(ListenerOrder.MONITOR)
+	public void onQuit(PlayerQuitEvent event) {
+		invalidate(event.getPlayer().getUniqueId());
+	}
+}
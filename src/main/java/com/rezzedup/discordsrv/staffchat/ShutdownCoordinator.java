@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.HandlerList;
+
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+
+/**
+ * Finishes work that's still in flight when the plugin is disabled, so that
+ * messages sent right before a restart aren't lost. Immediate tasks handed to
+ * the scheduler are tracked until they've run; on shutdown, intake is stopped
+ * and everything already accepted is drained within a configured deadline.
+ * Once that's done the coordinator is closed: tasks handed to it afterwards
+ * (e.g. by async tasks that outlived the deadline) are run right away when
+ * that's safe, and rejected and reported otherwise.
+ */
+public class ShutdownCoordinator {
+	private final StaffChatPlugin plugin;
+	private final Set<Tracked> inFlight = ConcurrentHashMap.newKeySet();
+	private final AtomicBoolean dataFlushed = new AtomicBoolean();
+
+	private volatile long deadlineNanos = Long.MAX_VALUE;
+	private volatile boolean closed;
+
+	ShutdownCoordinator(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Wraps a task that's about to be scheduled so that it can be finished
+	 * on shutdown. Sync tasks that haven't run yet are run directly by the
+	 * shutdown; async ones are waited for.
+	 *
+	 * <p>After the shutdown has drained, the task is run here instead (if
+	 * it's async, or sync and already on the server thread) while there's
+	 * time left, or rejected otherwise. Either way, the returned task does
+	 * nothing.</p>
+	 */
+	Runnable track(Runnable task, boolean async) {
+		if (closed) {
+			runAfterClosing(task, async);
+			return () -> {};
+		}
+
+		Tracked tracked = new Tracked(task, async);
+		inFlight.add(tracked);
+		return tracked;
+	}
+
+	private void runAfterClosing(Runnable task, boolean async) {
+		if (isPastDeadline() || (!async && !Bukkit.isPrimaryThread())) {
+			plugin.getLogger().warning(
+				"Rejected " + ((async) ? "an async" : "a sync") + " task scheduled after shutdown finished draining"
+			);
+			return;
+		}
+
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			plugin.debug(getClass()).logException("Shutdown", e);
+		}
+	}
+
+	public long remainingMillis() {
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+	}
+
+	private boolean isPastDeadline() {
+		return System.nanoTime() - deadlineNanos >= 0;
+	}
+
+	/**
+	 * Stops intake, then delivers everything already accepted: messages
+	 * received from Discord, tracked tasks, buffered in-game messages, and
+	 * messages meant for Discord. Data is saved once at the end, no matter
+	 * how the rest went.
+	 */
+	void drain() {
+		long timeout = Math.max(0, plugin.config().getOrDefault(StaffChatConfig.SHUTDOWN_DRAIN_TIMEOUT_MILLIS));
+		deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+		plugin.debug(getClass()).log("Shutdown", () -> "Draining pending work (timeout: " + timeout + "ms)");
+
+		try {
+			// Stop intake: no more chat events or Discord messages.
+			HandlerList.unregisterAll(plugin);
+			plugin.unsubscribeFromDiscordSrv();
+
+			int fromDiscord = plugin.discordInbox().drain(Integer.MAX_VALUE);
+			plugin.discordInbox().end();
+
+			int ran = drainTracked();
+			closed = true;
+
+			int dropped = 0;
+			int running = 0;
+			for (Tracked tracked : List.copyOf(inFlight)) {
+				if (!tracked.async && tracked.claim()) {
+					// Never runs now: the scheduler drops it once the plugin is disabled.
+					inFlight.remove(tracked);
+					dropped++;
+				} else {
+					// Still tracked, it removes itself once it's done.
+					running++;
+				}
+			}
+
+			// Release leadership right away so another server can take over.
+			plugin.discordEgress().end();
+			plugin.cluster().end();
+			plugin.outgoing().end();
+			plugin.discordOutbox().end();
+			plugin.audit().end();
+			plugin.search().end();
+
+			plugin.debug(getClass()).log("Shutdown", () ->
+				"Delivered " + fromDiscord + " message(s) from Discord and finished " + ran + " task(s)"
+			);
+
+			if (dropped > 0 || running > 0) {
+				plugin.getLogger().warning(
+					"Shutdown timed out after " + timeout + "ms: " + dropped + " pending task(s) did not run and " +
+						running + " background task(s) are still running"
+				);
+			}
+		} finally {
+			flushData();
+		}
+	}
+
+	private int drainTracked() {
+		int ran = 0;
+
+		// Tasks may schedule more tasks (e.g. async events handing back to the server thread).
+		while (!inFlight.isEmpty() && !isPastDeadline()) {
+			for (Tracked tracked : List.copyOf(inFlight)) {
+				if (!tracked.async && tracked.claim()) {
+					try {
+						tracked.execute();
+					} catch (RuntimeException e) {
+						plugin.debug(getClass()).logException("Shutdown", e);
+					}
+					ran++;
+				} else if (!tracked.await(remainingMillis())) {
+					break;
+				} else if (tracked.async) {
+					ran++;
+				}
+			}
+		}
+
+		return ran;
+	}
+
+	void flushData() {
+		if (dataFlushed.compareAndSet(false, true)) {
+			plugin.data().end();
+		}
+	}
+
+	private final class Tracked implements Runnable {
+		private final Runnable task;
+		private final boolean async;
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		Tracked(Runnable task, boolean async) {
+			this.task = task;
+			this.async = async;
+		}
+
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		@Override
+		public void run() {
+			// The shutdown may have already run this task.
+			if (claim()) {
+				execute();
+			}
+		}
+
+		void execute() {
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(this);
+				done.countDown();
+			}
+		}
+
+		boolean await(long millis) {
+			try {
+				return done.await(millis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+
+import community.leaf.eventful.bukkit.ListenerOrder;
+import community.leaf.eventful.bukkit.annotations.EventListener;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Limits how often chat sounds are played for each player. Every online
+ * player gets a slot when they join (freed again when they quit), which
+ * indexes the time their last sound was played.
+ */
+public class SoundThrottle implements Listener {
+	private static final int INITIAL_SLOTS = 64;
+
+	private final StaffChatPlugin plugin;
+	private final Map<UUID, Integer> slots = new HashMap<>();
+
+	private long[] lastPlayed = new long[INITIAL_SLOTS];
+	private int[] freeSlots = new int[INITIAL_SLOTS];
+	private int freeCount = 0;
+	private int nextSlot = 0;
+
+	private volatile long minimumIntervalMillis;
+
+	SoundThrottle(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		reload();
+	}
+
+	public void reload() {
+		minimumIntervalMillis = Math.max(0, plugin.config().getOrDefault(StaffChatConfig.SOUND_MINIMUM_INTERVAL_MILLIS));
+	}
+
+	/**
+	 * Checks whether a sound may be played for the player right now, and if
+	 * so, records it as played.
+	 */
+	public boolean tryPlay(Player player) {
+		long interval = minimumIntervalMillis;
+		if (interval <= 0) {
+			return true;
+		}
+
+		long now = System.currentTimeMillis();
+
+		synchronized (this) {
+			int slot = slotOf(player.getUniqueId());
+			if (now - lastPlayed[slot] < interval) {
+				return false;
+			}
+			lastPlayed[slot] = now;
+			return true;
+		}
+	}
+
+	private int slotOf(UUID uuid) {
+		@NullOr Integer existing = slots.get(uuid);
+		if (existing != null) {
+			return existing;
+		}
+
+		int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		} else {
+			slot = nextSlot++;
+			if (slot >= lastPlayed.length) {
+				lastPlayed = Arrays.copyOf(lastPlayed, lastPlayed.length * 2);
+			}
+		}
+
+		lastPlayed[slot] = 0L;
+		slots.put(uuid, slot);
+		return slot;
+	}
+
+	private synchronized void release(UUID uuid) {
+		@NullOr Integer slot = slots.remove(uuid);
+		if (slot == null) {
+			return;
+		}
+		if (freeCount >= freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+		}
+		freeSlots[freeCount++] = slot;
+	}
+
+	@EventListener(ListenerOrder.MONITOR)
+	public void onJoin(PlayerJoinEvent event) {
+		synchronized (this) {
+			slotOf(event.getPlayer().getUniqueId());
+		}
+	}
+
+	@EventListener(ListenerOrder.MONITOR)
+	public void onQuit(PlayerQuitEvent event) {
+		release(event.getPlayer().getUniqueId());
+	}
+}
@@ -46,6 +46,8 @@ public interface StaffChatAPI {
 	
 	void submitMessageFromDiscord(User author, Message message);
 	
+	void submitAlert(String source, String subject, String type);
+	
 	void submitTeamMessageFromConsole(String message);
 	
 	void submitTeamMessageFromPlayer(Player author, String message);
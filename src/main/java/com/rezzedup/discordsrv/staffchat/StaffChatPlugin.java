@@ -38,6 +38,9 @@ import com.github.Anon8281.universalScheduler.UniversalScheduler;
 import com.github.Anon8281.universalScheduler.scheduling.schedulers.TaskScheduler;
 import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
 import com.github.zafarkhaja.semver.Version;
+import com.rezzedup.discordsrv.staffchat.channels.ChannelRegistry;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.commands.ChannelChatCommand;
 import com.rezzedup.discordsrv.staffchat.commands.ManageStaffChatCommand;
 import com.rezzedup.discordsrv.staffchat.commands.ManageTeamChatCommand;
 import com.rezzedup.discordsrv.staffchat.commands.StaffChatCommand;
@@ -48,14 +51,22 @@ import com.rezzedup.discordsrv.staffchat.commands.ToggleTeamChatCommand;
 import com.rezzedup.discordsrv.staffchat.commands.ToggleTeamChatSoundsCommand;
 import com.rezzedup.discordsrv.staffchat.config.MessagesConfig;
 import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+import com.rezzedup.discordsrv.staffchat.events.AutoStaffChatToggleEvent;
+import com.rezzedup.discordsrv.staffchat.events.AutoTeamChatToggleEvent;
+import com.rezzedup.discordsrv.staffchat.events.ReceivingStaffChatToggleEvent;
+import com.rezzedup.discordsrv.staffchat.events.ReceivingTeamChatToggleEvent;
 import com.rezzedup.discordsrv.staffchat.listeners.ChatLeakGuardListener;
+import com.rezzedup.discordsrv.staffchat.listeners.ChatRouter;
 import com.rezzedup.discordsrv.staffchat.listeners.DiscordSrvLoadedLaterListener;
 import com.rezzedup.discordsrv.staffchat.listeners.DiscordStaffChatListener;
 import com.rezzedup.discordsrv.staffchat.listeners.JoinNotificationListener;
 import com.rezzedup.discordsrv.staffchat.listeners.PlayerPrefixedMessageListener;
+import com.rezzedup.discordsrv.staffchat.listeners.PlayerChannelChatListener;
 import com.rezzedup.discordsrv.staffchat.listeners.PlayerStaffChatToggleListener;
 import com.rezzedup.discordsrv.staffchat.listeners.PlayerTeamChatToggleListener;
+import com.rezzedup.discordsrv.staffchat.security.FloodControl;
 import com.rezzedup.discordsrv.staffchat.security.OutgoingChatPacketGuard;
+import com.rezzedup.discordsrv.staffchat.util.DiscordRolePlaceholders;
 import com.rezzedup.discordsrv.staffchat.util.FileIO;
 
 import community.leaf.configvalues.bukkit.YamlValue;
@@ -81,25 +92,45 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 	private @NullOr Version version;
 	private @NullOr Path pluginDirectoryPath;
 	private @NullOr Path backupsDirectoryPath;
+	private @NullOr BlockingIo io;
 	private @NullOr Debugger debugger;
+	private @NullOr ShutdownCoordinator shutdown;
 	private @NullOr StaffChatConfig config;
 	private @NullOr MessagesConfig messages;
 	private @NullOr Data data;
 	private @NullOr Updater updater;
+	private @NullOr FloodControl floodControl;
+	private @NullOr AlertAggregator alerts;
+	private @NullOr OutgoingMessages outgoing;
+	private @NullOr SoundThrottle soundThrottle;
+	private @NullOr PlaceholderCache placeholderCache;
+	private @NullOr DiscordInbox discordInbox;
+	private @NullOr DiscordOutbox discordOutbox;
+	private @NullOr ClusterRelay cluster;
+	private @NullOr DiscordEgress discordEgress;
+	private @NullOr MessageHistory history;
+	private @NullOr AuditLog audit;
+	private @NullOr StaffChatSearch search;
+	private @NullOr EventDispatcher eventDispatcher;
+	private @NullOr ChannelRegistry channels;
 	private @NullOr MessageProcessor processor;
 	private @NullOr DiscordStaffChatListener discordSrvHook;
 
 	private String serverType;
 	private volatile boolean placeholderApiPresent;
 	
-	private @NullOr PlayerPrefixedMessageListener prefixedMessageListener;
+	private @NullOr ChatRouter chatRouter;
 	private final java.util.concurrent.atomic.AtomicReference<ParticipantCache> participantCache =
 		new java.util.concurrent.atomic.AtomicReference<>(ParticipantCache.empty());
 	private static final long PLAYER_CACHE_TTL_MS = 1000;
 
-	private record ParticipantCache(java.util.List<Player> staff, java.util.List<Player> team, long timestamp) {
+	private record ParticipantCache(java.util.List<java.util.List<Player>> byChannel, long timestamp) {
 		private static ParticipantCache empty() {
-			return new ParticipantCache(java.util.List.of(), java.util.List.of(), 0L);
+			return new ParticipantCache(java.util.List.of(), 0L);
+		}
+		
+		private java.util.List<Player> get(int channel) {
+			return (channel < byChannel.size()) ? byChannel.get(channel) : java.util.List.of();
 		}
 
 		private boolean isExpired(long now, long ttlMs) {
@@ -125,7 +156,9 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 		this.pluginDirectoryPath = getDataFolder().toPath();
 		this.backupsDirectoryPath = pluginDirectoryPath.resolve("backups");
 		
+		this.io = new BlockingIo(this);
 		this.debugger = new Debugger(this);
+		this.shutdown = new ShutdownCoordinator(this);
 				this.placeholderApiPresent = getServer().getPluginManager().isPluginEnabled("PlaceholderAPI");
 				if (placeholderApiPresent) {
 					getLogger().info("Detected PlaceholderAPI; placeholder parsing enabled.");
@@ -144,14 +177,43 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 		
 		loadConfigurationFiles();
 		
+		this.eventDispatcher = new EventDispatcher(this);
+		this.channels = new ChannelRegistry(this);
 		this.data = new Data(this);
 		this.updater = new Updater(this);
+		this.floodControl = new FloodControl(this);
 		this.processor = new MessageProcessor(this);
+		this.alerts = new AlertAggregator(this);
+		this.outgoing = new OutgoingMessages(this);
+		this.soundThrottle = new SoundThrottle(this);
+		this.placeholderCache = new PlaceholderCache(this);
+		this.discordInbox = new DiscordInbox(this);
+		this.discordOutbox = new DiscordOutbox(this);
+		this.cluster = new ClusterRelay(this);
+		this.discordEgress = new DiscordEgress(this);
+		this.history = new MessageHistory(this);
+		this.audit = new AuditLog(this);
+		this.search = new StaffChatSearch(this);
 		
 		events().register(new JoinNotificationListener(this));
-		events().register(prefixedMessageListener = new PlayerPrefixedMessageListener(this));
-		events().register(new PlayerStaffChatToggleListener(this));
-		events().register(new PlayerTeamChatToggleListener(this));
+		events().register(new PlayerPrefixedMessageListener(this));
+		events().register(eventDispatcher);
+		events().register(soundThrottle);
+		events().register(placeholderCache);
+		
+		PlayerStaffChatToggleListener staffToggles = new PlayerStaffChatToggleListener(this);
+		PlayerTeamChatToggleListener teamToggles = new PlayerTeamChatToggleListener(this);
+		events().register(staffToggles);
+		events().register(teamToggles);
+		eventDispatcher.internal(AutoStaffChatToggleEvent.class, staffToggles::onToggleAutoChat);
+		eventDispatcher.internal(ReceivingStaffChatToggleEvent.class, staffToggles::handleReceivingToggle);
+		eventDispatcher.internal(AutoTeamChatToggleEvent.class, teamToggles::onToggleAutoChat);
+		eventDispatcher.internal(ReceivingTeamChatToggleEvent.class, teamToggles::handleReceivingToggle);
+		events().register(new PlayerChannelChatListener(this));
+		
+		// Registered after the other chat listeners so that it's the last to see each message.
+		events().register(chatRouter = new ChatRouter(this));
+		
 		getServer().getPluginManager().registerEvents(new ChatLeakGuardListener(), this);
 		OutgoingChatPacketGuard.register(this);
 
@@ -195,21 +257,33 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 	 * Uses a short TTL cache to avoid repeated permission checks and stream operations.
 	 */
 	public java.util.List<Player> getCachedStaffParticipants() {
-		return refreshParticipantCacheIfNeeded().staff();
+		return refreshParticipantCacheIfNeeded().get(ChannelRegistry.STAFF_ID);
 	}
 
 	public java.util.List<Player> getCachedTeamParticipants() {
-		return refreshParticipantCacheIfNeeded().team();
+		return refreshParticipantCacheIfNeeded().get(ChannelRegistry.TEAM_ID);
 	}
 
-	public void invalidatePlayerCache() {
-		participantCache.set(ParticipantCache.empty());
+	public java.util.List<Player> getCachedParticipants(ChatChannel channel) {
+		return refreshParticipantCacheIfNeeded().get(channel.id());
 	}
 
-	public void refreshPrefixedChatCache() {
-		if (prefixedMessageListener != null) {
-			prefixedMessageListener.refreshCache();
+	public java.util.stream.Stream<? extends Player> onlineParticipants(ChatChannel channel) {
+		if (channel.isStaffChat()) {
+			return onlineStaffChatParticipants();
 		}
+		if (channel.isTeamChat()) {
+			return onlineTeamChatParticipants();
+		}
+		return getServer().getOnlinePlayers().stream()
+			.filter(channel::allows)
+			.filter(player -> data().getProfile(player.getUniqueId())
+				.map(profile -> profile.receivesMessages(channel))
+				.orElse(true));
+	}
+	
+	public void invalidatePlayerCache() {
+		participantCache.set(ParticipantCache.empty());
 	}
 
 	private ParticipantCache refreshParticipantCacheIfNeeded() {
@@ -219,11 +293,16 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 			return current;
 		}
 
-		ParticipantCache refreshed = new ParticipantCache(
-			onlineStaffChatParticipants().map(player -> (Player) player).toList(),
-			onlineTeamChatParticipants().map(player -> (Player) player).toList(),
-			now
-		);
+		java.util.List<java.util.List<Player>> byChannel = new java.util.ArrayList<>();
+		for (int id = 0; id < channels().capacity(); id++) {
+			@NullOr ChatChannel channel = channels().get(id);
+			byChannel.add((channel == null)
+				? java.util.List.of()
+				: onlineParticipants(channel).map(player -> (Player) player).toList()
+			);
+		}
+		
+		ParticipantCache refreshed = new ParticipantCache(java.util.List.copyOf(byChannel), now);
 		participantCache.set(refreshed);
 		return refreshed;
 	}
@@ -252,20 +331,54 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 			.forEach(messages()::notifyAutoTeamChatDisabled);
 
 		updater().end();
+		alerts().end();
 		
+		// Stops intake, delivers what's pending, and saves data.
+		shutdown().drain();
+		
+		CommandAPI.onDisable();
+		debug(getClass()).header(() -> "Disabled Plugin: " + this);
+		debugger().end(shutdown().remainingMillis());
+		io().end(shutdown().remainingMillis());
+	}
+	
+	/**
+	 * Reloads configs and data, then everything that reads them.
+	 */
+	public void reload() {
+		debug(getClass()).log("Reload", () -> "Reloading configs and data...");
+		
+		config().reload();
+		messages().reload();
+		channels().reload();
+		data().reload();
+		updater().reload();
+		floodControl().reload();
+		alerts().reload();
+		outgoing().reload();
+		soundThrottle().reload();
+		placeholderCache().reload();
+		discordInbox().reload();
+		discordOutbox().reload();
+		cluster().reload();
+		discordEgress().reload();
+		history().reload();
+		audit().reload();
+		search().reload();
+		DiscordRolePlaceholders.invalidateAll();
+		invalidatePlayerCache();
+	}
+	
+	void unsubscribeFromDiscordSrv() {
 		if (isDiscordSrvHookEnabled()) {
 			debug(getClass()).log("Disable", () -> "Unsubscribing from DiscordSRV API (hook is enabled)");
 			
 			try {
+				discordSrvHook.detachFromJda();
 				DiscordSRV.api.unsubscribe(discordSrvHook);
 			} catch (RuntimeException ignored) {
 			} // Don't show a user-facing error if DiscordSRV is already unloaded.
 		}
-
-		data().end();
-		CommandAPI.onDisable();
-		debug(getClass()).header(() -> "Disabled Plugin: " + this);
-		debugger().end();
 	}
 	
 	private <T> T initialized(@NullOr T thing) {
@@ -292,10 +405,18 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 		return initialized(backupsDirectoryPath);
 	}
 	
+	public BlockingIo io() {
+		return initialized(io);
+	}
+	
 	public Debugger debugger() {
 		return initialized(debugger);
 	}
 	
+	ShutdownCoordinator shutdown() {
+		return initialized(shutdown);
+	}
+	
 	public Debugger.DebugLogger debug(Class<?> clazz) {
 		return debugger().debug(clazz);
 	}
@@ -317,6 +438,66 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 		return initialized(updater);
 	}
 	
+	public FloodControl floodControl() {
+		return initialized(floodControl);
+	}
+	
+	public AlertAggregator alerts() {
+		return initialized(alerts);
+	}
+	
+	public OutgoingMessages outgoing() {
+		return initialized(outgoing);
+	}
+	
+	public SoundThrottle soundThrottle() {
+		return initialized(soundThrottle);
+	}
+	
+	public PlaceholderCache placeholderCache() {
+		return initialized(placeholderCache);
+	}
+	
+	public DiscordInbox discordInbox() {
+		return initialized(discordInbox);
+	}
+	
+	public DiscordOutbox discordOutbox() {
+		return initialized(discordOutbox);
+	}
+	
+	public ClusterRelay cluster() {
+		return initialized(cluster);
+	}
+	
+	public DiscordEgress discordEgress() {
+		return initialized(discordEgress);
+	}
+	
+	public MessageHistory history() {
+		return initialized(history);
+	}
+	
+	public AuditLog audit() {
+		return initialized(audit);
+	}
+	
+	public StaffChatSearch search() {
+		return initialized(search);
+	}
+	
+	public EventDispatcher eventDispatcher() {
+		return initialized(eventDispatcher);
+	}
+	
+	public ChatRouter chatRouter() {
+		return initialized(chatRouter);
+	}
+	
+	public ChannelRegistry channels() {
+		return initialized(channels);
+	}
+	
 	@Override
 	public boolean isDiscordSrvHookEnabled() {
 		return discordSrvHook != null;
@@ -337,6 +518,9 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 		
 		DiscordSRV.api.subscribe(discordSrvHook = new DiscordStaffChatListener(this));
 		
+		// DiscordSRV may already be connected, in which case there won't be a ready event.
+		discordSrvHook.attachToJda();
+		
 		getLogger().info("Subscribed to DiscordSRV: messages will be sent to Discord");
 	}
 	
@@ -354,7 +538,13 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 			: null;
 	}
 	
-	private MessageProcessor processor() {
+	public @NullOr TextChannel getDiscordChannelOrNull(ChatChannel channel) {
+		return (isDiscordSrvHookEnabled())
+			? DiscordSRV.getPlugin().getDestinationTextChannelForGameChannelName(channel.discordChannel())
+			: null;
+	}
+	
+	MessageProcessor processor() {
 		return initialized(processor);
 	}
 	
@@ -373,6 +563,11 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 		processor().processDiscordChat(author, message);
 	}
 	
+	@Override
+	public void submitAlert(String source, String subject, String type) {
+		alerts().submit(source, subject, type);
+	}
+	
 	@Override
 	public void submitTeamMessageFromConsole(String message) {
 		processor().processConsoleTeamChat(message);
@@ -388,6 +583,18 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 		processor().processDiscordTeamChat(author, message);
 	}
 	
+	public void submitChannelMessageFromConsole(ChatChannel channel, String message) {
+		processor().processConsoleChat(channel, message);
+	}
+	
+	public void submitChannelMessageFromPlayer(ChatChannel channel, Player author, String message) {
+		processor().processPlayerChat(channel, author, message);
+	}
+	
+	public void submitChannelMessageFromDiscord(ChatChannel channel, User author, Message message) {
+		processor().processDiscordChat(channel, author, message);
+	}
+	
 	//
 	//
 	//
@@ -444,6 +651,9 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 		new ManageTeamChatCommand(this).register();
 		new ToggleTeamChatSoundsCommand(this).register();
 		new ToggleTeamChatCommand(this).register();
+		
+		// Commands for channels defined in the config (only picked up on startup).
+		channels().extras().forEach(channel -> new ChannelChatCommand(this, channel).register());
 	}
 
 	/* ------------------------------------------------------------------
@@ -487,10 +697,11 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 	}
 
 	/**
-	 * Runs work on the server async scheduler in a Folia-compatible way.
+	 * Runs blocking work (like sending to Discord) on the plugin's own
+	 * virtual threads instead of the server's shared async threads.
 	 */
 	public void runAsync(Runnable runnable) {
-		getServer().getAsyncScheduler().runNow(this, task -> runnable.run());
+		io().execute(shutdown().track(runnable, true));
 	}
 	
 	/* ------------------------------------------------------------------
@@ -605,7 +816,7 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 						scheduler.runTaskTimerAsynchronously(runnable, 0, periodTicks);
 					} else {
 						// Immediate async task
-						scheduler.runTaskAsynchronously(runnable);
+						scheduler.runTaskAsynchronously(shutdown().track(runnable, true));
 					}
 				}
 			} else {
@@ -624,7 +835,7 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 						scheduler.runTaskTimer(runnable, 0, periodTicks);
 					} else {
 						// Immediate sync task
-						scheduler.runTask(runnable);
+						scheduler.runTask(shutdown().track(runnable, false));
 					}
 				}
 			}
@@ -701,4 +912,4 @@ public class StaffChatPlugin extends JavaPlugin implements BukkitEventSource, St
 	public String getVersion() {
 		return (version != null) ? version.toString() : "unknown";
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -22,6 +22,7 @@
  */
 package com.rezzedup.discordsrv.staffchat;
 
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
@@ -65,6 +66,25 @@ public interface StaffChatProfile {
 	
 	void receivesTeamChatSounds(boolean enabled);
 	
+	// Channel methods (staff chat and team chat delegate to the methods above)
+	boolean automaticChat(ChatChannel channel);
+	
+	void automaticChat(ChatChannel channel, boolean enabled);
+	
+	boolean receivesMessages(ChatChannel channel);
+	
+	void receivesMessages(ChatChannel channel, boolean enabled);
+	
+	boolean receivesSounds(ChatChannel channel);
+	
+	void receivesSounds(ChatChannel channel, boolean enabled);
+	
+	/**
+	 * Toggles automatic chat for the channel, disabling it in every other
+	 * channel when it's turned on.
+	 */
+	void toggleAutomaticChat(ChatChannel channel);
+	
 	default void toggleAutomaticStaffChat() {
 		boolean newState = !automaticStaffChat();
 		automaticStaffChat(newState);
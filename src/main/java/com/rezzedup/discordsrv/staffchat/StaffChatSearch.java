@@ -0,0 +1,280 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.command.CommandSender;
+
+import com.rezzedup.discordsrv.staffchat.audit.AuditRecord;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+import com.rezzedup.discordsrv.staffchat.search.SearchIndex;
+import com.rezzedup.discordsrv.staffchat.search.SearchQuery;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import static com.rezzedup.discordsrv.staffchat.util.Strings.colorful;
+
+/**
+ * Full-text search over the audit log. Messages are indexed as the audit
+ * writer stores them (and, after a restart, whatever was stored since the
+ * index was last written). Searches run off the server thread: the index
+ * narrows down the candidates, then only the requested page of messages is
+ * read back from the audit log.
+ */
+public class StaffChatSearch {
+	private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+	private static final String PREFIX = "&9&lDiscordSRV-Staff-Chat&f: ";
+
+	private final StaffChatPlugin plugin;
+
+	private volatile @NullOr SearchIndex index;
+	private volatile int pageSize;
+	private volatile int mergeFactor;
+
+	StaffChatSearch(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		reload();
+	}
+
+	public synchronized void reload() {
+		end();
+
+		pageSize = Math.max(1, plugin.config().getOrDefault(StaffChatConfig.SEARCH_RESULTS_PER_PAGE));
+		mergeFactor = Math.max(2, plugin.config().getOrDefault(StaffChatConfig.SEARCH_MERGE_FACTOR));
+
+		if (!plugin.config().getOrDefault(StaffChatConfig.SEARCH_ENABLED) || !plugin.audit().isEnabled()) {
+			return;
+		}
+
+		SearchIndex opened;
+		try {
+			opened = new SearchIndex(
+				plugin.directory().resolve("audit").resolve("search"),
+				Math.max(1024, plugin.config().getOrDefault(StaffChatConfig.SEARCH_MEMORY_POSTINGS))
+			);
+		} catch (IOException e) {
+			plugin.getLogger().warning("Could not open the search index: " + e);
+			return;
+		}
+
+		for (String skipped : opened.skipped()) {
+			plugin.getLogger().warning("Skipped unreadable search index segment: " + skipped);
+		}
+
+		index = opened;
+		plugin.audit().indexWith(this::index);
+		plugin.runAsync(() -> catchUp(opened));
+	}
+
+	/**
+	 * Writes the in-memory part of the index to disk.
+	 */
+	public synchronized void end() {
+		@NullOr SearchIndex current = index;
+		index = null;
+		plugin.audit().indexWith(null);
+
+		if (current != null) {
+			try {
+				current.close();
+			} catch (IOException e) {
+				plugin.getLogger().warning("Could not save the search index: " + e);
+			}
+		}
+	}
+
+	public boolean isEnabled() {
+		return index != null;
+	}
+
+	// Called on the audit writer thread.
+	private void index(AuditRecord record) {
+		@NullOr SearchIndex current = index;
+		if (current == null) {
+			return;
+		}
+
+		try {
+			if (current.add(record)) {
+				scheduleMerge(current);
+			}
+		} catch (IOException e) {
+			plugin.debug(getClass()).logException("Search", e);
+		}
+	}
+
+	private void catchUp(SearchIndex opened) {
+		long from = opened.watermark();
+		int[] indexed = {0};
+
+		try {
+			plugin.audit().scan(from, System.currentTimeMillis(), record -> {
+				if (index != opened) {
+					return false;
+				}
+				try {
+					opened.add(record);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				indexed[0]++;
+				return true;
+			});
+		} catch (IOException | UncheckedIOException e) {
+			plugin.getLogger().warning("Could not index older audit log messages: " + e);
+		}
+
+		plugin.debug(getClass()).log("Search", () ->
+			"Indexed " + indexed[0] + " audited message(s) since " + Instant.ofEpochMilli(from)
+		);
+		scheduleMerge(opened);
+	}
+
+	private void scheduleMerge(SearchIndex current) {
+		int factor = mergeFactor;
+		if (!current.needsMerge(factor)) {
+			return;
+		}
+
+		int retentionDays = plugin.config().getOrDefault(StaffChatConfig.AUDIT_RETENTION_DAYS);
+		long minId = (retentionDays > 0) ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays) : 0;
+
+		plugin.runAsync(() -> {
+			try {
+				current.merge(factor, minId);
+				plugin.debug(getClass()).log("Search", () -> "Merged index segments, " + current.segmentCount() + " left");
+			} catch (IOException e) {
+				plugin.getLogger().warning("Could not merge search index segments: " + e);
+			}
+		});
+	}
+
+	/**
+	 * Runs a search for {@code /managestaffchat search <terms> [since]} and
+	 * sends the requested page of results to the sender once it's done.
+	 */
+	public void search(CommandSender sender, String input) {
+		@NullOr SearchIndex current = index;
+		if (current == null) {
+			sender.sendMessage(colorful(PREFIX + "&7Search needs the audit log, set &faudit.enabled&7 in the config."));
+			return;
+		}
+
+		SearchQuery query;
+		try {
+			query = SearchQuery.parse(input, System.currentTimeMillis());
+		} catch (IllegalArgumentException e) {
+			sender.sendMessage(colorful(PREFIX + "&c" + e.getMessage()));
+			sender.sendMessage(colorful(
+				"&7Usage: &f/managestaffchat search <words|prefix*> [author:<name>] [channel:<name>] [page:<n>] [7d]"
+			));
+			return;
+		}
+
+		int size = pageSize;
+		plugin.runAsync(() -> {
+			List<String> lines;
+			try {
+				lines = results(current, query, input, size);
+			} catch (IOException | RuntimeException e) {
+				plugin.debug(getClass()).logException("Search", e);
+				lines = List.of(colorful(PREFIX + "&cSearch failed: " + e.getMessage()));
+			}
+
+			List<String> output = lines;
+			plugin.sync().run(() -> output.forEach(sender::sendMessage));
+		});
+	}
+
+	private List<String> results(SearchIndex current, SearchQuery query, String input, int size) throws IOException {
+		long[] candidates = current.search(query);
+		int pages = Math.max(1, (candidates.length + size - 1) / size);
+
+		List<String> lines = new ArrayList<>();
+		if (candidates.length == 0) {
+			lines.add(colorful(PREFIX + "&7No messages found for &f" + input));
+			return lines;
+		}
+		if (query.page() > pages) {
+			lines.add(colorful(PREFIX + "&7Only " + pages + " page(s) of results for &f" + input));
+			return lines;
+		}
+
+		// Newest first: pages are counted from the end of the candidates.
+		int end = candidates.length - (query.page() - 1) * size;
+		int start = Math.max(0, end - size);
+
+		List<AuditRecord> found = new ArrayList<>();
+		int i = end - 1;
+		while (i >= start) {
+			// Read back one day at a time, since that's how the audit log is split up.
+			LocalDate day = LocalDate.ofInstant(Instant.ofEpochMilli(candidates[i]), ZoneId.systemDefault());
+			Set<Long> ids = new HashSet<>();
+			long newest = candidates[i];
+			long oldest = newest;
+
+			for (; i >= start && LocalDate.ofInstant(Instant.ofEpochMilli(candidates[i]), ZoneId.systemDefault()).equals(day); i--) {
+				ids.add(candidates[i]);
+				oldest = candidates[i];
+			}
+
+			plugin.audit().scan(oldest, newest, record -> {
+				if (ids.contains(record.timestamp()) && query.matches(record)) {
+					found.add(record);
+				}
+				return true;
+			});
+		}
+
+		found.sort(Comparator.comparingLong(AuditRecord::timestamp).reversed());
+
+		lines.add(colorful(
+			PREFIX + "&7" + candidates.length + " message(s) for &f" + input + " &7(page " + query.page() + " of " + pages + ")"
+		));
+
+		for (AuditRecord record : found) {
+			// Names and text are shown as recorded, so codes in them aren't rendered.
+			lines.add(
+				colorful("&8" + TIME.format(Instant.ofEpochMilli(record.timestamp())) + " &7[" + record.channel() + "] &f")
+					+ record.authorName() + colorful("&7: ") + record.text()
+			);
+		}
+
+		if (query.page() < pages) {
+			lines.add(colorful("&7→ Add &fpage:" + (query.page() + 1) + "&7 for more"));
+		}
+		return lines;
+	}
+}
@@ -52,7 +52,7 @@ public class Updater {
 	
 	Updater(StaffChatPlugin plugin) {
 		this.plugin = plugin;
-		this.client = HttpClient.newHttpClient();
+		this.client = HttpClient.newBuilder().executor(plugin.io()).build();
 		
 		this.userAgent =
 			plugin.getName() + "/" + plugin.version() + " (Minecraft) " +
@@ -93,8 +93,9 @@ public class Updater {
 				plugin.debug(getClass()).log("Reload", () -> "Update checker enabled: starting task");
 				long delay = 10L;
 				long period = 7L * 60L * 60L * 20L;
+				// The timer only hands the request off, it blocks on one of the plugin's own threads.
 				updateTask = StaffChatPlugin.getScheduler()
-					.runTaskTimerAsynchronously(this::checkForUpdates, delay, period);
+					.runTaskTimer(() -> plugin.io().execute(this::checkForUpdates), delay, period);
 			} else {
 				plugin.debug(getClass()).log("Reload", () -> "Update checker enabled: task already running");
 			}
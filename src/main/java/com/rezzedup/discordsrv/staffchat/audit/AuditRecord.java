@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.audit;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * One audited chat message. Encoded as a length-prefixed binary record:
+ * timestamp, source, author UUID, then the channel, author name and text as
+ * length-prefixed UTF-8.
+ */
+public record AuditRecord(
+	long timestamp,
+	byte source,
+	@NullOr UUID author,
+	String channel,
+	String authorName,
+	String text
+) {
+	// Keeps any single record comfortably smaller than a segment.
+	public static final int MAX_TEXT_BYTES = 16 * 1024;
+	private static final int MAX_NAME_BYTES = 256;
+	
+	private static byte[] utf8(String text, int limit) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length <= limit) {
+			return bytes;
+		}
+		// Cut at a character boundary.
+		int end = limit;
+		while (end > 0 && (bytes[end] & 0xC0) == 0x80) {
+			end--;
+		}
+		return Arrays.copyOf(bytes, end);
+	}
+	
+	/**
+	 * Encodes the record, including its length prefix.
+	 */
+	public byte[] encode() {
+		byte[] channelBytes = utf8(channel, MAX_NAME_BYTES);
+		byte[] nameBytes = utf8(authorName, MAX_NAME_BYTES);
+		byte[] textBytes = utf8(text, MAX_TEXT_BYTES);
+		
+		int body = Long.BYTES + 1 + 2 * Long.BYTES
+			+ Short.BYTES + channelBytes.length
+			+ Short.BYTES + nameBytes.length
+			+ Integer.BYTES + textBytes.length;
+		
+		ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + body);
+		buffer.putInt(body);
+		buffer.putLong(timestamp);
+		buffer.put(source);
+		buffer.putLong((author == null) ? 0L : author.getMostSignificantBits());
+		buffer.putLong((author == null) ? 0L : author.getLeastSignificantBits());
+		buffer.putShort((short) channelBytes.length).put(channelBytes);
+		buffer.putShort((short) nameBytes.length).put(nameBytes);
+		buffer.putInt(textBytes.length).put(textBytes);
+		return buffer.array();
+	}
+	
+	/**
+	 * Decodes the record at the buffer's position, advancing past it.
+	 *
+	 * @return {@code null} at the end of the written records
+	 */
+	public static @NullOr AuditRecord decode(ByteBuffer buffer) {
+		if (buffer.remaining() < Integer.BYTES) {
+			return null;
+		}
+		
+		int start = buffer.position();
+		int body = buffer.getInt();
+		if (body <= 0 || body > buffer.remaining()) {
+			buffer.position(start);
+			return null;
+		}
+		
+		// Reads are confined to the body, so corrupt lengths can't run into the next record.
+		ByteBuffer record = buffer.slice(buffer.position(), body);
+		
+		try {
+			long timestamp = record.getLong();
+			byte source = record.get();
+			long most = record.getLong();
+			long least = record.getLong();
+			String channel = string(record, Short.toUnsignedInt(record.getShort()));
+			String authorName = string(record, Short.toUnsignedInt(record.getShort()));
+			String text = string(record, record.getInt());
+			
+			buffer.position(start + Integer.BYTES + body);
+			return new AuditRecord(
+				timestamp,
+				source,
+				(most == 0L && least == 0L) ? null : new UUID(most, least),
+				channel,
+				authorName,
+				text
+			);
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			// Torn write at the end of a segment, or a corrupt record: nothing after it can be trusted.
+			buffer.position(start);
+			return null;
+		}
+	}
+	
+	private static String string(ByteBuffer buffer, int length) {
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
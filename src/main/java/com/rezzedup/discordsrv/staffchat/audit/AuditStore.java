@@ -0,0 +1,405 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.audit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Append-only storage for audit records. Records go into fixed-size,
+ * memory-mapped segment files, one or more per day. Each segment has a
+ * sparse index next to it (the offset of every {@value #INDEX_EVERY}th
+ * record and its time), so that reading a time range doesn't start at the
+ * beginning of the day. Old segments are compressed and eventually deleted.
+ *
+ * <p>Appending, flushing and housekeeping are meant for a single writer
+ * thread; reads may happen on any thread.</p>
+ */
+public final class AuditStore {
+	private static final String PREFIX = "audit-";
+	private static final String SEGMENT = ".seg";
+	private static final String COMPRESSED = ".seg.gz";
+	private static final String INDEX = ".idx";
+	private static final int INDEX_EVERY = 64;
+	private static final int INDEX_ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+	
+	private record SegmentName(LocalDate day, int number, boolean compressed) implements Comparable<SegmentName> {
+		static @NullOr SegmentName parse(Path path) {
+			String name = path.getFileName().toString();
+			boolean compressed = name.endsWith(COMPRESSED);
+			if (!name.startsWith(PREFIX) || !(compressed || name.endsWith(SEGMENT))) {
+				return null;
+			}
+			
+			String base = name.substring(PREFIX.length(), name.length() - ((compressed) ? COMPRESSED : SEGMENT).length());
+			int dash = base.lastIndexOf('-');
+			try {
+				return new SegmentName(LocalDate.parse(base.substring(0, dash)), Integer.parseInt(base.substring(dash + 1)), compressed);
+			} catch (DateTimeParseException | NumberFormatException | IndexOutOfBoundsException e) {
+				return null;
+			}
+		}
+		
+		String base() {
+			return PREFIX + day + "-" + String.format("%03d", number);
+		}
+		
+		@Override
+		public int compareTo(SegmentName other) {
+			int byDay = day.compareTo(other.day);
+			return (byDay != 0) ? byDay : Integer.compare(number, other.number);
+		}
+	}
+	
+	private static final class Active {
+		final SegmentName name;
+		final FileChannel channel;
+		final MappedByteBuffer buffer;
+		final FileChannel index;
+		int records;
+		
+		// Published after each append so that readers only see complete records.
+		volatile int committed;
+		
+		Active(SegmentName name, FileChannel channel, MappedByteBuffer buffer, FileChannel index) {
+			this.name = name;
+			this.channel = channel;
+			this.buffer = buffer;
+			this.index = index;
+		}
+	}
+	
+	private final Path directory;
+	private final int segmentSize;
+	private final ZoneId zone;
+	
+	// Held for writing while segments are replaced, compressed or deleted.
+	private final ReadWriteLock files = new ReentrantReadWriteLock();
+	
+	private volatile @NullOr Active active;
+	
+	public AuditStore(Path directory, int segmentSize, ZoneId zone) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.zone = zone;
+	}
+	
+	private LocalDate dayOf(long timestamp) {
+		return LocalDate.ofInstant(Instant.ofEpochMilli(timestamp), zone);
+	}
+	
+	private List<SegmentName> segments() throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return List.of();
+		}
+		try (Stream<Path> paths = Files.list(directory)) {
+			List<SegmentName> names = new ArrayList<>();
+			paths.forEach(path -> {
+				@NullOr SegmentName name = SegmentName.parse(path);
+				if (name != null) {
+					names.add(name);
+				}
+			});
+			names.sort(null);
+			return names;
+		}
+	}
+	
+	public void append(AuditRecord record) throws IOException {
+		byte[] bytes = record.encode();
+		@NullOr Active current = active;
+		LocalDate day = dayOf(record.timestamp());
+		
+		if (current == null || !current.name.day().equals(day) || current.committed + bytes.length > segmentSize) {
+			current = roll(day, current);
+		}
+		
+		int offset = current.committed;
+		if (current.records % INDEX_EVERY == 0) {
+			ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES).putLong(record.timestamp()).putInt(offset).flip();
+			current.index.write(entry);
+		}
+		
+		current.buffer.put(offset, bytes);
+		current.records++;
+		current.committed = offset + bytes.length;
+	}
+	
+	private Active roll(LocalDate day, @NullOr Active previous) throws IOException {
+		files.writeLock().lock();
+		try {
+			if (previous != null) {
+				closeSegment(previous);
+			}
+			
+			int number = 0;
+			for (SegmentName existing : segments()) {
+				if (existing.day().equals(day)) {
+					number = Math.max(number, existing.number() + ((existing.compressed() || previous != null) ? 1 : 0));
+				}
+			}
+			
+			Active opened = open(new SegmentName(day, number, false));
+			if (opened.committed + AuditRecord.MAX_TEXT_BYTES > segmentSize && opened.records > 0) {
+				// Resumed a segment that's (nearly) full, start the next one instead.
+				closeSegment(opened);
+				opened = open(new SegmentName(day, number + 1, false));
+			}
+			
+			active = opened;
+			return opened;
+		} finally {
+			files.writeLock().unlock();
+		}
+	}
+	
+	private Active open(SegmentName name) throws IOException {
+		Files.createDirectories(directory);
+		
+		FileChannel channel = FileChannel.open(
+			directory.resolve(name.base() + SEGMENT),
+			StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+		);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		FileChannel index = FileChannel.open(
+			directory.resolve(name.base() + INDEX),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND
+		);
+		
+		Active opened = new Active(name, channel, buffer, index);
+		
+		// Find the end of the records written before a restart.
+		ByteBuffer scan = buffer.duplicate();
+		while (AuditRecord.decode(scan) != null) {
+			opened.records++;
+		}
+		opened.committed = scan.position();
+		
+		return opened;
+	}
+	
+	private static void closeSegment(Active segment) {
+		segment.buffer.force();
+		try { segment.index.close(); } catch (IOException ignored) {}
+		try { segment.channel.close(); } catch (IOException ignored) {}
+	}
+	
+	/**
+	 * Flushes appended records to disk.
+	 */
+	public void force() {
+		@NullOr Active current = active;
+		if (current != null) {
+			current.buffer.force();
+		}
+	}
+	
+	public void close() {
+		files.writeLock().lock();
+		try {
+			@NullOr Active current = active;
+			if (current != null) {
+				closeSegment(current);
+			}
+			active = null;
+		} finally {
+			files.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Compresses segments older than {@code compressAfterDays} and deletes
+	 * segments older than {@code retentionDays}.
+	 *
+	 * @return problems encountered, if any
+	 */
+	public List<String> housekeep(LocalDate today, int retentionDays, int compressAfterDays) throws IOException {
+		List<String> problems = new ArrayList<>();
+		
+		files.writeLock().lock();
+		try {
+			@NullOr Active current = active;
+			
+			for (SegmentName name : segments()) {
+				if (current != null && current.name.equals(name)) {
+					continue;
+				}
+				
+				Path segment = directory.resolve(name.base() + ((name.compressed()) ? COMPRESSED : SEGMENT));
+				Path index = directory.resolve(name.base() + INDEX);
+				
+				try {
+					if (retentionDays > 0 && name.day().isBefore(today.minusDays(retentionDays))) {
+						Files.deleteIfExists(segment);
+						Files.deleteIfExists(index);
+					} else if (!name.compressed() && compressAfterDays >= 0 && !name.day().isAfter(today.minusDays(compressAfterDays))) {
+						compress(segment, directory.resolve(name.base() + COMPRESSED));
+						Files.deleteIfExists(index);
+					}
+				} catch (IOException e) {
+					// e.g. a segment that's still mapped on Windows, tried again next time.
+					problems.add(segment.getFileName() + ": " + e);
+				}
+			}
+		} finally {
+			files.writeLock().unlock();
+		}
+		
+		return problems;
+	}
+	
+	private static void compress(Path segment, Path compressed) throws IOException {
+		int length;
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			while (AuditRecord.decode(buffer) != null) {
+				// Skip to the end of the written records.
+			}
+			length = buffer.position();
+		}
+		
+		Path temporary = compressed.resolveSibling(compressed.getFileName() + ".tmp");
+		try (InputStream in = Files.newInputStream(segment);
+			OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary))) {
+			byte[] chunk = new byte[64 * 1024];
+			int remaining = length;
+			while (remaining > 0) {
+				int read = in.read(chunk, 0, Math.min(chunk.length, remaining));
+				if (read < 0) {
+					break;
+				}
+				out.write(chunk, 0, read);
+				remaining -= read;
+			}
+		}
+		
+		Files.move(temporary, compressed, StandardCopyOption.REPLACE_EXISTING);
+		Files.delete(segment);
+	}
+	
+	/**
+	 * Visits records written between {@code from} and {@code to}
+	 * (inclusive, epoch millis) in the order they were written.
+	 *
+	 * @param visitor returns {@code false} to stop early
+	 */
+	public void scan(long from, long to, Predicate<AuditRecord> visitor) throws IOException {
+		LocalDate firstDay = dayOf(from);
+		LocalDate lastDay = dayOf(to);
+		
+		files.readLock().lock();
+		try {
+			@NullOr Active current = active;
+			
+			for (SegmentName name : segments()) {
+				if (name.day().isBefore(firstDay) || name.day().isAfter(lastDay)) {
+					continue;
+				}
+				
+				ByteBuffer records;
+				try {
+					if (current != null && current.name.equals(name)) {
+						records = current.buffer.duplicate().limit(current.committed);
+					} else if (name.compressed()) {
+						try (InputStream in = new GZIPInputStream(Files.newInputStream(directory.resolve(name.base() + COMPRESSED)))) {
+							records = ByteBuffer.wrap(in.readAllBytes());
+						}
+					} else {
+						try (FileChannel channel = FileChannel.open(directory.resolve(name.base() + SEGMENT), StandardOpenOption.READ)) {
+							records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+						}
+					}
+				} catch (NoSuchFileException e) {
+					continue;
+				}
+				
+				if (!name.compressed()) {
+					records.position(Math.min(startingOffset(name, from), records.limit()));
+				}
+				
+				for (@NullOr AuditRecord record = AuditRecord.decode(records); record != null; record = AuditRecord.decode(records)) {
+					if (record.timestamp() > to) {
+						return;
+					}
+					if (record.timestamp() >= from && !visitor.test(record)) {
+						return;
+					}
+				}
+			}
+		} finally {
+			files.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Offset of the last indexed record written before {@code from}.
+	 */
+	private int startingOffset(SegmentName name, long from) throws IOException {
+		Path index = directory.resolve(name.base() + INDEX);
+		if (!Files.isRegularFile(index)) {
+			return 0;
+		}
+		
+		ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(index));
+		int count = entries.capacity() / INDEX_ENTRY_BYTES;
+		
+		// Binary search for the last entry before the start of the range.
+		int low = 0;
+		int high = count - 1;
+		int offset = 0;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long timestamp = entries.getLong(middle * INDEX_ENTRY_BYTES);
+			if (timestamp < from) {
+				offset = entries.getInt(middle * INDEX_ENTRY_BYTES + Long.BYTES);
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return offset;
+	}
+}
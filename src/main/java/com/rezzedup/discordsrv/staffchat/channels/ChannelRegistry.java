@@ -0,0 +1,355 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.channels;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.bukkit.Sound;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import com.rezzedup.discordsrv.staffchat.Permissions;
+import com.rezzedup.discordsrv.staffchat.StaffChatPlugin;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel.ChannelSound;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel.Formats;
+import com.rezzedup.discordsrv.staffchat.config.MessagesConfig;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+
+import community.leaf.configvalues.bukkit.DefaultYamlValue;
+import community.leaf.configvalues.bukkit.YamlValue;
+import community.leaf.configvalues.bukkit.util.Sections;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * All chat channels, indexed by id. Staff chat and team chat are always
+ * present with ids {@value #STAFF_ID} and {@value #TEAM_ID} and are built from
+ * their existing config values; any others are defined under "channels" in
+ * the staff chat config.
+ */
+public final class ChannelRegistry {
+	public static final int STAFF_ID = 0;
+	public static final int TEAM_ID = 1;
+
+	// Per-player channel state is stored in a single long per toggle.
+	public static final int MAX_CHANNELS = Long.SIZE;
+
+	private static final String CHANNELS_PATH = "channels";
+
+	private static final YamlValue<String> DISPLAY_NAME = YamlValue.ofString("display-name").maybe();
+	private static final YamlValue<String> TAG = YamlValue.ofString("tag").maybe();
+	private static final YamlValue<String> PERMISSION = YamlValue.ofString("permission").maybe();
+	private static final YamlValue<String> CHAT_PREFIX = YamlValue.ofString("chat-prefix").maybe();
+	private static final YamlValue<String> DISCORD_CHANNEL = YamlValue.ofString("discord-channel").maybe();
+	private static final YamlValue<String> COMMAND = YamlValue.ofString("command").maybe();
+
+	private static final YamlValue<String> PLAYER_FORMAT = YamlValue.ofString("formats.in-game.player").maybe();
+	private static final YamlValue<String> DISCORD_FORMAT = YamlValue.ofString("formats.in-game.discord").maybe();
+	private static final YamlValue<String> CONSOLE_FORMAT = YamlValue.ofString("formats.in-game.console").maybe();
+	private static final YamlValue<String> DISCORD_CONSOLE_FORMAT = YamlValue.ofString("formats.discord.console").maybe();
+	private static final YamlValue<String> LEFT_REMINDER = YamlValue.ofString("formats.left-reminder").maybe();
+	private static final YamlValue<String> RATE_LIMITED = YamlValue.ofString("formats.rate-limited").maybe();
+
+	private static final YamlValue<Boolean> SOUND_ENABLED = YamlValue.ofBoolean("enabled").maybe();
+	private static final YamlValue<Sound> SOUND_NAME = YamlValue.ofSound("name").maybe();
+	private static final YamlValue<Float> SOUND_VOLUME = YamlValue.ofFloat("volume").maybe();
+	private static final YamlValue<Float> SOUND_PITCH = YamlValue.ofFloat("pitch").maybe();
+
+	private final StaffChatPlugin plugin;
+
+	// Ids stick to channel names across reloads so that loaded profile bitsets stay valid.
+	private final Map<String, Integer> assignedIds = new HashMap<>();
+
+	private volatile ChatChannel[] byId = new ChatChannel[0];
+	private volatile Map<String, ChatChannel> byName = Map.of();
+	private volatile List<ChatChannel> all = List.of();
+	private volatile List<ChatChannel> prefixed = List.of();
+
+	public ChannelRegistry(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		assignedIds.put(StaffChatPlugin.CHANNEL, STAFF_ID);
+		assignedIds.put(StaffChatPlugin.TEAM_CHANNEL, TEAM_ID);
+		reload();
+	}
+
+	public synchronized void reload() {
+		ChatChannel staff = staffChannel();
+		List<ChatChannel> channels = new ArrayList<>();
+		channels.add(staff);
+		channels.add(teamChannel());
+
+		Sections.get(plugin.config().data(), CHANNELS_PATH).ifPresent(section ->
+		{
+			for (String name : section.getKeys(false)) {
+				@NullOr ConfigurationSection definition = section.getConfigurationSection(name);
+				if (definition == null) {
+					continue;
+				}
+
+				if (name.equals(StaffChatPlugin.CHANNEL) || name.equals(StaffChatPlugin.TEAM_CHANNEL)) {
+					plugin.getLogger().warning("Channel '" + name + "' is built in and can't be redefined under channels");
+					continue;
+				}
+
+				int id = idFor(name);
+				if (id < 0) {
+					plugin.getLogger().warning("Too many chat channels (max: " + MAX_CHANNELS + "), ignoring: " + name);
+					continue;
+				}
+
+				channels.add(extraChannel(id, name, definition, staff));
+			}
+		});
+
+		int size = channels.stream().mapToInt(ChatChannel::id).max().orElse(TEAM_ID) + 1;
+		ChatChannel[] indexed = new ChatChannel[size];
+		Map<String, ChatChannel> named = new HashMap<>();
+		List<ChatChannel> withPrefix = new ArrayList<>();
+
+		channels.sort((a, b) -> Integer.compare(a.id(), b.id()));
+
+		for (ChatChannel channel : channels) {
+			indexed[channel.id()] = channel;
+			named.put(channel.name(), channel);
+			if (channel.chatPrefix() != null) {
+				withPrefix.add(channel);
+			}
+		}
+
+		this.byId = indexed;
+		this.byName = Map.copyOf(named);
+		this.all = List.copyOf(channels);
+		this.prefixed = List.copyOf(withPrefix);
+
+		plugin.debug(getClass()).log("Reload", () -> "Loaded chat channels: " + byName.keySet());
+	}
+
+	private int idFor(String name) {
+		@NullOr Integer existing = assignedIds.get(name);
+		if (existing != null) {
+			return existing;
+		}
+
+		for (int id = TEAM_ID + 1; id < MAX_CHANNELS; id++) {
+			if (!assignedIds.containsValue(id)) {
+				assignedIds.put(name, id);
+				return id;
+			}
+		}
+
+		return -1;
+	}
+
+	private @NullOr String chatPrefix(boolean enabled, String prefix) {
+		return (enabled) ? prefix : null;
+	}
+
+	private ChatChannel staffChannel() {
+		StaffChatConfig config = plugin.config();
+		MessagesConfig messages = plugin.messages();
+
+		return new ChatChannel(
+			STAFF_ID,
+			StaffChatPlugin.CHANNEL,
+			"Staff",
+			Permissions.ACCESS.get(),
+			chatPrefix(
+				config.getOrDefault(StaffChatConfig.PREFIXED_CHAT_ENABLED),
+				config.getOrDefault(StaffChatConfig.PREFIXED_CHAT_IDENTIFIER)
+			),
+			StaffChatPlugin.CHANNEL,
+			"staffchat",
+			List.of(),
+			new Formats(
+				messages.getOrDefault(MessagesConfig.PREFIX),
+				messages.getOrDefault(MessagesConfig.IN_GAME_PLAYER_FORMAT),
+				messages.getOrDefault(MessagesConfig.IN_GAME_DISCORD_FORMAT),
+				messages.getOrDefault(MessagesConfig.IN_GAME_CONSOLE_FORMAT),
+				messages.getOrDefault(MessagesConfig.DISCORD_CONSOLE_FORMAT),
+				messages.getOrDefault(MessagesConfig.LEFT_CHAT_NOTIFICATION_REMINDER),
+				messages.getOrDefault(MessagesConfig.RATE_LIMITED_NOTIFICATION)
+			),
+			ChannelSound.of(
+				config.getOrDefault(StaffChatConfig.MESSAGE_SOUND_ENABLED),
+				config.getOrDefault(StaffChatConfig.MESSAGE_SOUND_NAME),
+				config.getOrDefault(StaffChatConfig.MESSAGE_SOUND_VOLUME),
+				config.getOrDefault(StaffChatConfig.MESSAGE_SOUND_PITCH)
+			),
+			ChannelSound.of(
+				config.getOrDefault(StaffChatConfig.NOTIFICATION_SOUND_ENABLED),
+				config.getOrDefault(StaffChatConfig.NOTIFICATION_SOUND_NAME),
+				config.getOrDefault(StaffChatConfig.NOTIFICATION_SOUND_VOLUME),
+				config.getOrDefault(StaffChatConfig.NOTIFICATION_SOUND_PITCH)
+			)
+		);
+	}
+
+	private ChatChannel teamChannel() {
+		StaffChatConfig config = plugin.config();
+		MessagesConfig messages = plugin.messages();
+
+		return new ChatChannel(
+			TEAM_ID,
+			StaffChatPlugin.TEAM_CHANNEL,
+			"Team",
+			Permissions.TEAM_ACCESS.get(),
+			chatPrefix(
+				config.getOrDefault(StaffChatConfig.PREFIXED_TEAM_CHAT_ENABLED),
+				config.getOrDefault(StaffChatConfig.PREFIXED_TEAM_CHAT_IDENTIFIER)
+			),
+			StaffChatPlugin.TEAM_CHANNEL,
+			"teamchat",
+			List.of(),
+			new Formats(
+				messages.getOrDefault(MessagesConfig.TEAM_PREFIX),
+				messages.getOrDefault(MessagesConfig.TEAM_IN_GAME_PLAYER_FORMAT),
+				messages.getOrDefault(MessagesConfig.TEAM_IN_GAME_DISCORD_FORMAT),
+				messages.getOrDefault(MessagesConfig.TEAM_IN_GAME_CONSOLE_FORMAT),
+				messages.getOrDefault(MessagesConfig.TEAM_DISCORD_CONSOLE_FORMAT),
+				messages.getOrDefault(MessagesConfig.LEFT_TEAM_CHAT_NOTIFICATION_REMINDER),
+				messages.getOrDefault(MessagesConfig.TEAM_RATE_LIMITED_NOTIFICATION)
+			),
+			ChannelSound.of(
+				config.getOrDefault(StaffChatConfig.TEAM_MESSAGE_SOUND_ENABLED),
+				config.getOrDefault(StaffChatConfig.TEAM_MESSAGE_SOUND_NAME),
+				config.getOrDefault(StaffChatConfig.TEAM_MESSAGE_SOUND_VOLUME),
+				config.getOrDefault(StaffChatConfig.TEAM_MESSAGE_SOUND_PITCH)
+			),
+			ChannelSound.of(
+				config.getOrDefault(StaffChatConfig.TEAM_NOTIFICATION_SOUND_ENABLED),
+				config.getOrDefault(StaffChatConfig.TEAM_NOTIFICATION_SOUND_NAME),
+				config.getOrDefault(StaffChatConfig.TEAM_NOTIFICATION_SOUND_VOLUME),
+				config.getOrDefault(StaffChatConfig.TEAM_NOTIFICATION_SOUND_PITCH)
+			)
+		);
+	}
+
+	private ChatChannel extraChannel(int id, String name, ConfigurationSection section, ChatChannel staff) {
+		String displayName = DISPLAY_NAME.get(section).orElse(name);
+		@NullOr String chatPrefix = CHAT_PREFIX.get(section).filter(prefix -> !prefix.isEmpty()).orElse(null);
+
+		return new ChatChannel(
+			id,
+			name,
+			displayName,
+			PERMISSION.get(section).orElse("staffchat.channel." + name),
+			chatPrefix,
+			DISCORD_CHANNEL.get(section).orElse(name),
+			COMMAND.get(section).orElse(name.replace("-", "")),
+			List.copyOf(section.getStringList("aliases")),
+			new Formats(
+				TAG.get(section).orElse("&7(&f&l&o" + displayName + "&7)"),
+				PLAYER_FORMAT.get(section).orElse("%channel-prefix% %name%&7:&f %message%"),
+				DISCORD_FORMAT.get(section).orElse("&9&ldiscord &f→ %channel-prefix% %name%&7:&f %message%"),
+				CONSOLE_FORMAT.get(section).orElse("%channel-prefix% [CONSOLE]&7:&f %message%"),
+				DISCORD_CONSOLE_FORMAT.get(section).orElse(staff.formats().discordConsole()),
+				LEFT_REMINDER.get(section).orElse("&8&o(Reminder: you left the " + displayName + " chat)"),
+				RATE_LIMITED.get(section).orElse("%channel-prefix% &6→&e You're sending messages too quickly, slow down")
+			),
+			sound(section, "sounds.messages", staff.messageSound(), StaffChatConfig.MESSAGE_SOUND_NAME),
+			sound(section, "sounds.notifications", staff.notificationSound(), StaffChatConfig.NOTIFICATION_SOUND_NAME)
+		);
+	}
+
+	private ChannelSound sound(
+		ConfigurationSection section,
+		String path,
+		ChannelSound defaults,
+		DefaultYamlValue<Sound> defaultName
+	) {
+		@NullOr ConfigurationSection sound = section.getConfigurationSection(path);
+		if (sound == null) {
+			return defaults;
+		}
+
+		StaffChatConfig config = plugin.config();
+		return ChannelSound.of(
+			SOUND_ENABLED.get(sound).orElse(defaults.enabled()),
+			SOUND_NAME.get(sound).orElse(config.getOrDefault(defaultName)),
+			SOUND_VOLUME.get(sound).orElse(defaults.sound().volume()),
+			SOUND_PITCH.get(sound).orElse(defaults.sound().pitch())
+		);
+	}
+
+	public ChatChannel staff() {
+		return byId[STAFF_ID];
+	}
+
+	public ChatChannel team() {
+		return byId[TEAM_ID];
+	}
+
+	public @NullOr ChatChannel get(int id) {
+		ChatChannel[] channels = byId;
+		return (id >= 0 && id < channels.length) ? channels[id] : null;
+	}
+
+	public Optional<ChatChannel> byName(String name) {
+		return Optional.ofNullable(byName.get(name));
+	}
+
+	public int capacity() {
+		return byId.length;
+	}
+
+	public List<ChatChannel> all() {
+		return all;
+	}
+
+	/**
+	 * Channels that can be chatted in by starting a public message with a prefix,
+	 * in id order (so staff chat is matched before team chat).
+	 */
+	public List<ChatChannel> prefixed() {
+		return prefixed;
+	}
+
+	public List<ChatChannel> extras() {
+		return all.subList(Math.min(all.size(), TEAM_ID + 1), all.size());
+	}
+
+	public void playMessageSound(ChatChannel channel, Player player) {
+		playSound(channel, channel.messageSound(), player);
+	}
+
+	public void playNotificationSound(ChatChannel channel, Player player) {
+		playSound(channel, channel.notificationSound(), player);
+	}
+
+	private void playSound(ChatChannel channel, ChannelSound sound, Player player) {
+		if (!sound.enabled()) {
+			return;
+		}
+
+		boolean sounds = plugin.data().getProfile(player)
+			.map(profile -> profile.receivesSounds(channel))
+			.orElse(true);
+
+		if (sounds && plugin.soundThrottle().tryPlay(player)) {
+			player.playSound(sound.sound(), net.kyori.adventure.sound.Sound.Emitter.self());
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.channels;
+
+import java.util.List;
+
+import org.bukkit.permissions.Permissible;
+
+import net.kyori.adventure.sound.Sound;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * A chat channel as defined by the config. The id is small and stable for
+ * the lifetime of the server, so it can index bitsets and arrays directly.
+ */
+public record ChatChannel(
+	int id,
+	String name,
+	String displayName,
+	String permission,
+	@NullOr String chatPrefix,
+	String discordChannel,
+	String command,
+	List<String> aliases,
+	Formats formats,
+	ChannelSound messageSound,
+	ChannelSound notificationSound
+) {
+	public record Formats(
+		String tag,
+		String inGamePlayer,
+		String inGameDiscord,
+		String inGameConsole,
+		String discordConsole,
+		String leftReminder,
+		String rateLimited
+	) {}
+
+	public record ChannelSound(boolean enabled, Sound sound) {
+		public static ChannelSound of(boolean enabled, org.bukkit.Sound sound, float volume, float pitch) {
+			return new ChannelSound(enabled, Sound.sound(sound, Sound.Source.MASTER, volume, pitch));
+		}
+	}
+
+	public long bit() {
+		return 1L << id;
+	}
+
+	public boolean isStaffChat() {
+		return id == ChannelRegistry.STAFF_ID;
+	}
+
+	public boolean isTeamChat() {
+		return id == ChannelRegistry.TEAM_ID;
+	}
+
+	public boolean isBuiltIn() {
+		return isStaffChat() || isTeamChat();
+	}
+
+	public boolean allows(Permissible permissible) {
+		return permissible.hasPermission(permission);
+	}
+
+	public boolean denies(Permissible permissible) {
+		return !allows(permissible);
+	}
+}
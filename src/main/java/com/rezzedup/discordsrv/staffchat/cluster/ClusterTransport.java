@@ -0,0 +1,53 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.cluster;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Moves frames of relayed messages between servers. Implementations only
+ * deal with opaque frames; batching, deduplication and rendering are done
+ * by the relay.
+ */
+public interface ClusterTransport {
+	/**
+	 * Starts listening. Received frames are passed to the receiver, which may
+	 * be called from any thread.
+	 */
+	void start(Consumer<byte[]> receiver) throws IOException;
+	
+	/**
+	 * Sends a frame to the other servers. Called off the server thread.
+	 *
+	 * @return {@code false} if the frame couldn't be sent and should be retried
+	 */
+	boolean send(byte[] frame);
+	
+	/**
+	 * Largest frame this transport can carry, in bytes.
+	 */
+	int maxFrameSize();
+	
+	void close();
+}
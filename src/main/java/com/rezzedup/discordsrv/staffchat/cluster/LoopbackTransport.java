@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.cluster;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Delivers frames to other transports connected to the same in-process hub.
+ * Useful as a stand-in for a real network, or with a single server.
+ */
+public final class LoopbackTransport implements ClusterTransport {
+	public static final class Hub {
+		private final Set<LoopbackTransport> members = new CopyOnWriteArraySet<>();
+		
+		public LoopbackTransport connect() {
+			return new LoopbackTransport(this);
+		}
+	}
+	
+	private final Hub hub;
+	private volatile @NullOr Consumer<byte[]> receiver;
+	
+	private LoopbackTransport(Hub hub) {
+		this.hub = hub;
+	}
+	
+	@Override
+	public void start(Consumer<byte[]> receiver) {
+		this.receiver = receiver;
+		hub.members.add(this);
+	}
+	
+	@Override
+	public boolean send(byte[] frame) {
+		for (LoopbackTransport member : hub.members) {
+			@NullOr Consumer<byte[]> other = member.receiver;
+			if (member != this && other != null) {
+				other.accept(frame.clone());
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public int maxFrameSize() {
+		return Integer.MAX_VALUE;
+	}
+	
+	@Override
+	public void close() {
+		hub.members.remove(this);
+		receiver = null;
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Relays frames through the proxy with the "BungeeCord" plugin messaging
+ * channel's Forward sub-channel, which both BungeeCord and Velocity support.
+ * Plugin messages travel over a player's connection, so frames can only be
+ * sent while someone is online; until then they're retried.
+ */
+public final class PluginMessagingTransport implements ClusterTransport, PluginMessageListener {
+	private static final String CHANNEL = "BungeeCord";
+	private static final String SUBCHANNEL = "StaffChatRelay";
+	
+	// Forward data is length-prefixed with an unsigned short, and the whole message must fit in a packet.
+	private static final int MAX_FRAME_SIZE = 30_000;
+	
+	private final Plugin plugin;
+	private volatile @NullOr Consumer<byte[]> receiver;
+	
+	public PluginMessagingTransport(Plugin plugin) {
+		this.plugin = plugin;
+	}
+	
+	@Override
+	public void start(Consumer<byte[]> receiver) {
+		this.receiver = receiver;
+		plugin.getServer().getMessenger().registerOutgoingPluginChannel(plugin, CHANNEL);
+		plugin.getServer().getMessenger().registerIncomingPluginChannel(plugin, CHANNEL, this);
+	}
+	
+	@Override
+	public boolean send(byte[] frame) {
+		@NullOr Player carrier = plugin.getServer().getOnlinePlayers().stream().findFirst().orElse(null);
+		if (carrier == null) {
+			return false;
+		}
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(frame.length + 32);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeUTF("Forward");
+			out.writeUTF("ALL");
+			out.writeUTF(SUBCHANNEL);
+			out.writeShort(frame.length);
+			out.write(frame);
+		} catch (IOException e) {
+			return false;
+		}
+		
+		carrier.sendPluginMessage(plugin, CHANNEL, bytes.toByteArray());
+		return true;
+	}
+	
+	@Override
+	public void onPluginMessageReceived(String channel, Player player, byte[] message) {
+		@NullOr Consumer<byte[]> consumer = receiver;
+		if (consumer == null || !CHANNEL.equals(channel)) {
+			return;
+		}
+		
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(message))) {
+			if (!SUBCHANNEL.equals(in.readUTF())) {
+				return;
+			}
+			consumer.accept(in.readNBytes(in.readUnsignedShort()));
+		} catch (IOException ignored) {
+			// Not a forwarded relay message.
+		}
+	}
+	
+	@Override
+	public int maxFrameSize() {
+		return MAX_FRAME_SIZE;
+	}
+	
+	@Override
+	public void close() {
+		receiver = null;
+		plugin.getServer().getMessenger().unregisterOutgoingPluginChannel(plugin, CHANNEL);
+		plugin.getServer().getMessenger().unregisterIncomingPluginChannel(plugin, CHANNEL, this);
+	}
+}
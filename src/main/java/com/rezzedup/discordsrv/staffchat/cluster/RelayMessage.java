@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * A chat message accepted on one server, to be shown on the others.
+ * Messages travel in batches: a frame holds any number of encoded messages.
+ */
+public record RelayMessage(
+	UUID id,
+	String origin,
+	String channel,
+	Kind kind,
+	@NullOr UUID author,
+	String authorName,
+	String text
+) {
+	private static final byte FRAME_VERSION = 2;
+
+	public enum Kind {
+		CONSOLE,
+		PLAYER,
+		DISCORD,
+		// Discord egress election: text lists the channels the origin can post to.
+		HEARTBEAT,
+		// The Discord egress leader took the message with this id: text names the server that sent it.
+		ACK
+	}
+
+	public byte[] encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + text.length());
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeLong(id.getMostSignificantBits());
+			out.writeLong(id.getLeastSignificantBits());
+			writeString(out, origin);
+			writeString(out, channel);
+			out.writeByte(kind.ordinal());
+			out.writeBoolean(author != null);
+			if (author != null) {
+				out.writeLong(author.getMostSignificantBits());
+				out.writeLong(author.getLeastSignificantBits());
+			}
+			writeString(out, authorName);
+			writeString(out, text);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static RelayMessage read(DataInputStream in) throws IOException {
+		UUID id = new UUID(in.readLong(), in.readLong());
+		String origin = readString(in);
+		String channel = readString(in);
+
+		int kind = in.readUnsignedByte();
+		if (kind >= Kind.values().length) {
+			throw new IOException("Unknown message kind: " + kind);
+		}
+
+		@NullOr UUID author = (in.readBoolean()) ? new UUID(in.readLong(), in.readLong()) : null;
+		return new RelayMessage(id, origin, channel, Kind.values()[kind], author, readString(in), readString(in));
+	}
+
+	// Unlike writeUTF, not limited to 65535 bytes: a long message must not wedge the relay queue.
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > in.available()) {
+			throw new IOException("Invalid string length: " + length);
+		}
+		return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Size of a frame containing the given encoded messages.
+	 */
+	public static int frameSize(int messages, int encodedBytes) {
+		return 1 + 4 + (4 * messages) + encodedBytes;
+	}
+
+	public static byte[] frame(List<byte[]> encoded) {
+		int size = frameSize(encoded.size(), encoded.stream().mapToInt(message -> message.length).sum());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(FRAME_VERSION);
+			out.writeInt(encoded.size());
+			for (byte[] message : encoded) {
+				out.writeInt(message.length);
+				out.write(message);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public static List<RelayMessage> unframe(byte[] frame) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame))) {
+			int version = in.readUnsignedByte();
+			if (version != FRAME_VERSION) {
+				throw new IOException("Unsupported frame version: " + version);
+			}
+
+			int count = in.readInt();
+			if (count < 0 || count > frame.length) {
+				throw new IOException("Invalid message count: " + count);
+			}
+
+			List<RelayMessage> messages = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				int length = in.readInt();
+				if (length < 0 || length > frame.length) {
+					throw new IOException("Invalid message length: " + length);
+				}
+				byte[] message = in.readNBytes(length);
+				try (DataInputStream messageIn = new DataInputStream(new ByteArrayInputStream(message))) {
+					messages.add(read(messageIn));
+				}
+			}
+			return messages;
+		}
+	}
+}
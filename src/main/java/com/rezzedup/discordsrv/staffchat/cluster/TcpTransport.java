@@ -0,0 +1,351 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Sends frames directly to every configured peer over TCP, and accepts
+ * frames from the configured peers only. Frames are length-prefixed.
+ * Unreachable peers are retried with a short backoff instead of holding up
+ * the others.
+ *
+ * <p>Connections from addresses that aren't peers are closed right away.
+ * Every other connection has to prove it knows the shared secret before any
+ * of its frames are read: the accepting side sends a random challenge, and
+ * the connecting side answers with its HMAC-SHA256 under the secret. Peer
+ * addresses are resolved once, when the transport is created.</p>
+ */
+public final class TcpTransport implements ClusterTransport {
+	private static final int MAX_FRAME_SIZE = 1024 * 1024;
+	private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+	private static final long RECONNECT_BACKOFF_MILLIS = 5000;
+	private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+	private static final int CHALLENGE_SIZE = 32;
+	private static final String HMAC = "HmacSHA256";
+	private static final int ACCEPTED = 1;
+	
+	private final InetSocketAddress bindAddress;
+	private final List<Peer> peers;
+	private final Set<InetAddress> allowed;
+	private final SecretKeySpec secret;
+	private final Executor threads;
+	private final Logger logger;
+	private final Set<Socket> accepted = ConcurrentHashMap.newKeySet();
+	private final Set<InetAddress> refused = ConcurrentHashMap.newKeySet();
+	private final SecureRandom random = new SecureRandom();
+	
+	private volatile @NullOr ServerSocket server;
+	
+	/**
+	 * @param secret  shared by every server in the network, must not be empty
+	 * @param threads runs the accept loop and one read loop per connection,
+	 *                each of which blocks for as long as the socket is open
+	 * @throws IllegalArgumentException if the secret is empty
+	 */
+	public TcpTransport(
+		InetSocketAddress bindAddress,
+		List<InetSocketAddress> peers,
+		String secret,
+		Executor threads,
+		Logger logger
+	) {
+		if (secret.isEmpty()) {
+			throw new IllegalArgumentException("A shared secret is required");
+		}
+		
+		this.bindAddress = bindAddress;
+		this.peers = peers.stream().map(Peer::new).toList();
+		this.allowed = peers.stream()
+			.map(InetSocketAddress::getAddress)
+			.filter(Objects::nonNull)
+			.collect(Collectors.toUnmodifiableSet());
+		this.secret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC);
+		this.threads = threads;
+		this.logger = logger;
+	}
+	
+	public static InetSocketAddress parseAddress(String address, int defaultPort) {
+		String trimmed = address.trim();
+		int colon = trimmed.lastIndexOf(':');
+		if (colon < 0) {
+			return new InetSocketAddress(trimmed, defaultPort);
+		}
+		return new InetSocketAddress(trimmed.substring(0, colon), Integer.parseInt(trimmed.substring(colon + 1)));
+	}
+	
+	/**
+	 * The port this transport is listening on, once started.
+	 */
+	int localPort() {
+		@NullOr ServerSocket socket = server;
+		return (socket == null) ? -1 : socket.getLocalPort();
+	}
+	
+	@Override
+	public void start(Consumer<byte[]> receiver) throws IOException {
+		ServerSocket socket = new ServerSocket();
+		socket.setReuseAddress(true);
+		socket.bind(bindAddress);
+		server = socket;
+		
+		threads.execute(() -> {
+			while (!socket.isClosed()) {
+				try {
+					Socket connection = socket.accept();
+					if (!allowed.contains(connection.getInetAddress())) {
+						refuse(connection);
+						continue;
+					}
+					connection.setTcpNoDelay(true);
+					accepted.add(connection);
+					threads.execute(() -> read(connection, receiver));
+				} catch (IOException e) {
+					if (!socket.isClosed()) {
+						logger.warning("Cluster relay could not accept a connection: " + e);
+					}
+				}
+			}
+		});
+	}
+	
+	private void refuse(Socket connection) {
+		InetAddress address = connection.getInetAddress();
+		try { connection.close(); } catch (IOException ignored) {}
+		
+		// Once per address, so a port scan or a misconfigured peer can't flood the log.
+		if (refused.add(address)) {
+			logger.warning("Cluster relay refused a connection from " + address + ": not listed in cluster.tcp.peers");
+		}
+	}
+	
+	private byte[] sign(byte[] challenge) {
+		try {
+			Mac mac = Mac.getInstance(HMAC);
+			mac.init(secret);
+			return mac.doFinal(challenge);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Challenges a connecting peer to prove it knows the secret.
+	 */
+	private boolean authenticate(Socket connection, DataInputStream in) throws IOException {
+		byte[] challenge = new byte[CHALLENGE_SIZE];
+		random.nextBytes(challenge);
+		
+		connection.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+		DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+		out.write(challenge);
+		out.flush();
+		
+		byte[] expected = sign(challenge);
+		byte[] answer = in.readNBytes(expected.length);
+		if (!MessageDigest.isEqual(expected, answer)) {
+			return false;
+		}
+		
+		out.writeByte(ACCEPTED);
+		out.flush();
+		connection.setSoTimeout(0);
+		return true;
+	}
+	
+	private void read(Socket connection, Consumer<byte[]> receiver) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()))) {
+			if (!authenticate(connection, in)) {
+				if (refused.add(connection.getInetAddress())) {
+					logger.warning("Cluster relay refused a connection from " + connection.getInetAddress() + ": wrong secret");
+				}
+				return;
+			}
+			
+			while (true) {
+				int length = in.readInt();
+				if (length < 0 || length > MAX_FRAME_SIZE) {
+					throw new IOException("Invalid frame length: " + length);
+				}
+				receiver.accept(in.readNBytes(length));
+			}
+		} catch (EOFException ignored) {
+			// Peer disconnected.
+		} catch (IOException e) {
+			if (!connection.isClosed()) {
+				logger.warning("Cluster relay connection from " + connection.getRemoteSocketAddress() + " failed: " + e);
+			}
+		} finally {
+			accepted.remove(connection);
+			try { connection.close(); } catch (IOException ignored) {}
+		}
+	}
+	
+	@Override
+	public boolean send(byte[] frame) {
+		if (peers.isEmpty()) {
+			return true;
+		}
+		
+		boolean delivered = false;
+		for (Peer peer : peers) {
+			delivered |= peer.send(frame);
+		}
+		
+		// Only retry if nobody could be reached; a single peer being down shouldn't hold up the rest.
+		return delivered;
+	}
+	
+	@Override
+	public int maxFrameSize() {
+		return MAX_FRAME_SIZE;
+	}
+	
+	@Override
+	public void close() {
+		@NullOr ServerSocket socket = server;
+		if (socket != null) {
+			try { socket.close(); } catch (IOException ignored) {}
+		}
+		for (Socket connection : accepted) {
+			try { connection.close(); } catch (IOException ignored) {}
+		}
+		for (Peer peer : peers) {
+			peer.disconnect();
+		}
+	}
+	
+	private final class Peer {
+		private final InetSocketAddress address;
+		private @NullOr Socket socket;
+		private @NullOr DataOutputStream out;
+		private long nextAttemptAt = 0;
+		private boolean warnedRefused;
+		
+		Peer(InetSocketAddress address) {
+			this.address = address;
+		}
+		
+		synchronized boolean send(byte[] frame) {
+			if (out == null && !connect()) {
+				return false;
+			}
+			try {
+				out.writeInt(frame.length);
+				out.write(frame);
+				out.flush();
+				return true;
+			} catch (IOException e) {
+				logger.warning("Cluster relay lost connection to " + address + ": " + e);
+				disconnect();
+				nextAttemptAt = System.currentTimeMillis() + RECONNECT_BACKOFF_MILLIS;
+				return false;
+			}
+		}
+		
+		private boolean connect() {
+			long now = System.currentTimeMillis();
+			if (now < nextAttemptAt) {
+				return false;
+			}
+			
+			Socket connection = new Socket();
+			try {
+				connection.setTcpNoDelay(true);
+				connection.connect(address, CONNECT_TIMEOUT_MILLIS);
+				
+				DataOutputStream output = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+				if (!answerChallenge(connection, output)) {
+					if (!warnedRefused) {
+						warnedRefused = true;
+						logger.warning("Cluster relay peer " + address + " refused this server: check cluster.tcp.secret and cluster.tcp.peers");
+					}
+					throw new IOException("Handshake refused");
+				}
+				
+				warnedRefused = false;
+				socket = connection;
+				out = output;
+				return true;
+			} catch (IOException e) {
+				try { connection.close(); } catch (IOException ignored) {}
+				nextAttemptAt = now + RECONNECT_BACKOFF_MILLIS;
+				return false;
+			}
+		}
+		
+		private boolean answerChallenge(Socket connection, DataOutputStream output) throws IOException {
+			connection.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+			DataInputStream in = new DataInputStream(connection.getInputStream());
+			
+			byte[] challenge = new byte[CHALLENGE_SIZE];
+			try {
+				in.readFully(challenge);
+			} catch (EOFException e) {
+				// Closed without a challenge: this server isn't one of its peers.
+				return false;
+			}
+			output.write(sign(challenge));
+			output.flush();
+			
+			// A refused connection is closed instead of answered.
+			int reply = in.read();
+			connection.setSoTimeout(0);
+			return reply == ACCEPTED;
+		}
+		
+		synchronized void disconnect() {
+			if (socket != null) {
+				try { socket.close(); } catch (IOException ignored) {}
+			}
+			socket = null;
+			out = null;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.commands;
+
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+
+import com.rezzedup.discordsrv.staffchat.StaffChatPlugin;
+import com.rezzedup.discordsrv.staffchat.StaffChatProfile;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+
+import dev.jorel.commandapi.CommandAPICommand;
+import dev.jorel.commandapi.arguments.GreedyStringArgument;
+
+/**
+ * The chat command for a channel defined in the config, which works just
+ * like {@code /staffchat}.
+ */
+public class ChannelChatCommand {
+	private final StaffChatPlugin plugin;
+	private final ChatChannel channel;
+
+	public ChannelChatCommand(StaffChatPlugin plugin, ChatChannel channel) {
+		this.plugin = plugin;
+		this.channel = channel;
+	}
+
+	public void register() {
+		new CommandAPICommand(channel.command())
+			.withAliases(channel.aliases().toArray(String[]::new))
+			.withPermission(channel.permission())
+			.withSubcommand(HistorySubcommand.of(plugin, channel.permission(), this::current))
+			.withOptionalArguments(new GreedyStringArgument("message"))
+			.executes((sender, args) -> {
+				if (sender == null) {
+					return;
+				}
+				ChatChannel current = current();
+				String message = (String) args.get("message");
+				if (message == null || message.isBlank()) {
+					if (sender instanceof Player) {
+						toggle((Player) sender, current);
+					} else {
+						plugin.messages().notifyPlayersOnlyToggle(sender, current);
+					}
+					return;
+				}
+				if (sender instanceof Player) {
+					plugin.submitChannelMessageFromPlayer(current, (Player) sender, message);
+				} else if (sender instanceof ConsoleCommandSender) {
+					plugin.submitChannelMessageFromConsole(current, message);
+				} else {
+					plugin.messages().notifyUnsupportedSender(sender);
+				}
+			})
+			.register();
+	}
+
+	// Looks the channel up again in case it was changed by a reload.
+	private ChatChannel current() {
+		return plugin.channels().byName(channel.name()).orElse(channel);
+	}
+
+	private void toggle(Player player, ChatChannel current) {
+		StaffChatProfile profile = plugin.data().getOrCreateProfile(player);
+		profile.toggleAutomaticChat(current);
+		plugin.messages().notifyAutoChannelChat(player, current, profile.automaticChat(current));
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.commands;
+
+import java.util.function.Supplier;
+
+import com.rezzedup.discordsrv.staffchat.StaffChatPlugin;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+
+import dev.jorel.commandapi.CommandAPICommand;
+import dev.jorel.commandapi.arguments.IntegerArgument;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * The {@code history [lines]} subcommand of each chat command, which shows
+ * the channel's recent messages.
+ */
+final class HistorySubcommand {
+	private static final int MAX_LINES = 1000;
+
+	private HistorySubcommand() {}
+
+	static CommandAPICommand of(StaffChatPlugin plugin, String permission, Supplier<ChatChannel> channel) {
+		return new CommandAPICommand("history")
+			.withPermission(permission)
+			.withOptionalArguments(new IntegerArgument("lines", 1, MAX_LINES))
+			.executes((sender, args) -> {
+				@NullOr Integer lines = (Integer) args.get("lines");
+				plugin.history().show(
+					sender,
+					channel.get(),
+					(lines == null) ? plugin.config().getOrDefault(StaffChatConfig.HISTORY_DEFAULT_LINES) : lines
+				);
+			});
+	}
+}
@@ -28,6 +28,7 @@ import com.rezzedup.util.constants.MatchRules;
 import com.rezzedup.util.constants.annotations.AggregatedResult;
 import dev.jorel.commandapi.CommandAPICommand;
 import dev.jorel.commandapi.arguments.ArgumentSuggestions;
+import dev.jorel.commandapi.arguments.GreedyStringArgument;
 import dev.jorel.commandapi.arguments.StringArgument;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -41,6 +42,7 @@ import static com.rezzedup.discordsrv.staffchat.util.Strings.colorful;
 public class ManageStaffChatCommand {
 	private static final Set<String> RELOAD_ALIASES = Set.of("reload");
 	private static final Set<String> DEBUG_ALIASES = Set.of("debug");
+	private static final Set<String> SEARCH_ALIASES = Set.of("search");
 	private static final Set<String> HELP_ALIASES = Set.of("help", "usage", "?");
 	
 	@AggregatedResult
@@ -72,9 +74,10 @@ public class ManageStaffChatCommand {
 				"manageadminchat"
 			)
 			.withPermission("staffchat.manage")
-			.withOptionalArguments(actionArgument)
+			.withOptionalArguments(actionArgument, new GreedyStringArgument("query"))
 			.executes((sender, args) -> {
 				@NullOr String option = (String) args.get("action");
+				@NullOr String query = (String) args.get("query");
 				if (option == null || option.isBlank()) {
 					usage(sender, "managestaffchat");
 					return;
@@ -86,6 +89,8 @@ public class ManageStaffChatCommand {
 					reload(sender);
 				} else if (DEBUG_ALIASES.contains(option)) {
 					debug(sender);
+				} else if (SEARCH_ALIASES.contains(option)) {
+					plugin.search().search(sender, (query == null) ? "" : query);
 				} else {
 					sender.sendMessage(colorful(
 						"&9&lDiscordSRV-Staff-Chat&f: &7&oUnknown arguments: " + option
@@ -106,6 +111,7 @@ public class ManageStaffChatCommand {
 		sender.sendMessage(colorful("&f- &7/joinstaffchat &9Rejoin the staff chat"));
 		sender.sendMessage(colorful("&f- &7/" + label.toLowerCase() + " reload &9Reload configs"));
 		sender.sendMessage(colorful("&f- &7/" + label.toLowerCase() + " debug &9Toggle debugging"));
+		sender.sendMessage(colorful("&f- &7/" + label.toLowerCase() + " search <terms> [since] &9Search the audit log"));
 		
 		if (plugin.debugger().isEnabled()) {
 			sender.sendMessage(colorful("&2→ &aDebugging is currently enabled"));
@@ -117,15 +123,7 @@ public class ManageStaffChatCommand {
 	}
 	
 	private void reload(CommandSender sender) {
-		plugin.debug(getClass()).log("Reload", () -> "Reloading configs and data...");
-		
-		plugin.config().reload();
-		plugin.messages().reload();
-		plugin.data().reload();
-		plugin.updater().reload();
-		plugin.refreshPrefixedChatCache();
-		plugin.invalidatePlayerCache();
-		
+		plugin.reload();
 		sender.sendMessage(colorful("&9&lDiscordSRV-Staff-Chat&f: Reloaded."));
 	}
 	
@@ -110,15 +110,7 @@ public class ManageTeamChatCommand {
 	}
 	
 	private void reload(CommandSender sender) {
-		plugin.debug(getClass()).log("Reload", () -> "Reloading configs and data...");
-		
-		plugin.config().reload();
-		plugin.messages().reload();
-		plugin.data().reload();
-		plugin.updater().reload();
-		plugin.refreshPrefixedChatCache();
-		plugin.invalidatePlayerCache();
-		
+		plugin.reload();
 		sender.sendMessage(colorful("&9&lDiscordSRV-Team-Chat&f: Reloaded."));
 	}
 	
@@ -39,6 +39,7 @@ public class StaffChatCommand {
 		new CommandAPICommand("staffchat")
 			.withAliases("adminchat", "schat", "achat", "sc", "ac", "a")
 			.withPermission("staffchat.access")
+			.withSubcommand(HistorySubcommand.of(plugin, "staffchat.access", () -> plugin.channels().staff()))
 			.withOptionalArguments(new GreedyStringArgument("message"))
 			.executes((sender, args) -> {
 				if (sender == null) {
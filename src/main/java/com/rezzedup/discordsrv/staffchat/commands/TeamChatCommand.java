@@ -39,6 +39,7 @@ public class TeamChatCommand {
 		new CommandAPICommand("teamchat")
 			.withAliases("tchat", "tc", "t")
 			.withPermission("teamchat.access")
+			.withSubcommand(HistorySubcommand.of(plugin, "teamchat.access", () -> plugin.channels().team()))
 			.withOptionalArguments(new GreedyStringArgument("message"))
 			.executes((sender, args) -> {
 				if (sender == null) {
@@ -25,11 +25,13 @@ package com.rezzedup.discordsrv.staffchat.config;
 import java.util.List;
 import java.util.function.Predicate;
 
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
 import com.github.zafarkhaja.semver.Version;
 import com.rezzedup.discordsrv.staffchat.StaffChatPlugin;
 import com.rezzedup.discordsrv.staffchat.Updater;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
 import com.rezzedup.discordsrv.staffchat.util.MappedPlaceholder;
 import com.rezzedup.discordsrv.staffchat.util.Strings;
 import com.rezzedup.util.constants.Aggregates;
@@ -98,6 +100,23 @@ public class MessagesConfig extends YamlDataFile {
         YamlValue.ofString("messages.team-discord-formats.console")
             .defaults("**`CONSOLE:`** %message%");
     
+    // Alert Formats
+    public static final DefaultYamlValue<String> ALERT_FIRST_FORMAT =
+        YamlValue.ofString("messages.alerts.first")
+            .defaults("&7[%source%] &f%subject% &cflagged&f %type%");
+    
+    public static final DefaultYamlValue<String> ALERT_SUMMARY_FORMAT =
+        YamlValue.ofString("messages.alerts.summary")
+            .defaults("&7[%source%] &f%subject% &cflagged&f %type% &c×%count%&7 in %seconds%s");
+    
+    public static final DefaultYamlValue<String> IN_GAME_ALERT_FORMAT =
+        YamlValue.ofString("messages.alerts.in-game")
+            .defaults("%prefix% &4⚠&r %alert%");
+    
+    public static final DefaultYamlValue<String> DISCORD_ALERT_FORMAT =
+        YamlValue.ofString("messages.alerts.discord")
+            .defaults("**`ALERT:`** %alert%");
+    
     // Staff Chat Notifications
     public static final DefaultYamlValue<String> AUTO_ENABLED_NOTIFICATION =
         YamlValue.ofString("notifications.automatic-staff-chat.enabled")
@@ -190,6 +209,15 @@ public class MessagesConfig extends YamlDataFile {
         YamlValue.ofString("notifications.team-join.others")
             .defaults("%team-prefix% &2→&a %player% &njoined&a the team chat");
     
+    // Flood Control Notifications
+    public static final DefaultYamlValue<String> RATE_LIMITED_NOTIFICATION =
+        YamlValue.ofString("notifications.flood-control.rate-limited")
+            .defaults("%prefix% &6→&e You're sending staff chat messages too quickly, slow down");
+    
+    public static final DefaultYamlValue<String> TEAM_RATE_LIMITED_NOTIFICATION =
+        YamlValue.ofString("notifications.team-flood-control.rate-limited")
+            .defaults("%team-prefix% &6→&e You're sending team chat messages too quickly, slow down");
+    
     // Sound Notifications
     public static final DefaultYamlValue<String> MUTE_SOUNDS_NOTIFICATION =
         YamlValue.ofString("notifications.sounds.muted")
@@ -215,13 +243,31 @@ public class MessagesConfig extends YamlDataFile {
                 "%team-prefix% &2→&a You have &nunmuted&a team chat sounds"
             );
     
+    // Channel Notifications
+    public static final DefaultYamlValue<String> AUTO_CHANNEL_ENABLED_NOTIFICATION =
+        YamlValue.ofString("notifications.automatic-channel-chat.enabled")
+            .defaults("%channel-prefix% &2→&a &nEnabled&a automatic %channel% chat");
+    
+    public static final DefaultYamlValue<String> AUTO_CHANNEL_DISABLED_NOTIFICATION =
+        YamlValue.ofString("notifications.automatic-channel-chat.disabled")
+            .defaults("%channel-prefix% &4→&c &nDisabled&c automatic %channel% chat");
+    
+    // Command Errors
+    public static final DefaultYamlValue<String> PLAYERS_ONLY_TOGGLE_ERROR =
+        YamlValue.ofString("notifications.errors.players-only-toggle")
+            .defaults("Only players may toggle automatic %channel% chat.");
+    
+    public static final DefaultYamlValue<String> UNSUPPORTED_SENDER_ERROR =
+        YamlValue.ofString("notifications.errors.unsupported-sender")
+            .defaults("Unsupported command sender type: %sender-type%");
+    
     @AggregatedResult
     public static final List<YamlValue<?>> VALUES =
         Aggregates.fromThisClass().constantsOfType(YamlValue.type()).toList();
     
     private final StaffChatPlugin plugin;
     
-    private @NullOr MappedPlaceholder definitions = null;
+    private volatile @NullOr MappedPlaceholder definitions = null;
     
     public MessagesConfig(StaffChatPlugin plugin) {
         super(plugin.directory(), "messages.config.yml", Load.LATER);
@@ -235,8 +281,9 @@ public class MessagesConfig extends YamlDataFile {
                 
                 // Add default placeholders
                 if (definitions == null) {
-                    definitions = new MappedPlaceholder();
-                    definitions.map("prefix").to(PREFIX::getDefaultValue);
+                    MappedPlaceholder defaults = new MappedPlaceholder();
+                    defaults.map("prefix").to(PREFIX::getDefaultValue);
+                    definitions = defaults.freeze();
                 }
                 
                 return;
@@ -265,32 +312,31 @@ public class MessagesConfig extends YamlDataFile {
             // Load defined placeholders
             Sections.get(data(), "placeholders").ifPresent(section ->
             {
-                definitions = new MappedPlaceholder();
+                MappedPlaceholder loaded = new MappedPlaceholder();
                 
                 for (String key : section.getKeys(false)) {
                     @NullOr String value = section.getString(key);
                     if (Strings.isEmptyOrNull(value)) {
                         continue;
                     }
-                    definitions.map(key).to(() -> value);
+                    loaded.map(key).to(() -> value);
                 }
+                
+                // Shared by every message as the parent scope, so it must not change.
+                definitions = loaded.freeze();
             });
         });
     }
     
     public MappedPlaceholder placeholders() {
-        MappedPlaceholder placeholders = new MappedPlaceholder();
-        if (definitions != null) {
-            placeholders.inherit(definitions);
-        }
-        return placeholders;
+        @NullOr MappedPlaceholder global = definitions;
+        return (global != null) ? global.child() : new MappedPlaceholder();
     }
     
     public MappedPlaceholder placeholders(Player player) {
         MappedPlaceholder placeholders = placeholders();
         
-        placeholders.map("user", "name", "username", "player", "sender").to(player::getName);
-        placeholders.map("nickname", "displayname").to(() -> player.getName());
+        placeholders.map("user", "name", "username", "player", "sender", "nickname", "displayname").to(player::getName);
         
         return placeholders;
     }
@@ -360,6 +406,10 @@ public class MessagesConfig extends YamlDataFile {
         sendNotification(joiner, JOIN_CHAT_NOTIFICATION_SELF, others);
     }
     
+    public void notifyRateLimited(Player player) {
+        sendNotification(player, RATE_LIMITED_NOTIFICATION, null);
+    }
+    
     public void notifySoundsMuted(Player player) {
         sendNotification(player, MUTE_SOUNDS_NOTIFICATION, null);
     }
@@ -391,6 +441,10 @@ public class MessagesConfig extends YamlDataFile {
         sendTeamNotification(joiner, JOIN_TEAM_CHAT_NOTIFICATION_SELF, others);
     }
     
+    public void notifyTeamRateLimited(Player player) {
+        sendTeamNotification(player, TEAM_RATE_LIMITED_NOTIFICATION, null);
+    }
+    
     public void notifyTeamSoundsMuted(Player player) {
         sendTeamNotification(player, MUTE_TEAM_SOUNDS_NOTIFICATION, null);
     }
@@ -399,6 +453,35 @@ public class MessagesConfig extends YamlDataFile {
         sendTeamNotification(player, UNMUTE_TEAM_SOUNDS_NOTIFICATION, null);
     }
     
+    // Channel notifications
+    
+    private MappedPlaceholder placeholders(ChatChannel channel) {
+        MappedPlaceholder placeholders = placeholders();
+        placeholders.map("channel").to(channel::displayName);
+        placeholders.map("channel-prefix").to(() -> channel.formats().tag());
+        return placeholders;
+    }
+    
+    public void notifyAutoChannelChat(Player player, ChatChannel channel, boolean enabled) {
+        MappedPlaceholder placeholders = placeholders(channel);
+        placeholders.map("user", "name", "username", "player", "sender", "nickname", "displayname").to(player::getName);
+        
+        player.sendMessage(Strings.colorful(placeholders.update(getOrDefault(
+            (enabled) ? AUTO_CHANNEL_ENABLED_NOTIFICATION : AUTO_CHANNEL_DISABLED_NOTIFICATION
+        ))));
+        plugin.channels().playNotificationSound(channel, player);
+    }
+    
+    public void notifyPlayersOnlyToggle(CommandSender sender, ChatChannel channel) {
+        sender.sendMessage(Strings.colorful(placeholders(channel).update(getOrDefault(PLAYERS_ONLY_TOGGLE_ERROR))));
+    }
+    
+    public void notifyUnsupportedSender(CommandSender sender) {
+        MappedPlaceholder placeholders = placeholders();
+        placeholders.map("sender-type").to(() -> sender.getClass().getSimpleName());
+        sender.sendMessage(Strings.colorful(placeholders.update(getOrDefault(UNSUPPORTED_SENDER_ERROR))));
+    }
+    
     //
     //  Unconfigurable notifications
     //
@@ -24,7 +24,6 @@ package com.rezzedup.discordsrv.staffchat.config;
 
 import com.github.zafarkhaja.semver.Version;
 import com.rezzedup.discordsrv.staffchat.StaffChatPlugin;
-import com.rezzedup.discordsrv.staffchat.StaffChatProfile;
 import com.rezzedup.util.constants.Aggregates;
 import com.rezzedup.util.constants.annotations.AggregatedResult;
 import community.leaf.configvalues.bukkit.DefaultYamlValue;
@@ -85,6 +84,190 @@ public class StaffChatConfig extends YamlDataFile {
 	public static final DefaultYamlValue<String> PREFIXED_TEAM_CHAT_IDENTIFIER =
 		YamlValue.ofString("team-chat.prefixed.prefixed-chat-identifier").defaults("#");
 	
+	// Flood Control
+	
+	public static final DefaultYamlValue<Boolean> FLOOD_CONTROL_ENABLED =
+		YamlValue.ofBoolean("flood-control.enabled").defaults(false);
+	
+	public static final DefaultYamlValue<Integer> FLOOD_CONTROL_PLAYER_BURST =
+		YamlValue.ofInteger("flood-control.players.burst").defaults(5);
+	
+	public static final DefaultYamlValue<Double> FLOOD_CONTROL_PLAYER_REFILL =
+		YamlValue.ofDouble("flood-control.players.refill-per-second").defaults(0.5);
+	
+	public static final DefaultYamlValue<Integer> FLOOD_CONTROL_DISCORD_BURST =
+		YamlValue.ofInteger("flood-control.discord.burst").defaults(5);
+	
+	public static final DefaultYamlValue<Double> FLOOD_CONTROL_DISCORD_REFILL =
+		YamlValue.ofDouble("flood-control.discord.refill-per-second").defaults(0.5);
+	
+	public static final DefaultYamlValue<Integer> FLOOD_CONTROL_CONSOLE_BURST =
+		YamlValue.ofInteger("flood-control.console.burst").defaults(20);
+	
+	public static final DefaultYamlValue<Double> FLOOD_CONTROL_CONSOLE_REFILL =
+		YamlValue.ofDouble("flood-control.console.refill-per-second").defaults(5.0);
+	
+	public static final DefaultYamlValue<Integer> FLOOD_CONTROL_CHANNEL_BURST =
+		YamlValue.ofInteger("flood-control.channel-ceiling.burst").defaults(30);
+	
+	public static final DefaultYamlValue<Double> FLOOD_CONTROL_CHANNEL_REFILL =
+		YamlValue.ofDouble("flood-control.channel-ceiling.refill-per-second").defaults(5.0);
+	
+	// Events
+	
+	public static final DefaultYamlValue<Boolean> ASYNC_MESSAGE_EVENTS =
+		YamlValue.ofBoolean("plugin.events.fire-message-events-async").defaults(false);
+	
+	// Delivery
+	
+	public static final DefaultYamlValue<Boolean> COALESCE_MESSAGES =
+		YamlValue.ofBoolean("plugin.delivery.merge-messages-per-tick").defaults(true);
+	
+	public static final DefaultYamlValue<Boolean> ECHO_TO_CONSOLE =
+		YamlValue.ofBoolean("plugin.delivery.echo-messages-to-console").defaults(true);
+	
+	// History
+	
+	public static final DefaultYamlValue<Integer> HISTORY_CAPACITY =
+		YamlValue.ofInteger("history.messages-per-channel").defaults(100);
+	
+	public static final DefaultYamlValue<Integer> HISTORY_DEFAULT_LINES =
+		YamlValue.ofInteger("history.default-lines").defaults(10);
+	
+	public static final DefaultYamlValue<Integer> HISTORY_REPLAY_ON_JOIN =
+		YamlValue.ofInteger("history.replay-lines-on-join").defaults(0);
+	
+	// Audit Log
+	
+	public static final DefaultYamlValue<Boolean> AUDIT_ENABLED =
+		YamlValue.ofBoolean("audit.enabled").defaults(false);
+	
+	public static final DefaultYamlValue<Integer> AUDIT_SEGMENT_SIZE_KB =
+		YamlValue.ofInteger("audit.segment-size-kb").defaults(16384);
+	
+	public static final DefaultYamlValue<Integer> AUDIT_QUEUE_CAPACITY =
+		YamlValue.ofInteger("audit.queue-capacity").defaults(8192);
+	
+	public static final DefaultYamlValue<Integer> AUDIT_RETENTION_DAYS =
+		YamlValue.ofInteger("audit.retention-days").defaults(90);
+	
+	public static final DefaultYamlValue<Integer> AUDIT_COMPRESS_AFTER_DAYS =
+		YamlValue.ofInteger("audit.compress-after-days").defaults(1);
+	
+	// Search
+	
+	public static final DefaultYamlValue<Boolean> SEARCH_ENABLED =
+		YamlValue.ofBoolean("search.enabled").defaults(true);
+	
+	public static final DefaultYamlValue<Integer> SEARCH_MEMORY_POSTINGS =
+		YamlValue.ofInteger("search.memory-postings").defaults(50000);
+	
+	public static final DefaultYamlValue<Integer> SEARCH_MERGE_FACTOR =
+		YamlValue.ofInteger("search.merge-factor").defaults(8);
+	
+	public static final DefaultYamlValue<Integer> SEARCH_RESULTS_PER_PAGE =
+		YamlValue.ofInteger("search.results-per-page").defaults(8);
+	
+	// Storage
+	
+	public static final DefaultYamlValue<String> STORAGE_TYPE =
+		YamlValue.ofString("storage.type").defaults("yaml");
+	
+	public static final DefaultYamlValue<String> STORAGE_SQL_URL =
+		YamlValue.ofString("storage.sql.jdbc-url").defaults("");
+	
+	public static final DefaultYamlValue<Integer> STORAGE_SQL_FLUSH_TICKS =
+		YamlValue.ofInteger("storage.sql.sync-interval-ticks").defaults(20);
+	
+	// Shutdown
+	
+	public static final DefaultYamlValue<Integer> SHUTDOWN_DRAIN_TIMEOUT_MILLIS =
+		YamlValue.ofInteger("plugin.shutdown.drain-timeout-millis").defaults(5000);
+	
+	// Discord Inbox
+	
+	public static final DefaultYamlValue<Integer> DISCORD_INBOX_CAPACITY =
+		YamlValue.ofInteger("discord.inbox.capacity").defaults(1024);
+	
+	public static final DefaultYamlValue<Integer> DISCORD_INBOX_MESSAGES_PER_TICK =
+		YamlValue.ofInteger("discord.inbox.messages-per-tick").defaults(20);
+	
+	public static final DefaultYamlValue<String> DISCORD_INBOX_OVERFLOW_POLICY =
+		YamlValue.ofString("discord.inbox.overflow-policy").defaults("drop-newest");
+	
+	// Discord Outbox
+	
+	public static final DefaultYamlValue<Integer> DISCORD_OUTBOX_MEMORY_LIMIT =
+		YamlValue.ofInteger("discord.outbox.memory-limit").defaults(256);
+	
+	public static final DefaultYamlValue<Integer> DISCORD_OUTBOX_REPLAY_BATCH =
+		YamlValue.ofInteger("discord.outbox.replay-messages-per-second").defaults(20);
+	
+	public static final DefaultYamlValue<Integer> DISCORD_OUTBOX_MAX_DISK_KB =
+		YamlValue.ofInteger("discord.outbox.max-disk-kb-per-channel").defaults(4096);
+	
+	// Cluster Relay
+	
+	public static final DefaultYamlValue<Boolean> CLUSTER_ENABLED =
+		YamlValue.ofBoolean("cluster.enabled").defaults(false);
+	
+	public static final DefaultYamlValue<String> CLUSTER_SERVER_NAME =
+		YamlValue.ofString("cluster.server-name").defaults("");
+	
+	public static final DefaultYamlValue<String> CLUSTER_TRANSPORT =
+		YamlValue.ofString("cluster.transport").defaults("tcp");
+	
+	public static final DefaultYamlValue<String> CLUSTER_TCP_BIND =
+		YamlValue.ofString("cluster.tcp.bind-address").defaults("127.0.0.1");
+	
+	public static final DefaultYamlValue<Integer> CLUSTER_TCP_PORT =
+		YamlValue.ofInteger("cluster.tcp.port").defaults(25590);
+	
+	public static final DefaultYamlValue<String> CLUSTER_TCP_PEERS =
+		YamlValue.ofString("cluster.tcp.peers").defaults("");
+	
+	public static final DefaultYamlValue<String> CLUSTER_TCP_SECRET =
+		YamlValue.ofString("cluster.tcp.secret").defaults("");
+	
+	public static final DefaultYamlValue<Integer> CLUSTER_BATCH_SIZE =
+		YamlValue.ofInteger("cluster.batch.max-messages").defaults(64);
+	
+	public static final DefaultYamlValue<Integer> CLUSTER_QUEUE_CAPACITY =
+		YamlValue.ofInteger("cluster.batch.queue-capacity").defaults(1024);
+	
+	public static final DefaultYamlValue<String> EGRESS_ELECTION =
+		YamlValue.ofString("cluster.discord-egress.election").defaults("none");
+	
+	public static final DefaultYamlValue<Integer> EGRESS_LEASE_MILLIS =
+		YamlValue.ofInteger("cluster.discord-egress.lease-millis").defaults(3000);
+	
+	public static final DefaultYamlValue<String> EGRESS_LOCK_DIRECTORY =
+		YamlValue.ofString("cluster.discord-egress.lock-directory").defaults("");
+	
+	// PlaceholderAPI
+	
+	public static final DefaultYamlValue<Integer> PLACEHOLDER_CACHE_SECONDS =
+		YamlValue.ofInteger("placeholderapi.default-cache-seconds").defaults(0);
+	
+	// Alerts
+	
+	public static final DefaultYamlValue<Integer> ALERT_WINDOW_SECONDS =
+		YamlValue.ofInteger("alerts.aggregation-window-seconds").defaults(10);
+	
+	public static final DefaultYamlValue<Integer> ALERT_FLUSH_INTERVAL_TICKS =
+		YamlValue.ofInteger("alerts.flush-interval-ticks").defaults(20);
+	
+	public static final DefaultYamlValue<Integer> ALERT_DISCORD_EDIT_INTERVAL_SECONDS =
+		YamlValue.ofInteger("alerts.discord-edit-interval-seconds").defaults(5);
+	
+	public static final DefaultYamlValue<Integer> ALERT_MAX_TRACKED =
+		YamlValue.ofInteger("alerts.max-tracked-alerts").defaults(256);
+	
+	// Sounds
+	
+	public static final DefaultYamlValue<Integer> SOUND_MINIMUM_INTERVAL_MILLIS =
+		YamlValue.ofInteger("sounds.minimum-interval-millis").defaults(150);
+	
 	// Message Sound
 	
 	public static final DefaultYamlValue<Boolean> MESSAGE_SOUND_ENABLED =
@@ -177,69 +360,21 @@ public class StaffChatConfig extends YamlDataFile {
 		});
 	}
 	
-	private void playSound(
-		Player player,
-		DefaultYamlValue<Boolean> enabled,
-		DefaultYamlValue<Sound> sound,
-		DefaultYamlValue<Float> volume,
-		DefaultYamlValue<Float> pitch
-	) {
-		if (!getOrDefault(enabled)) {
-			return;
-		}
-		
-		boolean sounds = plugin.data().getProfile(player)
-			.map(StaffChatProfile::receivesStaffChatSounds)
-			.orElse(true);
-		
-		if (sounds) {
-			player.playSound(
-				player.getLocation().add(0, 0.5, 0),
-				getOrDefault(sound),
-				getOrDefault(volume),
-				getOrDefault(pitch)
-			);
-		}
-	}
-	
-	private void playTeamSound(
-		Player player,
-		DefaultYamlValue<Boolean> enabled,
-		DefaultYamlValue<Sound> sound,
-		DefaultYamlValue<Float> volume,
-		DefaultYamlValue<Float> pitch
-	) {
-		if (!getOrDefault(enabled)) {
-			return;
-		}
-		
-		boolean sounds = plugin.data().getProfile(player)
-			.map(StaffChatProfile::receivesTeamChatSounds)
-			.orElse(true);
-		
-		if (sounds) {
-			player.playSound(
-				player.getLocation().add(0, 0.5, 0),
-				getOrDefault(sound),
-				getOrDefault(volume),
-				getOrDefault(pitch)
-			);
-		}
-	}
+	// Sounds are played through the channel registry, which applies the per-player throttle.
 	
 	public void playMessageSound(Player player) {
-		playSound(player, MESSAGE_SOUND_ENABLED, MESSAGE_SOUND_NAME, MESSAGE_SOUND_VOLUME, MESSAGE_SOUND_PITCH);
+		plugin.channels().playMessageSound(plugin.channels().staff(), player);
 	}
 	
 	public void playNotificationSound(Player player) {
-		playSound(player, NOTIFICATION_SOUND_ENABLED, NOTIFICATION_SOUND_NAME, NOTIFICATION_SOUND_VOLUME, NOTIFICATION_SOUND_PITCH);
+		plugin.channels().playNotificationSound(plugin.channels().staff(), player);
 	}
 	
 	public void playTeamMessageSound(Player player) {
-		playTeamSound(player, TEAM_MESSAGE_SOUND_ENABLED, TEAM_MESSAGE_SOUND_NAME, TEAM_MESSAGE_SOUND_VOLUME, TEAM_MESSAGE_SOUND_PITCH);
+		plugin.channels().playMessageSound(plugin.channels().team(), player);
 	}
 	
 	public void playTeamNotificationSound(Player player) {
-		playTeamSound(player, TEAM_NOTIFICATION_SOUND_ENABLED, TEAM_NOTIFICATION_SOUND_NAME, TEAM_NOTIFICATION_SOUND_VOLUME, TEAM_NOTIFICATION_SOUND_PITCH);
+		plugin.channels().playNotificationSound(plugin.channels().team(), player);
 	}
 }
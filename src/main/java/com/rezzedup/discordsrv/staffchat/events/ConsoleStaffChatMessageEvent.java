@@ -29,7 +29,11 @@ import org.bukkit.event.HandlerList;
 
 public class ConsoleStaffChatMessageEvent extends StaffChatMessageEvent<ConsoleCommandSender, String> {
 	public ConsoleStaffChatMessageEvent(String text) {
-		super(Bukkit.getConsoleSender(), text, text);
+		this(text, false);
+	}
+	
+	public ConsoleStaffChatMessageEvent(String text, boolean isAsync) {
+		super(Bukkit.getConsoleSender(), text, text, isAsync);
 	}
 	
 	@Override
@@ -29,7 +29,11 @@ import org.bukkit.event.HandlerList;
 
 public class ConsoleTeamChatMessageEvent extends StaffChatMessageEvent<ConsoleCommandSender, String> {
     public ConsoleTeamChatMessageEvent(String text) {
-        super(Bukkit.getConsoleSender(), text, text);
+        this(text, false);
+    }
+    
+    public ConsoleTeamChatMessageEvent(String text, boolean isAsync) {
+        super(Bukkit.getConsoleSender(), text, text, isAsync);
     }
     
     @Override
@@ -29,7 +29,11 @@ import org.bukkit.event.HandlerList;
 
 public class DiscordStaffChatMessageEvent extends StaffChatMessageEvent<User, Message> {
 	public DiscordStaffChatMessageEvent(User author, Message message, String text) {
-		super(author, message, text);
+		this(author, message, text, false);
+	}
+	
+	public DiscordStaffChatMessageEvent(User author, Message message, String text, boolean isAsync) {
+		super(author, message, text, isAsync);
 	}
 	
 	@Override
@@ -28,7 +28,11 @@ import org.bukkit.event.HandlerList;
 
 public class PlayerStaffChatMessageEvent extends StaffChatMessageEvent<Player, String> {
 	public PlayerStaffChatMessageEvent(Player author, String text) {
-		super(author, text, text);
+		this(author, text, false);
+	}
+	
+	public PlayerStaffChatMessageEvent(Player author, String text, boolean isAsync) {
+		super(author, text, text, isAsync);
 	}
 	
 	@Override
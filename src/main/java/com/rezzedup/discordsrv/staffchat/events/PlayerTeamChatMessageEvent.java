@@ -28,7 +28,11 @@ import org.bukkit.event.HandlerList;
 
 public class PlayerTeamChatMessageEvent extends TeamChatMessageEvent<Player, String> {
     public PlayerTeamChatMessageEvent(Player author, String text) {
-        super(author, text, text);
+        this(author, text, false);
+    }
+    
+    public PlayerTeamChatMessageEvent(Player author, String text, boolean isAsync) {
+        super(author, text, text, isAsync);
     }
     
     @Override
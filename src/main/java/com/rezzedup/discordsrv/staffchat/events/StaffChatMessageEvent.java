@@ -34,6 +34,11 @@ public abstract class StaffChatMessageEvent<A, M> extends Event implements Cance
 	private String text;
 	
 	public StaffChatMessageEvent(A author, M message, String text) {
+		this(author, message, text, false);
+	}
+	
+	public StaffChatMessageEvent(A author, M message, String text, boolean isAsync) {
+		super(isAsync);
 		this.author = Objects.requireNonNull(author, "author");
 		this.message = Objects.requireNonNull(message, "message");
 		this.text = Objects.requireNonNull(text, "text");
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.listeners;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.Listener;
+
+import com.rezzedup.discordsrv.staffchat.StaffChatPlugin;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.security.ChatInterceptionHelper;
+import com.rezzedup.discordsrv.staffchat.util.ChatText;
+
+import community.leaf.eventful.bukkit.ListenerOrder;
+import community.leaf.eventful.bukkit.annotations.EventListener;
+import io.papermc.paper.event.player.AsyncChatEvent;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Decides once per chat message where it should go. The decision is kept in
+ * a side table for the lifetime of the event, so the other chat listeners
+ * only need to look it up. Only the route is decided up front: the text is
+ * read from the event again when it's delivered at the monitor stage, so
+ * that it includes changes made by other plugins' chat filters. This
+ * listener must be registered after the others so that its monitor handler,
+ * which clears the entry, runs last.
+ */
+public class ChatRouter implements Listener {
+	private static final int MAX_PENDING_ROUTES = 1024;
+
+	public enum Route {
+		PUBLIC,
+		STAFF_PREFIX,
+		TEAM_PREFIX,
+		CHANNEL_PREFIX,
+		STAFF_AUTO,
+		TEAM_AUTO,
+		CHANNEL_AUTO
+	}
+
+	public record Decision(Route route, @NullOr String prefix, @NullOr ChatChannel channel) {
+		static final Decision PUBLIC = new Decision(Route.PUBLIC, null, null);
+
+		public boolean isPublic() {
+			return route == Route.PUBLIC;
+		}
+
+		/**
+		 * The message as it currently reads, without the channel prefix.
+		 */
+		public String text(AsyncChatEvent event) {
+			String text = ChatText.plain(event.message());
+			// A filter may have rewritten the prefix too, in which case there's nothing to strip.
+			return (prefix != null && text.startsWith(prefix)) ? text.substring(prefix.length()).trim() : text;
+		}
+	}
+
+	private final StaffChatPlugin plugin;
+
+	// Events don't override equals/hashCode, so this is keyed by identity.
+	private final Map<AsyncChatEvent, Decision> routes = new ConcurrentHashMap<>(64);
+
+	public ChatRouter(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+	}
+
+	public Decision route(AsyncChatEvent event) {
+		if (routes.size() >= MAX_PENDING_ROUTES) {
+			// Something kept events from reaching the monitor handler, don't let them pile up.
+			routes.clear();
+		}
+		return routes.computeIfAbsent(event, this::decide);
+	}
+
+	private Decision decide(AsyncChatEvent event) {
+		Player player = event.getPlayer();
+
+		for (ChatChannel channel : plugin.channels().prefixed()) {
+			String prefix = Objects.requireNonNull(channel.chatPrefix());
+			if (channel.allows(player) && ChatText.startsWith(event.message(), prefix)) {
+				Route route = (channel.isStaffChat()) ? Route.STAFF_PREFIX
+					: (channel.isTeamChat()) ? Route.TEAM_PREFIX
+					: Route.CHANNEL_PREFIX;
+				return new Decision(route, prefix, channel);
+			}
+		}
+
+		long automatic = plugin.data().automaticChannels(player);
+		if (automatic == 0L) {
+			return Decision.PUBLIC;
+		}
+
+		// Lowest id wins, so staff chat comes before team chat and then the rest.
+		// Ids of channels removed by a reload are skipped.
+		@NullOr ChatChannel channel = null;
+		for (long bits = automatic; bits != 0L && channel == null; bits &= bits - 1) {
+			channel = plugin.channels().get(Long.numberOfTrailingZeros(bits));
+		}
+		if (channel == null) {
+			return Decision.PUBLIC;
+		}
+
+		Route route = (channel.isStaffChat()) ? Route.STAFF_AUTO
+			: (channel.isTeamChat()) ? Route.TEAM_AUTO
+			: Route.CHANNEL_AUTO;
+		return new Decision(route, null, channel);
+	}
+
+	@EventListener(ListenerOrder.FIRST)
+	public void onChatFirst(AsyncChatEvent event) {
+		if (!route(event).isPublic()) {
+			ChatInterceptionHelper.blockPublicChat(event, event.getPlayer());
+		}
+	}
+
+	@EventListener(ListenerOrder.MONITOR)
+	public void onChatMonitor(AsyncChatEvent event) {
+		routes.remove(event);
+	}
+}
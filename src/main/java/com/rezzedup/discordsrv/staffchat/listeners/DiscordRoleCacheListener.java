@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.listeners;
+
+import com.rezzedup.discordsrv.staffchat.util.DiscordRolePlaceholders;
+
+import github.scarsz.discordsrv.dependencies.jda.api.events.guild.member.GuildMemberRemoveEvent;
+import github.scarsz.discordsrv.dependencies.jda.api.events.guild.member.GuildMemberRoleAddEvent;
+import github.scarsz.discordsrv.dependencies.jda.api.events.guild.member.GuildMemberRoleRemoveEvent;
+import github.scarsz.discordsrv.dependencies.jda.api.events.role.RoleDeleteEvent;
+import github.scarsz.discordsrv.dependencies.jda.api.events.role.update.GenericRoleUpdateEvent;
+import github.scarsz.discordsrv.dependencies.jda.api.hooks.ListenerAdapter;
+
+/**
+ * Clears cached Discord role placeholders whenever the roles they were
+ * computed from change.
+ */
+public class DiscordRoleCacheListener extends ListenerAdapter {
+	@Override
+	public void onGuildMemberRoleAdd(GuildMemberRoleAddEvent event) {
+		DiscordRolePlaceholders.invalidate(event.getMember().getIdLong());
+	}
+
+	@Override
+	public void onGuildMemberRoleRemove(GuildMemberRoleRemoveEvent event) {
+		DiscordRolePlaceholders.invalidate(event.getMember().getIdLong());
+	}
+
+	@Override
+	public void onGuildMemberRemove(GuildMemberRemoveEvent event) {
+		DiscordRolePlaceholders.invalidate(event.getUser().getIdLong());
+	}
+
+	@Override
+	public void onGenericRoleUpdate(GenericRoleUpdateEvent event) {
+		// Names, colors, and positions affect every member with the role.
+		DiscordRolePlaceholders.invalidateAll();
+	}
+
+	@Override
+	public void onRoleDelete(RoleDeleteEvent event) {
+		DiscordRolePlaceholders.invalidateAll();
+	}
+}
@@ -23,19 +23,67 @@
 package com.rezzedup.discordsrv.staffchat.listeners;
 
 import com.rezzedup.discordsrv.staffchat.StaffChatPlugin;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.util.DiscordRolePlaceholders;
 import github.scarsz.discordsrv.api.ListenerPriority;
 import github.scarsz.discordsrv.api.Subscribe;
+import github.scarsz.discordsrv.api.events.ConfigReloadedEvent;
 import github.scarsz.discordsrv.api.events.DiscordGuildMessageReceivedEvent;
+import github.scarsz.discordsrv.api.events.DiscordReadyEvent;
+import github.scarsz.discordsrv.dependencies.jda.api.JDA;
 import github.scarsz.discordsrv.dependencies.jda.api.entities.TextChannel;
+import github.scarsz.discordsrv.util.DiscordUtil;
 import pl.tlinkowski.annotation.basic.NullOr;
 
 public class DiscordStaffChatListener {
     private final StaffChatPlugin plugin;
     
+    private final DiscordRoleCacheListener roleCacheListener = new DiscordRoleCacheListener();
+    private @NullOr JDA jda;
+    
     public DiscordStaffChatListener(StaffChatPlugin plugin) {
         this.plugin = plugin;
     }
     
+    /**
+     * Starts listening to role changes on DiscordSRV's current JDA instance,
+     * if it's connected yet.
+     */
+    public synchronized void attachToJda() {
+        @NullOr JDA current = DiscordUtil.getJda();
+        if (current == null || current == jda) {
+            return;
+        }
+        
+        detachFromJda();
+        current.addEventListener(roleCacheListener);
+        jda = current;
+        
+        plugin.debug(getClass()).log("Subscribe", () -> "Listening to Discord role changes");
+    }
+    
+    public synchronized void detachFromJda() {
+        if (jda != null) {
+            jda.removeEventListener(roleCacheListener);
+            jda = null;
+        }
+        DiscordRolePlaceholders.invalidateAll();
+    }
+    
+    @Subscribe(priority = ListenerPriority.MONITOR)
+    public void onDiscordReady(DiscordReadyEvent event) {
+        // Roles may have changed while disconnected.
+        DiscordRolePlaceholders.invalidateAll();
+        attachToJda();
+    }
+    
+    @Subscribe(priority = ListenerPriority.MONITOR)
+    public void onConfigReloaded(ConfigReloadedEvent event) {
+        // Role aliases and which roles are selected come from DiscordSRV's config.
+        DiscordRolePlaceholders.invalidateAll();
+    }
+    
+    // Runs on a JDA thread, messages are handed over to the server thread through the inbox.
     @Subscribe(priority = ListenerPriority.NORMAL)
     public void onDiscordMessage(DiscordGuildMessageReceivedEvent event) {
         if (event.getAuthor().isBot()) {
@@ -50,14 +98,29 @@ public class DiscordStaffChatListener {
                 "Discord staff chat message by " + event.getMember() + " in " + event.getChannel()
             );
             
-            plugin.submitMessageFromDiscord(event.getAuthor(), event.getMessage());
+            plugin.discordInbox().offer(plugin.channels().staff(), event.getAuthor(), event.getMessage());
         } 
         else if (teamChannel != null && event.getChannel().getId().equals(teamChannel.getId())) {
             plugin.debug(getClass()).log(event, () ->
                 "Discord team chat message by " + event.getMember() + " in " + event.getChannel()
             );
             
-            plugin.submitTeamMessageFromDiscord(event.getAuthor(), event.getMessage());
+            plugin.discordInbox().offer(plugin.channels().team(), event.getAuthor(), event.getMessage());
+        }
+        else {
+            for (ChatChannel channel : plugin.channels().extras()) {
+                @NullOr TextChannel textChannel = plugin.getDiscordChannelOrNull(channel);
+                if (textChannel == null || !event.getChannel().getId().equals(textChannel.getId())) {
+                    continue;
+                }
+                
+                plugin.debug(getClass()).log(event, () ->
+                    "Discord " + channel.name() + " chat message by " + event.getMember() + " in " + event.getChannel()
+                );
+                
+                plugin.discordInbox().offer(channel, event.getAuthor(), event.getMessage());
+                return;
+            }
         }
     }
 }
\ No newline at end of file
@@ -27,11 +27,13 @@ import java.util.Deque;
 
 import org.bukkit.entity.Player;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
 import com.rezzedup.discordsrv.staffchat.Permissions;
 import com.rezzedup.discordsrv.staffchat.StaffChatPlugin;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
 import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
 
 import community.leaf.eventful.bukkit.ListenerOrder;
@@ -44,6 +46,14 @@ public class JoinNotificationListener implements Listener {
 		this.plugin = plugin;
 	}
 	
+	@EventListener(ListenerOrder.MONITOR)
+	public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+		// Already off the server thread, and the player can't join until this returns.
+		if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+			plugin.data().preloadProfile(event.getUniqueId());
+		}
+	}
+	
 	@EventListener(ListenerOrder.EARLY)
 	public void onPlayerJoin(PlayerJoinEvent event) {
 		Player player = event.getPlayer();
@@ -88,6 +98,15 @@ public class JoinNotificationListener implements Listener {
 			}
 		}
 		
+		int replayLines = plugin.config().getOrDefault(StaffChatConfig.HISTORY_REPLAY_ON_JOIN);
+		if (replayLines > 0) {
+			for (ChatChannel channel : plugin.channels().all()) {
+				if (channel.allows(player) && plugin.data().getOrCreateProfile(player).receivesMessages(channel)) {
+					plugin.sync().delay(5L).ticks().run(() -> plugin.history().replay(player, channel, replayLines));
+				}
+			}
+		}
+		
 		if (reminders.isEmpty()) {
 			return;
 		}
@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.listeners;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.Listener;
+
+import com.rezzedup.discordsrv.staffchat.StaffChatPlugin;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.security.ChatInterceptionHelper;
+
+import community.leaf.eventful.bukkit.ListenerOrder;
+import community.leaf.eventful.bukkit.annotations.EventListener;
+import io.papermc.paper.event.player.AsyncChatEvent;
+
+/**
+ * Sends automatic chat in channels defined in the config. Staff chat and
+ * team chat are handled by their own toggle listeners.
+ */
+public class PlayerChannelChatListener implements Listener {
+	private final StaffChatPlugin plugin;
+
+	public PlayerChannelChatListener(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+	}
+
+	@EventListener(ListenerOrder.MONITOR)
+	public void onAutomaticChatMonitor(AsyncChatEvent event) {
+		ChatRouter.Decision decision = plugin.chatRouter().route(event);
+		if (decision.route() != ChatRouter.Route.CHANNEL_AUTO || decision.channel() == null) {
+			return;
+		}
+
+		ChatChannel channel = decision.channel();
+		Player player = event.getPlayer();
+		ChatInterceptionHelper.blockPublicChat(event, player);
+		String message = decision.text(event);
+
+		if (channel.allows(player)) {
+			plugin.debug(getClass()).log(event, () ->
+				"Player " + player.getName() + " has automatic " + channel.name() + " chat enabled"
+			);
+			plugin.sync().run(() -> plugin.submitChannelMessageFromPlayer(channel, player, message));
+		} else {
+			plugin.debug(getClass()).log(event, () ->
+				"Player " + player.getName() + " has automatic " + channel.name() + " chat enabled " +
+					"but they don't have permission to use the channel"
+			);
+			plugin.sync().run(() -> {
+				plugin.data().getProfile(player).ifPresent(profile -> profile.automaticChat(channel, false));
+				player.chat(message);
+			});
+		}
+	}
+}
@@ -10,7 +10,6 @@ import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
 import com.rezzedup.discordsrv.staffchat.events.AutoTeamChatToggleEvent;
 import com.rezzedup.discordsrv.staffchat.events.ReceivingTeamChatToggleEvent;
 import com.rezzedup.discordsrv.staffchat.security.ChatInterceptionHelper;
-import com.rezzedup.discordsrv.staffchat.util.ChatText;
 import community.leaf.eventful.bukkit.CancellationPolicy;
 import community.leaf.eventful.bukkit.ListenerOrder;
 import community.leaf.eventful.bukkit.annotations.CancelledEvents;
@@ -27,22 +26,16 @@ public class PlayerTeamChatToggleListener implements Listener {
 		this.plugin = plugin;
 	}
 
-	@EventListener(ListenerOrder.FIRST)
-	public void onAutomaticChatFirst(AsyncChatEvent event) {
-		if (plugin.data().isAutomaticTeamChatEnabled(event.getPlayer())) {
-			ChatInterceptionHelper.blockPublicChat(event, event.getPlayer());
-		}
-	}
-
 	@EventListener(ListenerOrder.MONITOR)
 	public void onAutomaticChatMonitor(AsyncChatEvent event) {
-		Player player = event.getPlayer();
-		if (!plugin.data().isAutomaticTeamChatEnabled(player)) {
+		ChatRouter.Decision decision = plugin.chatRouter().route(event);
+		if (decision.route() != ChatRouter.Route.TEAM_AUTO) {
 			return;
 		}
 
+		Player player = event.getPlayer();
 		ChatInterceptionHelper.blockPublicChat(event, player);
-		String message = ChatText.plain(event.message());
+		String message = decision.text(event);
 
 		if (Permissions.TEAM_ACCESS.allows(player)) {
 			plugin.debug(getClass()).log(event, () ->
@@ -138,4 +131,15 @@ public class PlayerTeamChatToggleListener implements Listener {
 			plugin.messages().notifyJoinTeamChat(player, broadcastToEveryone);
 		}
 	}
+
+	/**
+	 * Runs both receiving-toggle handlers in listener order. Used in place of
+	 * event dispatch when no other plugin listens to the event.
+	 */
+	public void handleReceivingToggle(ReceivingTeamChatToggleEvent event) {
+		onLeavingTeamChatIsDisabled(event);
+		if (!event.isCancelled()) {
+			onToggleReceivingMessages(event);
+		}
+	}
 }
@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.search;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * An immutable, on-disk part of the search index: every term of the
+ * messages it covers, each with the sorted list of message ids containing
+ * it. Only the term dictionary is kept in memory, posting lists are read
+ * from the file when a query needs them.
+ *
+ * <p>File layout: the posting lists (delta-encoded varints), then the
+ * dictionary, then a fixed-size trailer pointing at the dictionary.</p>
+ */
+final class IndexSegment implements AutoCloseable {
+	private static final int MAGIC = 0x53434958; // "SCIX"
+	private static final int TRAILER_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+	private static final long[] EMPTY = new long[0];
+
+	/**
+	 * Writes a segment, skipping empty posting lists.
+	 *
+	 * @param postings terms in ascending order, each with ascending ids
+	 * @param maxId the newest message id covered, even if it didn't end up in any list
+	 */
+	static void write(Path file, Iterator<Map.Entry<String, long[]>> postings, long maxId) throws IOException {
+		int count = 0;
+
+		ByteBuffer scratch = ByteBuffer.allocate(10);
+		ByteArrayOutputStream dictionaryBytes = new ByteArrayOutputStream();
+		DataOutputStream dictionary = new DataOutputStream(dictionaryBytes);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			while (postings.hasNext()) {
+				Map.Entry<String, long[]> entry = postings.next();
+				long[] ids = entry.getValue();
+				if (ids.length == 0) {
+					continue;
+				}
+
+				int offset = out.size();
+				long previous = 0;
+				for (long id : ids) {
+					scratch.clear();
+					putVarLong(scratch, id - previous);
+					out.write(scratch.array(), 0, scratch.position());
+					previous = id;
+				}
+				maxId = Math.max(maxId, ids[ids.length - 1]);
+
+				byte[] term = entry.getKey().getBytes(StandardCharsets.UTF_8);
+				dictionary.writeShort(term.length);
+				dictionary.write(term);
+				dictionary.writeInt(ids.length);
+				dictionary.writeInt(offset);
+				dictionary.writeInt(out.size() - offset);
+				count++;
+			}
+
+			int dictionaryOffset = out.size();
+			dictionaryBytes.writeTo(out);
+
+			out.writeLong(dictionaryOffset);
+			out.writeLong(maxId);
+			out.writeInt(count);
+			out.writeInt(MAGIC);
+		}
+	}
+
+	static IndexSegment open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size < TRAILER_BYTES) {
+				throw new IOException("Truncated index segment: " + file.getFileName());
+			}
+
+			ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+			long dictionaryOffset = trailer.getLong();
+			long maxId = trailer.getLong();
+			int count = trailer.getInt();
+			if (trailer.getInt() != MAGIC || dictionaryOffset < 0 || dictionaryOffset > size - TRAILER_BYTES) {
+				throw new IOException("Not an index segment: " + file.getFileName());
+			}
+
+			ByteBuffer dictionary = read(channel, dictionaryOffset, (int) (size - TRAILER_BYTES - dictionaryOffset));
+			String[] terms = new String[count];
+			int[] entries = new int[count * 3];
+
+			for (int i = 0; i < count; i++) {
+				byte[] term = new byte[dictionary.getShort() & 0xFFFF];
+				dictionary.get(term);
+				terms[i] = new String(term, StandardCharsets.UTF_8);
+				entries[i * 3] = dictionary.getInt();
+				entries[i * 3 + 1] = dictionary.getInt();
+				entries[i * 3 + 2] = dictionary.getInt();
+			}
+
+			return new IndexSegment(file, channel, size, maxId, terms, entries);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw (e instanceof IOException io) ? io : new IOException("Corrupt index segment: " + file.getFileName(), e);
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of index segment");
+			}
+		}
+		return buffer.flip();
+	}
+
+	private static void putVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long getVarLong(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	private final Path file;
+	private final FileChannel channel;
+	private final long size;
+	private final long maxId;
+	private final String[] terms;
+	private final int[] entries; // count, offset, length per term
+
+	private IndexSegment(Path file, FileChannel channel, long size, long maxId, String[] terms, int[] entries) {
+		this.file = file;
+		this.channel = channel;
+		this.size = size;
+		this.maxId = maxId;
+		this.terms = terms;
+		this.entries = entries;
+	}
+
+	Path file() {
+		return file;
+	}
+
+	long size() {
+		return size;
+	}
+
+	long maxId() {
+		return maxId;
+	}
+
+	String[] terms() {
+		return terms;
+	}
+
+	long[] postings(String term) throws IOException {
+		int index = Arrays.binarySearch(terms, term);
+		return (index < 0) ? EMPTY : postingsAt(index);
+	}
+
+	void prefixed(String prefix, Consumer<long[]> consumer) throws IOException {
+		int index = Arrays.binarySearch(terms, prefix);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		for (; index < terms.length && terms[index].startsWith(prefix); index++) {
+			consumer.accept(postingsAt(index));
+		}
+	}
+
+	private long[] postingsAt(int index) throws IOException {
+		int count = entries[index * 3];
+		ByteBuffer encoded = read(channel, entries[index * 3 + 1], entries[index * 3 + 2]);
+
+		long[] ids = new long[count];
+		long previous = 0;
+		for (int i = 0; i < count; i++) {
+			previous += getVarLong(encoded);
+			ids[i] = previous;
+		}
+		return ids;
+	}
+
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException ignored) {}
+	}
+}
@@ -0,0 +1,434 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.rezzedup.discordsrv.staffchat.audit.AuditRecord;
+
+/**
+ * An inverted index of audited messages: each term maps to the ids of the
+ * messages containing it, where a message's id is the timestamp it was
+ * audited at. New messages are indexed in memory, and once that holds too
+ * many postings it's written out as an immutable segment. Segments are
+ * merged in the background, smallest first, so the number of files (and
+ * the term dictionaries held in memory) stays small.
+ */
+public final class SearchIndex implements AutoCloseable {
+	private static final String PREFIX = "index-";
+	private static final String SEGMENT = ".seg";
+	private static final String TEMPORARY = ".tmp";
+	private static final long[] EMPTY = new long[0];
+
+	private static final class Postings {
+		private long[] ids = new long[4];
+		private int size;
+
+		void add(long id) {
+			// Usually in order, so only the last id can be a duplicate.
+			if (size > 0 && ids[size - 1] == id) {
+				return;
+			}
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+
+		long[] sorted() {
+			return distinct(Arrays.copyOf(ids, size));
+		}
+	}
+
+	private final Path directory;
+	private final int memoryLimit;
+	private final List<String> skipped = new ArrayList<>();
+	private final ReadWriteLock files = new ReentrantReadWriteLock();
+	private final AtomicBoolean merging = new AtomicBoolean();
+	private final AtomicLong generation = new AtomicLong();
+
+	// Guarded by this.
+	private TreeMap<String, Postings> memory = new TreeMap<>();
+	private int buffered;
+	private long memoryMaxId;
+
+	private volatile List<IndexSegment> segments;
+	private volatile boolean closed;
+
+	public SearchIndex(Path directory, int memoryLimit) throws IOException {
+		this.directory = directory;
+		this.memoryLimit = memoryLimit;
+
+		Files.createDirectories(directory);
+
+		List<IndexSegment> opened = new ArrayList<>();
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, PREFIX + "*")) {
+			for (Path path : paths) {
+				String name = path.getFileName().toString();
+				if (name.endsWith(TEMPORARY)) {
+					// Left behind by an interrupted flush or merge.
+					Files.deleteIfExists(path);
+					continue;
+				}
+				if (!name.endsWith(SEGMENT)) {
+					continue;
+				}
+				try {
+					long number = Long.parseLong(name, PREFIX.length(), name.length() - SEGMENT.length(), 10);
+					generation.accumulateAndGet(number, Math::max);
+					opened.add(IndexSegment.open(path));
+				} catch (IOException | NumberFormatException e) {
+					skipped.add(name + " (" + e.getMessage() + ")");
+				}
+			}
+		}
+		this.segments = List.copyOf(opened);
+	}
+
+	/**
+	 * Segments that couldn't be opened and are left out of searches.
+	 */
+	public List<String> skipped() {
+		return List.copyOf(skipped);
+	}
+
+	public int segmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * The newest message id that has been indexed, to resume indexing from.
+	 */
+	public synchronized long watermark() {
+		long max = memoryMaxId;
+		for (IndexSegment segment : segments) {
+			max = Math.max(max, segment.maxId());
+		}
+		return max;
+	}
+
+	/**
+	 * Indexes a message. Adding a message that's already indexed is harmless.
+	 *
+	 * @return {@code true} if this wrote a new segment
+	 */
+	public synchronized boolean add(AuditRecord record) throws IOException {
+		if (closed) {
+			return false;
+		}
+
+		long id = record.timestamp();
+		for (String term : Terms.of(record)) {
+			memory.computeIfAbsent(term, k -> new Postings()).add(id);
+			buffered++;
+		}
+		memoryMaxId = Math.max(memoryMaxId, id);
+
+		if (buffered < memoryLimit) {
+			return false;
+		}
+
+		flush();
+		return true;
+	}
+
+	/**
+	 * Writes everything indexed in memory to a new segment.
+	 */
+	public synchronized void flush() throws IOException {
+		if (memory.isEmpty()) {
+			return;
+		}
+
+		Iterator<Map.Entry<String, long[]>> postings = memory.entrySet().stream()
+			.map(entry -> Map.entry(entry.getKey(), entry.getValue().sorted()))
+			.iterator();
+
+		IndexSegment segment = publish(postings, memoryMaxId);
+		segments = concat(segments, segment);
+
+		memory = new TreeMap<>();
+		buffered = 0;
+	}
+
+	private IndexSegment publish(Iterator<Map.Entry<String, long[]>> postings, long maxId) throws IOException {
+		String name = String.format("%s%012d", PREFIX, generation.incrementAndGet());
+		Path temporary = directory.resolve(name + TEMPORARY);
+		Path segment = directory.resolve(name + SEGMENT);
+
+		try {
+			IndexSegment.write(temporary, postings, maxId);
+			Files.move(temporary, segment, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | UncheckedIOException e) {
+			Files.deleteIfExists(temporary);
+			throw (e instanceof UncheckedIOException unchecked) ? unchecked.getCause() : (IOException) e;
+		}
+		return IndexSegment.open(segment);
+	}
+
+	private static List<IndexSegment> concat(List<IndexSegment> segments, IndexSegment segment) {
+		List<IndexSegment> updated = new ArrayList<>(segments);
+		updated.add(segment);
+		return List.copyOf(updated);
+	}
+
+	public boolean needsMerge(int factor) {
+		return factor >= 2 && segments.size() >= factor;
+	}
+
+	/**
+	 * Merges the {@code factor} smallest segments into one, dropping ids
+	 * older than {@code minId}. Does nothing if a merge is already running.
+	 */
+	public void merge(int factor, long minId) throws IOException {
+		if (factor < 2 || !merging.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			files.readLock().lock();
+			List<IndexSegment> sources;
+			IndexSegment merged;
+			try {
+				if (closed) {
+					return;
+				}
+
+				sources = segments.stream()
+					.sorted(Comparator.comparingLong(IndexSegment::size))
+					.limit(factor)
+					.toList();
+
+				if (sources.size() < 2) {
+					return;
+				}
+
+				TreeSet<String> terms = new TreeSet<>();
+				long maxId = 0;
+				for (IndexSegment source : sources) {
+					terms.addAll(Arrays.asList(source.terms()));
+					maxId = Math.max(maxId, source.maxId());
+				}
+
+				Iterator<Map.Entry<String, long[]>> postings = terms.stream()
+					.map(term -> Map.entry(term, mergedPostings(sources, term, minId)))
+					.iterator();
+
+				// Written without holding up indexing, only the swap is synchronized.
+				merged = publish(postings, maxId);
+				synchronized (this) {
+					List<IndexSegment> updated = new ArrayList<>(segments);
+					updated.removeAll(sources);
+					updated.add(merged);
+					segments = List.copyOf(updated);
+				}
+			} finally {
+				files.readLock().unlock();
+			}
+
+			// Wait for searches still reading the old segments.
+			files.writeLock().lock();
+			try {
+				for (IndexSegment source : sources) {
+					source.close();
+					Files.deleteIfExists(source.file());
+				}
+			} finally {
+				files.writeLock().unlock();
+			}
+		} finally {
+			merging.set(false);
+		}
+	}
+
+	private static long[] mergedPostings(List<IndexSegment> sources, String term, long minId) {
+		try {
+			List<long[]> lists = new ArrayList<>();
+			for (IndexSegment source : sources) {
+				lists.add(source.postings(term));
+			}
+			return union(lists, minId);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Finds the ids of messages that may match the query, oldest first.
+	 * Filtering by time is exact, but everything else has to be checked
+	 * again against the messages themselves: see {@link SearchQuery#matches}.
+	 */
+	public long[] search(SearchQuery query) throws IOException {
+		List<long[]> clauses = new ArrayList<>();
+
+		files.readLock().lock();
+		try {
+			if (closed) {
+				return EMPTY;
+			}
+
+			List<IndexSegment> current = segments;
+
+			for (String word : query.words()) {
+				clauses.add(exact(current, word, query.since()));
+			}
+			if (query.author() != null) {
+				clauses.add(exact(current, Terms.author(query.author()), query.since()));
+			}
+			if (query.channel() != null) {
+				clauses.add(exact(current, Terms.channel(query.channel()), query.since()));
+			}
+			for (String prefix : query.prefixes()) {
+				clauses.add(prefixed(current, prefix, query.since()));
+			}
+		} finally {
+			files.readLock().unlock();
+		}
+
+		if (clauses.isEmpty()) {
+			return EMPTY;
+		}
+
+		// Intersect the shortest lists first.
+		clauses.sort(Comparator.comparingInt(ids -> ids.length));
+		long[] result = clauses.get(0);
+		for (int i = 1; i < clauses.size() && result.length > 0; i++) {
+			result = intersect(result, clauses.get(i));
+		}
+		return result;
+	}
+
+	private long[] exact(List<IndexSegment> current, String term, long minId) throws IOException {
+		List<long[]> lists = new ArrayList<>();
+		for (IndexSegment segment : current) {
+			lists.add(segment.postings(term));
+		}
+		synchronized (this) {
+			Postings postings = memory.get(term);
+			if (postings != null) {
+				lists.add(postings.sorted());
+			}
+		}
+		return union(lists, minId);
+	}
+
+	private long[] prefixed(List<IndexSegment> current, String prefix, long minId) throws IOException {
+		List<long[]> lists = new ArrayList<>();
+		for (IndexSegment segment : current) {
+			segment.prefixed(prefix, lists::add);
+		}
+		synchronized (this) {
+			for (Postings postings : memory.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+				lists.add(postings.sorted());
+			}
+		}
+		return union(lists, minId);
+	}
+
+	private static long[] union(List<long[]> lists, long minId) {
+		if (lists.size() == 1 && minId <= 0) {
+			return lists.get(0);
+		}
+
+		long[] all = new long[lists.stream().mapToInt(ids -> ids.length).sum()];
+		int size = 0;
+		for (long[] ids : lists) {
+			for (long id : ids) {
+				if (id >= minId) {
+					all[size++] = id;
+				}
+			}
+		}
+		return distinct(Arrays.copyOf(all, size));
+	}
+
+	private static long[] distinct(long[] ids) {
+		Arrays.sort(ids);
+		int size = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (size == 0 || ids[size - 1] != ids[i]) {
+				ids[size++] = ids[i];
+			}
+		}
+		return (size == ids.length) ? ids : Arrays.copyOf(ids, size);
+	}
+
+	private static long[] intersect(long[] left, long[] right) {
+		long[] result = new long[Math.min(left.length, right.length)];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < left.length && j < right.length) {
+			if (left[i] < right[j]) {
+				i++;
+			} else if (left[i] > right[j]) {
+				j++;
+			} else {
+				result[size++] = left[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Writes what's indexed in memory to disk and closes every segment.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			synchronized (this) {
+				if (!closed) {
+					flush();
+				}
+				closed = true;
+			}
+		} finally {
+			closed = true;
+			files.writeLock().lock();
+			try {
+				segments.forEach(IndexSegment::close);
+			} finally {
+				files.writeLock().unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.search;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.rezzedup.discordsrv.staffchat.audit.AuditRecord;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * A parsed search: words every message must contain (a trailing {@code *}
+ * matches any word starting with it), plus optional author, channel and
+ * age filters.
+ *
+ * <p>Syntax: {@code <words...> [author:<name>] [channel:<name>] [page:<n>] [since]}
+ * where {@code since} is an age like {@code 30m}, {@code 12h} or {@code 7d}.</p>
+ */
+public record SearchQuery(
+	List<String> words,
+	List<String> prefixes,
+	@NullOr String author,
+	@NullOr String channel,
+	long since,
+	int page
+) {
+	public static final int MIN_PREFIX_LENGTH = 2;
+
+	private static final Pattern AGE = Pattern.compile("(?i)(\\d{1,6})([smhdw])");
+
+	/**
+	 * @throws IllegalArgumentException with a message fit for the player
+	 */
+	public static SearchQuery parse(String input, long now) {
+		List<String> words = new ArrayList<>();
+		List<String> prefixes = new ArrayList<>();
+		@NullOr String author = null;
+		@NullOr String channel = null;
+		long since = 0;
+		int page = 1;
+
+		String[] parts = input.trim().split("\\s+");
+		for (int i = 0; i < parts.length; i++) {
+			String part = parts[i];
+			if (part.isEmpty()) {
+				continue;
+			}
+
+			String lower = part.toLowerCase(Locale.ROOT);
+			Matcher age = AGE.matcher(part);
+
+			if (lower.startsWith("author:")) {
+				author = value(part, "author:");
+			} else if (lower.startsWith("channel:")) {
+				channel = value(part, "channel:");
+			} else if (lower.startsWith("page:")) {
+				try {
+					page = Math.max(1, Integer.parseInt(value(part, "page:")));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Invalid page: " + part);
+				}
+			} else if (i == parts.length - 1 && age.matches()) {
+				since = now - age(Long.parseLong(age.group(1)), age.group(2).toLowerCase(Locale.ROOT));
+			} else if (part.endsWith("*")) {
+				List<String> tokens = Terms.tokens(part.substring(0, part.length() - 1));
+				if (tokens.isEmpty()) {
+					continue;
+				}
+				// Only the last word of something like "re-sta*" is a prefix.
+				words.addAll(tokens.subList(0, tokens.size() - 1));
+				String prefix = tokens.get(tokens.size() - 1);
+				if (prefix.length() < MIN_PREFIX_LENGTH) {
+					throw new IllegalArgumentException(
+						"Prefixes need at least " + MIN_PREFIX_LENGTH + " characters: " + part
+					);
+				}
+				prefixes.add(prefix);
+			} else {
+				words.addAll(Terms.tokens(part));
+			}
+		}
+
+		if (words.isEmpty() && prefixes.isEmpty() && author == null && channel == null) {
+			throw new IllegalArgumentException("Nothing to search for.");
+		}
+
+		return new SearchQuery(List.copyOf(words), List.copyOf(prefixes), author, channel, since, page);
+	}
+
+	private static String value(String part, String key) {
+		String value = part.substring(key.length());
+		if (value.isEmpty()) {
+			throw new IllegalArgumentException("Missing value for " + key);
+		}
+		return value;
+	}
+
+	private static long age(long amount, String unit) {
+		Duration duration = switch (unit) {
+			case "s" -> Duration.ofSeconds(amount);
+			case "m" -> Duration.ofMinutes(amount);
+			case "h" -> Duration.ofHours(amount);
+			case "d" -> Duration.ofDays(amount);
+			default -> Duration.ofDays(amount * 7);
+		};
+		return duration.toMillis();
+	}
+
+	/**
+	 * Checks a message against the whole query. The index only narrows down
+	 * the candidates: message ids aren't unique within a millisecond, so
+	 * every candidate read back from the audit log is checked again.
+	 */
+	public boolean matches(AuditRecord record) {
+		if (record.timestamp() < since) {
+			return false;
+		}
+		if (author != null && !author.equalsIgnoreCase(record.authorName())) {
+			return false;
+		}
+		if (channel != null && !channel.equalsIgnoreCase(record.channel())) {
+			return false;
+		}
+
+		Set<String> tokens = Set.copyOf(Terms.tokens(record.text()));
+		if (!tokens.containsAll(words)) {
+			return false;
+		}
+
+		for (String prefix : prefixes) {
+			if (tokens.stream().noneMatch(token -> token.startsWith(prefix))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
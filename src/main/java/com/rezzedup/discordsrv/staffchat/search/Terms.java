@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.rezzedup.discordsrv.staffchat.audit.AuditRecord;
+
+/**
+ * Splits messages into the terms they're indexed by: lowercase runs of
+ * letters and digits. Author and channel names are indexed as single terms
+ * with a prefix no word can have, so filters use the same posting lists.
+ */
+final class Terms {
+	private Terms() {
+		throw new UnsupportedOperationException();
+	}
+
+	private static final int MAX_LENGTH = 32;
+
+	static List<String> tokens(String text) {
+		List<String> tokens = new ArrayList<>();
+		int start = -1;
+
+		for (int i = 0; i <= text.length(); i++) {
+			boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (word && start < 0) {
+				start = i;
+			} else if (!word && start >= 0) {
+				tokens.add(text.substring(start, Math.min(i, start + MAX_LENGTH)).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	static String author(String name) {
+		return "author:" + name.toLowerCase(Locale.ROOT);
+	}
+
+	static String channel(String name) {
+		return "channel:" + name.toLowerCase(Locale.ROOT);
+	}
+
+	static Set<String> of(AuditRecord record) {
+		Set<String> terms = new LinkedHashSet<>(tokens(record.text()));
+		terms.add(author(record.authorName()));
+		terms.add(channel(record.channel()));
+		return terms;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.security;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bukkit.entity.Player;
+
+import com.rezzedup.discordsrv.staffchat.StaffChatPlugin;
+import com.rezzedup.discordsrv.staffchat.channels.ChannelRegistry;
+import com.rezzedup.discordsrv.staffchat.channels.ChatChannel;
+import com.rezzedup.discordsrv.staffchat.config.StaffChatConfig;
+import com.rezzedup.discordsrv.staffchat.util.TokenBucketMap;
+
+import github.scarsz.discordsrv.dependencies.jda.api.entities.User;
+
+/**
+ * Per-sender and channel-wide token buckets for every chat channel.
+ */
+public final class FloodControl {
+	private static final int EXPECTED_SENDERS = 1024;
+	private static final long CONSOLE_KEY = 2L;
+
+	// Keep player, discord, and console buckets apart even if their ids collide.
+	private static final long DISCORD_SALT = 0x5DEECE66DL;
+
+	// Spreads channel ids across the key space so a sender's buckets in different channels don't collide.
+	private static final long CHANNEL_MIX = 0x9E3779B97F4A7C15L;
+
+	private static final long CONSOLE_WARNING_INTERVAL_MILLIS = 60_000;
+
+	public enum Origin {
+		PLAYER,
+		DISCORD,
+		CONSOLE
+	}
+
+	private record Limit(int burst, double refillPerSecond) {}
+
+	private final StaffChatPlugin plugin;
+
+	private final TokenBucketMap senders = new TokenBucketMap(EXPECTED_SENDERS);
+	private final TokenBucketMap channels = new TokenBucketMap(ChannelRegistry.MAX_CHANNELS);
+	private final AtomicInteger rejectedConsole = new AtomicInteger();
+	private final AtomicLong nextConsoleWarning = new AtomicLong();
+
+	private volatile boolean enabled;
+	private volatile Limit players = new Limit(5, 0.5);
+	private volatile Limit discord = new Limit(5, 0.5);
+	private volatile Limit console = new Limit(20, 5.0);
+	private volatile Limit channelCeiling = new Limit(30, 5.0);
+
+	public FloodControl(StaffChatPlugin plugin) {
+		this.plugin = plugin;
+		reload();
+	}
+
+	public void reload() {
+		StaffChatConfig config = plugin.config();
+
+		enabled = config.getOrDefault(StaffChatConfig.FLOOD_CONTROL_ENABLED);
+		players = new Limit(
+			config.getOrDefault(StaffChatConfig.FLOOD_CONTROL_PLAYER_BURST),
+			config.getOrDefault(StaffChatConfig.FLOOD_CONTROL_PLAYER_REFILL)
+		);
+		discord = new Limit(
+			config.getOrDefault(StaffChatConfig.FLOOD_CONTROL_DISCORD_BURST),
+			config.getOrDefault(StaffChatConfig.FLOOD_CONTROL_DISCORD_REFILL)
+		);
+		console = new Limit(
+			config.getOrDefault(StaffChatConfig.FLOOD_CONTROL_CONSOLE_BURST),
+			config.getOrDefault(StaffChatConfig.FLOOD_CONTROL_CONSOLE_REFILL)
+		);
+		channelCeiling = new Limit(
+			config.getOrDefault(StaffChatConfig.FLOOD_CONTROL_CHANNEL_BURST),
+			config.getOrDefault(StaffChatConfig.FLOOD_CONTROL_CHANNEL_REFILL)
+		);
+
+		senders.clear();
+		channels.clear();
+	}
+
+	public boolean tryAcquire(ChatChannel channel, Player player) {
+		UUID uuid = player.getUniqueId();
+		return tryAcquire(channel, Origin.PLAYER, uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits());
+	}
+
+	public boolean tryAcquire(ChatChannel channel, User user) {
+		return tryAcquire(channel, Origin.DISCORD, user.getIdLong() ^ DISCORD_SALT);
+	}
+
+	public boolean tryAcquireConsole(ChatChannel channel) {
+		return tryAcquire(channel, Origin.CONSOLE, CONSOLE_KEY);
+	}
+
+	/**
+	 * Reports a rejected console message. Something spamming through the
+	 * console would flood the server log too, so rejections are summed up
+	 * in at most one warning per minute, and their text only goes to debug.
+	 */
+	public void reportConsoleRejected(ChatChannel channel, String message) {
+		plugin.debug(getClass()).log("Flood Control", () ->
+			"Rejected console message in " + channel.name() + ": " + message
+		);
+
+		rejectedConsole.incrementAndGet();
+
+		long now = System.currentTimeMillis();
+		long next = nextConsoleWarning.get();
+		if (now >= next && nextConsoleWarning.compareAndSet(next, now + CONSOLE_WARNING_INTERVAL_MILLIS)) {
+			int rejected = rejectedConsole.getAndSet(0);
+			plugin.getLogger().warning(
+				"Rate limited " + rejected + " console chat message(s) since the last warning (see flood-control.console)"
+			);
+		}
+	}
+
+	private boolean tryAcquire(ChatChannel channel, Origin origin, long senderKey) {
+		if (!enabled) {
+			return true;
+		}
+
+		long now = System.currentTimeMillis();
+		if (senders.size() > senders.capacity() / 2) {
+			// Buckets of long-gone senders are full anyway, so starting over is harmless.
+			plugin.debug(getClass()).log("Flood Control", () -> "Sender buckets are crowded, clearing them");
+			senders.clear();
+		}
+
+		Limit limit = switch (origin) {
+			case PLAYER -> players;
+			case DISCORD -> discord;
+			case CONSOLE -> console;
+		};
+
+		if (!senders.tryAcquire(senderKey ^ ((channel.id() + 1) * CHANNEL_MIX), limit.burst(), limit.refillPerSecond(), now)) {
+			plugin.debug(getClass()).log("Flood Control", () ->
+				"Rejected " + origin + " message in " + channel.name() + ": sender is over the limit"
+			);
+			return false;
+		}
+
+		Limit ceiling = channelCeiling;
+		if (!channels.tryAcquire(channel.id() + 1, ceiling.burst(), ceiling.refillPerSecond(), now)) {
+			plugin.debug(getClass()).log("Flood Control", () ->
+				"Rejected " + origin + " message in " + channel.name() + ": channel is over the limit"
+			);
+			return false;
+		}
+
+		return true;
+	}
+}
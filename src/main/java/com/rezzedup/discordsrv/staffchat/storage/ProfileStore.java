@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.storage;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Where profiles are persisted. Loaded profiles are cached by the caller,
+ * so stores are only read when a profile isn't loaded yet or was changed
+ * elsewhere.
+ */
+public interface ProfileStore {
+	/**
+	 * Loads a profile without blocking, since it may be called on the server
+	 * thread. Stores that would block on a read load what they've preloaded,
+	 * or nothing, and report the profile from {@link #pollChanges()} once
+	 * they've read it.
+	 */
+	Optional<StoredProfile> load(UUID uuid);
+	
+	/**
+	 * Reads a profile ahead of time, e.g. while the player is logging in, so
+	 * that loading it doesn't have to. May block; never called on the server
+	 * thread.
+	 */
+	default void preload(UUID uuid) {}
+	
+	/**
+	 * Drops whatever was preloaded for a profile that's no longer loaded.
+	 * Pending writes are kept.
+	 */
+	default void forget(UUID uuid) {}
+	
+	/**
+	 * Stores the profile. Stores may batch writes until the next flush,
+	 * but loads always see the latest saved state.
+	 */
+	void save(StoredProfile profile);
+	
+	void delete(UUID uuid);
+	
+	void flush();
+	
+	/**
+	 * Profiles changed by other servers since the last call (or read for the
+	 * first time), whose cached copies are now stale. Stores that aren't
+	 * shared return nothing. May block.
+	 */
+	Set<UUID> pollChanges();
+	
+	void close();
+}
@@ -0,0 +1,464 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.storage;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Stores profiles in an SQL database (e.g. an SQLite or H2 file) that can be
+ * shared by several servers. Writes are queued and written in one batch per
+ * flush. Every batch takes the next number from a sequence kept in the
+ * database, and every row records the number and the server that wrote it,
+ * which lets other servers notice changes without relying on their clocks.
+ *
+ * <p>Only {@link #preload(UUID)}, {@link #flush()}, {@link #pollChanges()}
+ * and {@link #close()} use the database, so they're the only calls that
+ * block. Loads are answered from queued writes and profiles read ahead of
+ * time; a profile that wasn't read yet loads as empty, and is read and
+ * reported as changed by the next poll. Until then, saving it is held back:
+ * the saved profile started out from defaults, so once the stored row is
+ * read, only what was changed from the defaults is written over it.</p>
+ *
+ * <p>Deleted profiles are written as rows with default settings rather than
+ * removed, so that the deletion is noticed like any other change.</p>
+ */
+public final class SqlProfileStore implements ProfileStore {
+	private static final String TABLE = "staffchat_profiles";
+	private static final String SEQUENCE_TABLE = "staffchat_sequence";
+	
+	private static final String COLUMNS =
+		"uuid, auto, left_at, muted_sounds, team_auto, team_left, team_muted_sounds, " +
+		"channels_auto, channels_left, channels_muted, updated_at, updated_by, updated_seq";
+	
+	private final Connection connection;
+	private final String serverName;
+	private final Logger logger;
+	
+	// Held while using the connection, which the other locks are never taken around.
+	private final Object database = new Object();
+	
+	// Profiles as they were last read from or written to the database.
+	private final Map<UUID, Optional<StoredProfile>> loaded = new ConcurrentHashMap<>();
+	
+	// Pending writes in order; an empty value deletes the profile. Guarded by this.
+	private final Map<UUID, Optional<StoredProfile>> pending = new LinkedHashMap<>();
+	
+	// Profiles loaded before they were read from the database. Guarded by this.
+	private final Set<UUID> unread = new HashSet<>();
+	
+	// The newest change that has been polled. Guarded by the database lock.
+	private long watermark;
+	
+	public SqlProfileStore(String url, String serverName, Logger logger) throws SQLException {
+		this.connection = DriverManager.getConnection(url);
+		this.serverName = serverName;
+		this.logger = logger;
+		
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate(
+				"CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+					"uuid VARCHAR(36) NOT NULL PRIMARY KEY, " +
+					"auto BIGINT, " +
+					"left_at BIGINT, " +
+					"muted_sounds BOOLEAN NOT NULL, " +
+					"team_auto BIGINT, " +
+					"team_left BIGINT, " +
+					"team_muted_sounds BOOLEAN NOT NULL, " +
+					"channels_auto VARCHAR(2048) NOT NULL, " +
+					"channels_left VARCHAR(2048) NOT NULL, " +
+					"channels_muted VARCHAR(2048) NOT NULL, " +
+					"updated_at BIGINT NOT NULL, " +
+					"updated_by VARCHAR(64) NOT NULL, " +
+					"updated_seq BIGINT NOT NULL DEFAULT 0" +
+				")"
+			);
+			statement.executeUpdate(
+				"CREATE TABLE IF NOT EXISTS " + SEQUENCE_TABLE + " (" +
+					"id INT NOT NULL PRIMARY KEY, " +
+					"current_value BIGINT NOT NULL" +
+				")"
+			);
+		}
+		
+		addSequenceColumn();
+		this.watermark = createSequence();
+	}
+	
+	// Tables created by older versions have no sequence numbers yet.
+	private void addSequenceColumn() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.executeQuery("SELECT updated_seq FROM " + TABLE + " WHERE 1 = 0").close();
+		} catch (SQLException missing) {
+			try (Statement statement = connection.createStatement()) {
+				statement.executeUpdate("ALTER TABLE " + TABLE + " ADD COLUMN updated_seq BIGINT NOT NULL DEFAULT 0");
+			}
+		}
+	}
+	
+	/**
+	 * Creates the sequence if no server has yet.
+	 *
+	 * @return its current value
+	 */
+	private long createSequence() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			try (ResultSet result = statement.executeQuery("SELECT current_value FROM " + SEQUENCE_TABLE + " WHERE id = 1")) {
+				if (result.next()) {
+					return result.getLong(1);
+				}
+			}
+			try {
+				statement.executeUpdate("INSERT INTO " + SEQUENCE_TABLE + " (id, current_value) VALUES (1, 0)");
+			} catch (SQLException e) {
+				// Another server created it first.
+			}
+			return 0;
+		}
+	}
+	
+	/**
+	 * Takes the next sequence number. The row stays locked until the
+	 * transaction ends, so other servers' writes commit in sequence order
+	 * and a poll never skips over a number that's still being written.
+	 */
+	private long nextSequence() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate("UPDATE " + SEQUENCE_TABLE + " SET current_value = current_value + 1 WHERE id = 1");
+			try (ResultSet result = statement.executeQuery("SELECT current_value FROM " + SEQUENCE_TABLE + " WHERE id = 1")) {
+				if (!result.next()) {
+					throw new SQLException("Missing row in " + SEQUENCE_TABLE);
+				}
+				return result.getLong(1);
+			}
+		}
+	}
+	
+	public boolean isEmpty() {
+		synchronized (this) {
+			if (!pending.isEmpty()) {
+				return false;
+			}
+		}
+		synchronized (database) {
+			try (Statement statement = connection.createStatement();
+				ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + TABLE)) {
+				return result.next() && result.getLong(1) == 0;
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+	}
+	
+	@Override
+	public synchronized Optional<StoredProfile> load(UUID uuid) {
+		@NullOr Optional<StoredProfile> queued = pending.get(uuid);
+		if (queued != null) {
+			return queued;
+		}
+		
+		@NullOr Optional<StoredProfile> stored = loaded.get(uuid);
+		if (stored != null) {
+			return stored;
+		}
+		
+		// Read by the next poll instead of blocking here.
+		unread.add(uuid);
+		return Optional.empty();
+	}
+	
+	@Override
+	public void preload(UUID uuid) {
+		synchronized (database) {
+			try {
+				loaded.put(uuid, read(uuid));
+			} catch (SQLException | IllegalArgumentException e) {
+				logger.warning("Could not load profile " + uuid + ": " + e);
+			}
+		}
+	}
+	
+	@Override
+	public void forget(UUID uuid) {
+		loaded.remove(uuid);
+	}
+	
+	private Optional<StoredProfile> read(UUID uuid) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("SELECT " + COLUMNS + " FROM " + TABLE + " WHERE uuid = ?")) {
+			statement.setString(1, uuid.toString());
+			try (ResultSet result = statement.executeQuery()) {
+				return (result.next()) ? Optional.of(read(uuid, result)) : Optional.empty();
+			}
+		}
+	}
+	
+	private static StoredProfile read(UUID uuid, ResultSet result) throws SQLException {
+		return new StoredProfile(
+			uuid,
+			instant(result, "auto"),
+			instant(result, "left_at"),
+			result.getBoolean("muted_sounds"),
+			instant(result, "team_auto"),
+			instant(result, "team_left"),
+			result.getBoolean("team_muted_sounds"),
+			names(result.getString("channels_auto")),
+			names(result.getString("channels_left")),
+			names(result.getString("channels_muted"))
+		);
+	}
+	
+	private static @NullOr Instant instant(ResultSet result, String column) throws SQLException {
+		long millis = result.getLong(column);
+		return (result.wasNull()) ? null : Instant.ofEpochMilli(millis);
+	}
+	
+	private static List<String> names(@NullOr String joined) {
+		return (joined == null || joined.isEmpty()) ? List.of() : Arrays.asList(joined.split(","));
+	}
+	
+	@Override
+	public synchronized void save(StoredProfile profile) {
+		pending.put(profile.uuid(), Optional.of(profile));
+	}
+	
+	@Override
+	public synchronized void delete(UUID uuid) {
+		pending.put(uuid, Optional.empty());
+	}
+	
+	@Override
+	public void flush() {
+		synchronized (database) {
+			Map<UUID, Optional<StoredProfile>> batch;
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = new LinkedHashMap<>(pending);
+				// Not read yet: writing these would replace the stored rows with defaults.
+				batch.entrySet().removeIf(entry -> entry.getValue().isPresent() && unread.contains(entry.getKey()));
+			}
+			
+			if (batch.isEmpty()) {
+				return;
+			}
+			
+			try {
+				write(batch);
+			} catch (SQLException e) {
+				// Keep the pending writes for the next flush.
+				logger.warning("Could not write " + batch.size() + " profile(s) to the database: " + e);
+				return;
+			}
+			
+			synchronized (this) {
+				for (Map.Entry<UUID, Optional<StoredProfile>> entry : batch.entrySet()) {
+					// Saved again while this was writing: written by the next flush.
+					pending.remove(entry.getKey(), entry.getValue());
+					loaded.computeIfPresent(entry.getKey(), (uuid, previous) -> entry.getValue());
+				}
+			}
+		}
+	}
+	
+	private void write(Map<UUID, Optional<StoredProfile>> batch) throws SQLException {
+		long now = System.currentTimeMillis();
+		
+		try {
+			connection.setAutoCommit(false);
+			long sequence = nextSequence();
+			
+			try (PreparedStatement delete = connection.prepareStatement("DELETE FROM " + TABLE + " WHERE uuid = ?");
+				PreparedStatement insert = connection.prepareStatement(
+					"INSERT INTO " + TABLE + " (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+				)) {
+				for (Map.Entry<UUID, Optional<StoredProfile>> entry : batch.entrySet()) {
+					StoredProfile profile = entry.getValue().orElseGet(() -> StoredProfile.defaults(entry.getKey()));
+					
+					delete.setString(1, profile.uuid().toString());
+					delete.addBatch();
+					
+					insert.setString(1, profile.uuid().toString());
+					setInstant(insert, 2, profile.auto());
+					setInstant(insert, 3, profile.left());
+					insert.setBoolean(4, profile.mutedSounds());
+					setInstant(insert, 5, profile.teamAuto());
+					setInstant(insert, 6, profile.teamLeft());
+					insert.setBoolean(7, profile.teamMutedSounds());
+					insert.setString(8, String.join(",", profile.autoChannels()));
+					insert.setString(9, String.join(",", profile.leftChannels()));
+					insert.setString(10, String.join(",", profile.mutedChannels()));
+					insert.setLong(11, now);
+					insert.setString(12, serverName);
+					insert.setLong(13, sequence);
+					insert.addBatch();
+				}
+				
+				delete.executeBatch();
+				insert.executeBatch();
+			}
+			
+			connection.commit();
+		} catch (SQLException e) {
+			try { connection.rollback(); } catch (SQLException ignored) {}
+			throw e;
+		} finally {
+			try { connection.setAutoCommit(true); } catch (SQLException ignored) {}
+		}
+	}
+	
+	private static void setInstant(PreparedStatement statement, int index, @NullOr Instant instant) throws SQLException {
+		if (instant == null) {
+			statement.setNull(index, Types.BIGINT);
+		} else {
+			statement.setLong(index, instant.toEpochMilli());
+		}
+	}
+	
+	@Override
+	public Set<UUID> pollChanges() {
+		Set<UUID> changed = new HashSet<>();
+		Set<UUID> merged = new HashSet<>();
+		
+		synchronized (database) {
+			Set<UUID> reading;
+			synchronized (this) {
+				reading = Set.copyOf(unread);
+				unread.clear();
+			}
+			
+			for (UUID uuid : reading) {
+				preload(uuid);
+				@NullOr Optional<StoredProfile> stored = loaded.get(uuid);
+				if (stored == null) {
+					// Couldn't be read, try again next time.
+					synchronized (this) {
+						unread.add(uuid);
+					}
+				} else if (stored.isPresent()) {
+					changed.add(uuid);
+					synchronized (this) {
+						pending.computeIfPresent(uuid, (k, saved) -> {
+							if (saved.isEmpty()) {
+								return saved;
+							}
+							merged.add(k);
+							return Optional.of(merge(stored.get(), saved.get()));
+						});
+					}
+				}
+			}
+			
+			try (PreparedStatement statement = connection.prepareStatement(
+				"SELECT " + COLUMNS + " FROM " + TABLE + " WHERE updated_seq > ? AND updated_by <> ? ORDER BY updated_seq"
+			)) {
+				statement.setLong(1, watermark);
+				statement.setString(2, serverName);
+				
+				try (ResultSet result = statement.executeQuery()) {
+					while (result.next()) {
+						UUID uuid = UUID.fromString(result.getString("uuid"));
+						Optional<StoredProfile> stored = Optional.of(read(uuid, result));
+						watermark = Math.max(watermark, result.getLong("updated_seq"));
+						
+						if (loaded.computeIfPresent(uuid, (k, previous) -> stored) != null) {
+							changed.add(uuid);
+						}
+					}
+				}
+			} catch (SQLException | IllegalArgumentException e) {
+				logger.warning("Could not check the database for profile changes: " + e);
+			}
+		}
+		
+		synchronized (this) {
+			// Saved here since: about to be written over whatever changed elsewhere.
+			changed.removeAll(pending.keySet());
+		}
+		// Their profiles were built from defaults, so they're stale even though they have pending writes.
+		changed.addAll(merged);
+		return changed;
+	}
+	
+	/**
+	 * Applies a profile saved before its stored row was read, and thus based
+	 * on defaults, onto the stored row: whatever the save didn't change from
+	 * the defaults keeps its stored value.
+	 */
+	static StoredProfile merge(StoredProfile stored, StoredProfile saved) {
+		StoredProfile defaults = StoredProfile.defaults(stored.uuid());
+		return new StoredProfile(
+			stored.uuid(),
+			changed(defaults.auto(), saved.auto(), stored.auto()),
+			changed(defaults.left(), saved.left(), stored.left()),
+			changed(defaults.mutedSounds(), saved.mutedSounds(), stored.mutedSounds()),
+			changed(defaults.teamAuto(), saved.teamAuto(), stored.teamAuto()),
+			changed(defaults.teamLeft(), saved.teamLeft(), stored.teamLeft()),
+			changed(defaults.teamMutedSounds(), saved.teamMutedSounds(), stored.teamMutedSounds()),
+			union(stored.autoChannels(), saved.autoChannels()),
+			union(stored.leftChannels(), saved.leftChannels()),
+			union(stored.mutedChannels(), saved.mutedChannels())
+		);
+	}
+	
+	private static <T> T changed(T initial, T saved, T stored) {
+		return (Objects.equals(initial, saved)) ? stored : saved;
+	}
+	
+	// Channel lists start out empty, so anything in the saved list was added.
+	private static List<String> union(List<String> stored, List<String> saved) {
+		return Stream.concat(stored.stream(), saved.stream()).distinct().toList();
+	}
+	
+	@Override
+	public void close() {
+		// Reads profiles whose saves are held back, so that they're written too.
+		pollChanges();
+		flush();
+		synchronized (database) {
+			try {
+				connection.close();
+			} catch (SQLException ignored) {}
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.storage;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * A profile's persisted toggles. Channels other than staff and team chat
+ * are stored by name, since channel ids are only stable while running.
+ */
+public record StoredProfile(
+	UUID uuid,
+	@NullOr Instant auto,
+	@NullOr Instant left,
+	boolean mutedSounds,
+	@NullOr Instant teamAuto,
+	@NullOr Instant teamLeft,
+	boolean teamMutedSounds,
+	List<String> autoChannels,
+	List<String> leftChannels,
+	List<String> mutedChannels
+) {
+	public static StoredProfile defaults(UUID uuid) {
+		return new StoredProfile(uuid, null, null, false, null, null, false, List.of(), List.of(), List.of());
+	}
+}
@@ -5,15 +5,62 @@
 package com.rezzedup.discordsrv.staffchat.util;
 
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
 import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 
 public final class ChatText {
 	private static final PlainTextComponentSerializer PLAIN = PlainTextComponentSerializer.plainText();
 
+	private static final int MISMATCH = -1;
+	private static final int UNKNOWN = -2;
+
 	private ChatText() {
 	}
 
 	public static String plain(Component component) {
 		return PLAIN.serialize(component);
 	}
+
+	/**
+	 * Checks whether the plain text of a component starts with the given prefix
+	 * without serializing it. Only the leading text content is inspected, and
+	 * the walk stops as soon as the prefix is matched or ruled out. Components
+	 * whose plain text isn't known up front (translatable, keybind, etc.) fall
+	 * back to full serialization.
+	 */
+	public static boolean startsWith(Component component, String prefix) {
+		if (prefix.isEmpty()) {
+			return true;
+		}
+
+		int matched = match(component, prefix, 0);
+		return (matched == UNKNOWN) ? plain(component).startsWith(prefix) : matched == prefix.length();
+	}
+
+	private static int match(Component component, String prefix, int matched) {
+		if (!(component instanceof TextComponent text)) {
+			return UNKNOWN;
+		}
+
+		String content = text.content();
+		int length = Math.min(content.length(), prefix.length() - matched);
+
+		if (!content.regionMatches(0, prefix, matched, length)) {
+			return MISMATCH;
+		}
+
+		matched += length;
+
+		for (Component child : component.children()) {
+			if (matched == prefix.length()) {
+				break;
+			}
+			matched = match(child, prefix, matched);
+			if (matched < 0) {
+				break;
+			}
+		}
+
+		return matched;
+	}
 }
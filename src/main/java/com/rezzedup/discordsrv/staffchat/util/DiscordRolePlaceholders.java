@@ -7,6 +7,9 @@ package com.rezzedup.discordsrv.staffchat.util;
 import java.awt.Color;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import github.scarsz.discordsrv.DiscordSRV;
 import github.scarsz.discordsrv.dependencies.jda.api.entities.Member;
@@ -17,13 +20,46 @@ import github.scarsz.discordsrv.util.DiscordUtil;
 import net.md_5.bungee.api.ChatColor;
 import pl.tlinkowski.annotation.basic.NullOr;
 
+/**
+ * Placeholders for messages sent from Discord. Role placeholders are
+ * computed once per member and cached until their roles change (see
+ * {@link #invalidate(long)}), with a time limit in case a change is missed.
+ */
 public final class DiscordRolePlaceholders {
+	private static final long MAX_AGE_MILLIS = 5 * 60 * 1000L;
+
+	private record Roles(
+		@NullOr String topRole,
+		@NullOr String topRoleAlias,
+		@NullOr ChatColor topRoleColor,
+		@NullOr String allRoles,
+		long cachedAt
+	) {}
+
+	private static final Map<Long, Roles> ROLES_BY_MEMBER = new ConcurrentHashMap<>();
+
 	private DiscordRolePlaceholders() {
 	}
 
+	public static void invalidate(long memberId) {
+		ROLES_BY_MEMBER.remove(memberId);
+	}
+
+	public static void invalidateAll() {
+		ROLES_BY_MEMBER.clear();
+	}
+
 	public static MappedPlaceholder forDiscordMessage(User author, Message message, String text) {
+		return forDiscordMessage(author, message, () -> text);
+	}
+
+	/**
+	 * Like {@link #forDiscordMessage(User, Message, String)}, but nothing,
+	 * including the member's roles, is resolved until it's used.
+	 */
+	public static MappedPlaceholder forDiscordMessage(User author, Message message, Supplier<String> text) {
 		MappedPlaceholder placeholders = new MappedPlaceholder();
-		placeholders.map("message", "content", "text").to(() -> text);
+		placeholders.map("message", "content", "text").to(text);
 		placeholders.map("user", "name", "username", "sender").to(author::getName);
 		placeholders.map("discriminator", "discrim").to(author::getDiscriminator);
 
@@ -35,26 +71,52 @@ public final class DiscordRolePlaceholders {
 		return placeholders;
 	}
 
-	private static void applyRolePlaceholders(MappedPlaceholder placeholders, Member member) {
+	private static Roles roles(Member member) {
+		long now = System.currentTimeMillis();
+		@NullOr Roles cached = ROLES_BY_MEMBER.get(member.getIdLong());
+		if (cached != null && now - cached.cachedAt() < MAX_AGE_MILLIS) {
+			return cached;
+		}
+
+		Roles roles = resolveRoles(member, now);
+		ROLES_BY_MEMBER.put(member.getIdLong(), roles);
+		return roles;
+	}
+
+	private static Roles resolveRoles(Member member, long now) {
 		DiscordSRV discordSrv = DiscordSRV.getPlugin();
 		List<Role> selectedRoles = discordSrv.getSelectedRoles(member);
 		@NullOr Role topRole = selectedRoles.isEmpty() ? null : selectedRoles.get(0);
 		if (topRole == null) {
-			return;
+			return new Roles(null, null, null, null, now);
 		}
 
-		placeholders.map("toprole").to(topRole::getName);
-		placeholders.map("toproleinitial").to(() -> topRole.getName().substring(0, 1));
-		placeholders.map("toprolealias").to(() ->
-			discordSrv.getRoleAliases().getOrDefault(
-				topRole.getId(),
-				discordSrv.getRoleAliases().getOrDefault(
-					topRole.getName().toLowerCase(Locale.ROOT),
-					topRole.getName()
-				)
-			)
+		Map<String, String> aliases = discordSrv.getRoleAliases();
+		String alias = aliases.getOrDefault(
+			topRole.getId(),
+			aliases.getOrDefault(topRole.getName().toLowerCase(Locale.ROOT), topRole.getName())
+		);
+
+		return new Roles(
+			topRole.getName(),
+			alias,
+			ChatColor.of(new Color(topRole.getColorRaw())),
+			DiscordUtil.getFormattedRoles(selectedRoles),
+			now
 		);
-		placeholders.map("toprolecolor").to(() -> ChatColor.of(new Color(topRole.getColorRaw())));
-		placeholders.map("allroles").to(() -> DiscordUtil.getFormattedRoles(selectedRoles));
+	}
+
+	private static void applyRolePlaceholders(MappedPlaceholder placeholders, Member member) {
+		Lazy<Roles> roles = Lazy.of(() -> roles(member));
+
+		// Without a selected role these resolve to nothing, leaving the placeholders as they are.
+		placeholders.map("toprole").to(() -> roles.get().topRole());
+		placeholders.map("toproleinitial").to(() -> {
+			@NullOr String topRole = roles.get().topRole();
+			return (topRole == null || topRole.isEmpty()) ? null : topRole.substring(0, 1);
+		});
+		placeholders.map("toprolealias").to(() -> roles.get().topRoleAlias());
+		placeholders.map("toprolecolor").to(() -> roles.get().topRoleColor());
+		placeholders.map("allroles").to(() -> roles.get().allRoles());
 	}
 }
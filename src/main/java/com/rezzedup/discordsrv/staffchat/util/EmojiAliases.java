@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import github.scarsz.discordsrv.dependencies.emoji.Emoji;
+import github.scarsz.discordsrv.dependencies.emoji.EmojiManager;
+import github.scarsz.discordsrv.dependencies.emoji.Fitzpatrick;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Replaces emoji with their {@code :alias:}, producing the same output as
+ * {@code EmojiParser.parseToAliases(String)}. Text without any non-ASCII
+ * characters can't contain emoji and is returned as is; everything else is
+ * converted in a single pass over a code point trie built from all known emoji.
+ */
+public final class EmojiAliases {
+	private EmojiAliases() {
+	}
+
+	private static final class Node {
+		private static final int[] NO_KEYS = new int[0];
+		private static final Node[] NO_CHILDREN = new Node[0];
+
+		private @NullOr Map<Integer, Node> building = new HashMap<>();
+		private int[] keys = NO_KEYS;
+		private Node[] children = NO_CHILDREN;
+		private @NullOr Emoji emoji;
+
+		Node child(int codePoint) {
+			return building.computeIfAbsent(codePoint, k -> new Node());
+		}
+
+		@NullOr Node get(int codePoint) {
+			int index = Arrays.binarySearch(keys, codePoint);
+			return (index >= 0) ? children[index] : null;
+		}
+
+		void freeze() {
+			Map<Integer, Node> built = building;
+			building = null;
+			if (built == null || built.isEmpty()) {
+				return;
+			}
+
+			keys = built.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+			children = new Node[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				children[i] = built.get(keys[i]);
+				children[i].freeze();
+			}
+		}
+	}
+
+	// Built on first use, since it covers thousands of emoji.
+	private static final class Trie {
+		private static final Node ROOT = build();
+		private static final Map<Integer, String> FITZPATRICK_TYPES = fitzpatrickTypes();
+
+		private static Node build() {
+			Node root = new Node();
+			for (Emoji emoji : EmojiManager.getAll()) {
+				Node node = root;
+				String unicode = emoji.getUnicode();
+				for (int i = 0; i < unicode.length(); ) {
+					int codePoint = unicode.codePointAt(i);
+					node = node.child(codePoint);
+					i += Character.charCount(codePoint);
+				}
+				node.emoji = emoji;
+			}
+			root.freeze();
+			return root;
+		}
+
+		private static Map<Integer, String> fitzpatrickTypes() {
+			Map<Integer, String> types = new HashMap<>();
+			for (Fitzpatrick fitzpatrick : Fitzpatrick.values()) {
+				types.put(fitzpatrick.unicode.codePointAt(0), fitzpatrick.name().toLowerCase());
+			}
+			return Map.copyOf(types);
+		}
+	}
+
+	public static String parseToAliases(String text) {
+		if (isAscii(text)) {
+			return text;
+		}
+
+		Node root = Trie.ROOT;
+		@NullOr StringBuilder builder = null;
+		int copied = 0;
+		int length = text.length();
+
+		for (int i = 0; i < length; ) {
+			int codePoint = text.codePointAt(i);
+
+			// Find the longest emoji starting here.
+			@NullOr Emoji match = null;
+			int matchEnd = i;
+			@NullOr Node node = root.get(codePoint);
+			int end = i + Character.charCount(codePoint);
+
+			while (node != null) {
+				if (node.emoji != null) {
+					match = node.emoji;
+					matchEnd = end;
+				}
+				if (end >= length) {
+					break;
+				}
+				int next = text.codePointAt(end);
+				node = node.get(next);
+				end += Character.charCount(next);
+			}
+
+			if (match == null) {
+				i += Character.charCount(codePoint);
+				continue;
+			}
+
+			if (builder == null) {
+				builder = new StringBuilder(length + 16);
+			}
+			builder.append(text, copied, i);
+
+			@NullOr String fitzpatrick = null;
+			if (match.supportsFitzpatrick() && matchEnd < length) {
+				int modifier = text.codePointAt(matchEnd);
+				fitzpatrick = Trie.FITZPATRICK_TYPES.get(modifier);
+				if (fitzpatrick != null) {
+					matchEnd += Character.charCount(modifier);
+				}
+			}
+
+			builder.append(':').append(match.getAliases().get(0));
+			if (fitzpatrick != null) {
+				builder.append('|').append(fitzpatrick);
+			}
+			builder.append(':');
+
+			i = matchEnd;
+			copied = matchEnd;
+		}
+
+		if (builder == null) {
+			return text;
+		}
+
+		builder.append(text, copied, length);
+		return builder.toString();
+	}
+
+	private static boolean isAscii(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.util;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * A value that's only computed the first time it's needed.
+ */
+public final class Lazy<T> implements Supplier<T> {
+	private @NullOr Supplier<? extends T> supplier;
+	private @NullOr T value;
+
+	private Lazy(Supplier<? extends T> supplier) {
+		this.supplier = supplier;
+	}
+
+	public static <T> Lazy<T> of(Supplier<? extends T> supplier) {
+		return new Lazy<>(Objects.requireNonNull(supplier, "supplier"));
+	}
+
+	@Override
+	public synchronized T get() {
+		@NullOr Supplier<? extends T> pending = supplier;
+		if (pending != null) {
+			value = pending.get();
+			supplier = null;
+		}
+		return value;
+	}
+}
@@ -31,17 +31,79 @@ import java.util.regex.Pattern;
 
 import pl.tlinkowski.annotation.basic.NullOr;
 
+/**
+ * Placeholder values looked up by name. Scopes can be chained: a child scope
+ * only holds its own mappings (the first few without any extra allocation)
+ * and falls back to its parent for everything else, so per-message scopes
+ * don't need to copy shared definitions.
+ */
 public class MappedPlaceholder {
 	public static final Pattern PATTERN = Pattern.compile("%(.+?)%");
 	
-	protected final Map<String, Supplier<?>> placeholders = new HashMap<>(32);
+	private static final int INLINE_SLOTS = 4;
+	
+	private final @NullOr MappedPlaceholder parent;
+	
+	// The first few mappings are kept inline, most per-message scopes never need more.
+	private final String[][] slotAliases = new String[INLINE_SLOTS][];
+	private final Supplier<?>[] slotSuppliers = new Supplier<?>[INLINE_SLOTS];
+	private int slots = 0;
+	
+	private @NullOr Map<String, Supplier<?>> overflow;
+	private boolean frozen = false;
+	
+	public MappedPlaceholder() {
+		this(null);
+	}
+	
+	public MappedPlaceholder(@NullOr MappedPlaceholder parent) {
+		this.parent = parent;
+	}
+	
+	/**
+	 * Creates a new scope on top of this one.
+	 */
+	public MappedPlaceholder child() {
+		return new MappedPlaceholder(this);
+	}
+	
+	/**
+	 * Prevents any further mappings in this scope, so that it can be safely
+	 * shared as a parent.
+	 */
+	public MappedPlaceholder freeze() {
+		frozen = true;
+		return this;
+	}
+	
+	private @NullOr Supplier<?> find(String key) {
+		for (@NullOr MappedPlaceholder scope = this; scope != null; scope = scope.parent) {
+			// Later mappings take precedence over earlier ones.
+			@NullOr Map<String, Supplier<?>> spilled = scope.overflow;
+			if (spilled != null) {
+				@NullOr Supplier<?> supplier = spilled.get(key);
+				if (supplier != null) {
+					return supplier;
+				}
+			}
+			
+			for (int i = scope.slots - 1; i >= 0; i--) {
+				for (String alias : scope.slotAliases[i]) {
+					if (alias.equals(key)) {
+						return scope.slotSuppliers[i];
+					}
+				}
+			}
+		}
+		return null;
+	}
 	
 	public String get(@NullOr String placeholder) {
 		if (Strings.isEmptyOrNull(placeholder)) {
 			return "";
 		}
 		
-		Supplier<?> supplier = placeholders.get(placeholder.toLowerCase(Locale.ROOT));
+		@NullOr Supplier<?> supplier = find(placeholder.toLowerCase(Locale.ROOT));
 		if (supplier == null) {
 			return "";
 		}
@@ -78,8 +140,40 @@ public class MappedPlaceholder {
 		return new Putter(placeholders);
 	}
 	
+	/**
+	 * Copies every mapping visible from the other scope into this one.
+	 * Prefer creating a {@link #child()} of it instead.
+	 */
 	public void inherit(MappedPlaceholder from) {
-		placeholders.putAll(from.placeholders);
+		if (from.parent != null) {
+			inherit(from.parent);
+		}
+		for (int i = 0; i < from.slots; i++) {
+			put(from.slotAliases[i], from.slotSuppliers[i]);
+		}
+		if (from.overflow != null) {
+			from.overflow.forEach((alias, supplier) -> put(new String[] {alias}, supplier));
+		}
+	}
+	
+	private void put(String[] aliases, Supplier<?> supplier) {
+		if (frozen) {
+			throw new IllegalStateException("Cannot map placeholders in a frozen scope");
+		}
+		
+		if (overflow == null && slots < INLINE_SLOTS) {
+			slotAliases[slots] = aliases;
+			slotSuppliers[slots] = supplier;
+			slots++;
+			return;
+		}
+		
+		if (overflow == null) {
+			overflow = new HashMap<>();
+		}
+		for (String alias : aliases) {
+			overflow.put(alias, supplier);
+		}
 	}
 	
 	public class Putter {
@@ -92,12 +186,32 @@ public class MappedPlaceholder {
 		public void to(Supplier<?> supplier) {
 			Objects.requireNonNull(supplier, "supplier");
 			
+			int valid = 0;
+			boolean normal = true;
 			for (String alias : aliases) {
 				if (Strings.isEmptyOrNull(alias)) {
-					continue;
+					normal = false;
+				} else {
+					valid++;
+					normal &= alias.equals(alias.toLowerCase(Locale.ROOT));
 				}
-				placeholders.put(alias.toLowerCase(Locale.ROOT), supplier);
 			}
+			
+			if (normal) {
+				// The varargs array belongs to this call, so it can be kept as is.
+				put(aliases, supplier);
+				return;
+			}
+			
+			String[] normalized = new String[valid];
+			int index = 0;
+			for (String alias : aliases) {
+				if (!Strings.isEmptyOrNull(alias)) {
+					normalized[index++] = alias.toLowerCase(Locale.ROOT);
+				}
+			}
+			
+			put(normalized, supplier);
 		}
 	}
 }
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free token buckets keyed by primitive {@code long} ids.
+ *
+ * <p>Keys and bucket states live in two parallel {@link AtomicLongArray}s
+ * (open addressing, linear probing). Each state packs the last refill time
+ * and the remaining milli-tokens into a single long so that a bucket can be
+ * updated with one compare-and-set.</p>
+ */
+public final class TokenBucketMap {
+	private static final long EMPTY = 0L;
+	private static final long EMPTY_REPLACEMENT = 0x9E3779B97F4A7C15L;
+
+	private static final int TOKEN_BITS = 22;
+	private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+	private static final long MILLI_TOKENS = 1000L;
+
+	/** Largest burst that fits into the packed state. */
+	public static final int MAX_BURST = (int) (TOKEN_MASK / MILLI_TOKENS);
+
+	private static final int MAX_PROBES = 16;
+
+	private final AtomicLongArray keys;
+	private final AtomicLongArray states;
+	private final AtomicInteger size = new AtomicInteger();
+	private final int mask;
+	private final long epoch;
+
+	public TokenBucketMap(int expectedKeys) {
+		int capacity = Integer.highestOneBit(Math.max(16, expectedKeys * 2 - 1)) << 1;
+		this.keys = new AtomicLongArray(capacity);
+		this.states = new AtomicLongArray(capacity);
+		this.mask = capacity - 1;
+		// Offset by one so that a packed state is never zero (zero means "untouched").
+		this.epoch = System.currentTimeMillis() - 1;
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Takes one token from the bucket identified by {@code key}, creating
+	 * a full bucket if this key hasn't been seen before.
+	 *
+	 * @param key              bucket id
+	 * @param burst            bucket capacity in whole tokens
+	 * @param refillPerSecond  tokens added back per second
+	 * @param nowMillis        current wall-clock time
+	 * @return {@code true} if a token was available
+	 */
+	public boolean tryAcquire(long key, int burst, double refillPerSecond, long nowMillis) {
+		if (burst <= 0) {
+			return false;
+		}
+
+		int slot = slotFor((key == EMPTY) ? EMPTY_REPLACEMENT : key);
+		if (slot < 0) {
+			// Saturated: fail open rather than rejecting legitimate messages.
+			return true;
+		}
+
+		long capacity = Math.min(burst, MAX_BURST) * MILLI_TOKENS;
+		long now = Math.max(1L, nowMillis - epoch);
+
+		for (;;) {
+			long state = states.get(slot);
+			long tokens = (state == EMPTY) ? capacity : state & TOKEN_MASK;
+			long last = (state == EMPTY) ? now : state >>> TOKEN_BITS;
+
+			// tokens/second * elapsed milliseconds = milli-tokens
+			long elapsed = Math.max(0L, now - last);
+			long refilled = Math.min(capacity, tokens + (long) (elapsed * refillPerSecond));
+			boolean allowed = refilled >= MILLI_TOKENS;
+			long remaining = (allowed) ? refilled - MILLI_TOKENS : refilled;
+
+			if (states.compareAndSet(slot, state, (now << TOKEN_BITS) | remaining)) {
+				return allowed;
+			}
+		}
+	}
+
+	private int slotFor(long key) {
+		int index = (int) mix(key) & mask;
+
+		for (int probe = 0; probe < MAX_PROBES; probe++) {
+			long existing = keys.get(index);
+
+			if (existing == key) {
+				return index;
+			}
+			if (existing == EMPTY) {
+				if (keys.compareAndSet(index, EMPTY, key)) {
+					size.incrementAndGet();
+					return index;
+				}
+				if (keys.get(index) == key) {
+					return index;
+				}
+			}
+
+			index = (index + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Forgets every bucket. Concurrent acquisitions during a clear may
+	 * observe a freshly-filled bucket, which is acceptable for rate limiting.
+	 */
+	public void clear() {
+		for (int i = 0; i <= mask; i++) {
+			states.set(i, EMPTY);
+			keys.set(i, EMPTY);
+		}
+		size.set(0);
+	}
+
+	private static long mix(long key) {
+		// Stafford variant 13 of the 64-bit finalizer used by SplittableRandom.
+		key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+		key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+		return key ^ (key >>> 31);
+	}
+}
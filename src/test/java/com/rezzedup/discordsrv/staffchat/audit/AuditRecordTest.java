@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.audit;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Decodes records as the audit store does when scanning a segment.
+ */
+public class AuditRecordTest {
+	private static final AuditRecord RECORD =
+		new AuditRecord(1_700_000_000_000L, (byte) 1, UUID.randomUUID(), "STAFF_CHAT", "Notch", "héllo wörld");
+	
+	// Offset of the text length: length prefix, timestamp, source, author, then channel and name.
+	private static int textLengthOffset(AuditRecord record) {
+		return Integer.BYTES + Long.BYTES + 1 + 2 * Long.BYTES
+			+ Short.BYTES + record.channel().length()
+			+ Short.BYTES + record.authorName().length();
+	}
+	
+	@Test
+	public void recordsSurviveEncoding() {
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		buffer.put(RECORD.encode()).put(RECORD.encode()).flip();
+		
+		assertEquals(RECORD, AuditRecord.decode(buffer));
+		assertEquals(RECORD, AuditRecord.decode(buffer));
+		assertNull(AuditRecord.decode(buffer));
+	}
+	
+	@Test
+	public void negativeLengthEndsTheRecords() {
+		byte[] encoded = RECORD.encode();
+		ByteBuffer.wrap(encoded).putInt(textLengthOffset(RECORD), -1);
+		
+		ByteBuffer buffer = ByteBuffer.wrap(encoded);
+		assertNull(AuditRecord.decode(buffer));
+		assertEquals(0, buffer.position());
+	}
+	
+	@Test
+	public void lengthPastTheRecordEndsTheRecords() {
+		byte[] first = RECORD.encode();
+		ByteBuffer.wrap(first).putInt(textLengthOffset(RECORD), first.length);
+		
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		buffer.put(first).put(RECORD.encode()).flip();
+		assertNull(AuditRecord.decode(buffer));
+		assertEquals(0, buffer.position());
+	}
+}
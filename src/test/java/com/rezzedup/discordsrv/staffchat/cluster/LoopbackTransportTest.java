@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Relays frames between in-process transports, and checks that relayed
+ * messages survive being framed.
+ */
+public class LoopbackTransportTest {
+	private static RelayMessage message(String origin, String text) {
+		return new RelayMessage(UUID.randomUUID(), origin, "STAFF_CHAT", RelayMessage.Kind.PLAYER, UUID.randomUUID(), "Notch", text);
+	}
+
+	@Test
+	public void framesReachEveryOtherMember() {
+		LoopbackTransport.Hub hub = new LoopbackTransport.Hub();
+		LoopbackTransport sender = hub.connect();
+		LoopbackTransport first = hub.connect();
+		LoopbackTransport second = hub.connect();
+
+		List<byte[]> toSender = new ArrayList<>();
+		List<byte[]> toFirst = new ArrayList<>();
+		List<byte[]> toSecond = new ArrayList<>();
+		sender.start(toSender::add);
+		first.start(toFirst::add);
+		second.start(toSecond::add);
+
+		byte[] frame = {1, 2, 3};
+		assertTrue(sender.send(frame));
+
+		assertEquals(0, toSender.size());
+		assertEquals(1, toFirst.size());
+		assertEquals(1, toSecond.size());
+		assertArrayEquals(frame, toFirst.get(0));
+		assertNotSame(frame, toFirst.get(0));
+	}
+
+	@Test
+	public void closedMembersReceiveNothing() {
+		LoopbackTransport.Hub hub = new LoopbackTransport.Hub();
+		LoopbackTransport sender = hub.connect();
+		LoopbackTransport closed = hub.connect();
+
+		List<byte[]> received = new ArrayList<>();
+		sender.start(frame -> {});
+		closed.start(received::add);
+		closed.close();
+
+		assertTrue(sender.send(new byte[] {1}));
+		assertEquals(0, received.size());
+	}
+
+	@Test
+	public void relayedMessagesSurviveFraming() throws IOException {
+		LoopbackTransport.Hub hub = new LoopbackTransport.Hub();
+		LoopbackTransport sender = hub.connect();
+		LoopbackTransport receiver = hub.connect();
+
+		List<RelayMessage> received = new ArrayList<>();
+		sender.start(frame -> {});
+		receiver.start(frame -> {
+			try {
+				received.addAll(RelayMessage.unframe(frame));
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+		});
+
+		List<RelayMessage> sent = List.of(message("lobby", "hello"), message("lobby", "héllo wörld 👍"));
+		assertTrue(sender.send(RelayMessage.frame(sent.stream().map(RelayMessage::encode).toList())));
+		assertEquals(sent, received);
+	}
+
+	@Test
+	public void messagesLongerThanModifiedUtf8Limit() throws IOException {
+		RelayMessage message = message("lobby", "ä".repeat(40_000));
+		assertEquals(List.of(message), RelayMessage.unframe(RelayMessage.frame(List.of(message.encode()))));
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Connects transports over the loopback interface to check that only
+ * listed peers that know the secret get their frames through.
+ */
+public class TcpTransportTest {
+	private static final Executor THREADS = task -> Thread.ofVirtual().start(task);
+	private static final Logger LOGGER = Logger.getLogger(TcpTransportTest.class.getName());
+	private static final String SECRET = "correct horse battery staple";
+
+	private final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+	private TcpTransport listener;
+	private TcpTransport sender;
+
+	private void listen(String peer) throws IOException {
+		listener = new TcpTransport(
+			new InetSocketAddress("127.0.0.1", 0), List.of(new InetSocketAddress(peer, 1)), SECRET, THREADS, LOGGER
+		);
+		listener.start(received::add);
+	}
+
+	private void connect(String secret) throws IOException {
+		sender = new TcpTransport(
+			new InetSocketAddress("127.0.0.1", 0),
+			List.of(new InetSocketAddress("127.0.0.1", listener.localPort())),
+			secret,
+			THREADS,
+			LOGGER
+		);
+		sender.start(frame -> {});
+	}
+
+	@AfterEach
+	public void close() {
+		if (sender != null) {
+			sender.close();
+		}
+		if (listener != null) {
+			listener.close();
+		}
+	}
+
+	@Test
+	public void peersWithTheSecretAreAccepted() throws Exception {
+		listen("127.0.0.1");
+		connect(SECRET);
+
+		byte[] frame = {4, 5, 6};
+		assertTrue(sender.send(frame));
+		assertArrayEquals(frame, received.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void wrongSecretIsRefused() throws Exception {
+		listen("127.0.0.1");
+		connect("not the secret");
+
+		assertFalse(sender.send(new byte[] {1}));
+		assertNull(received.poll(500, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void unlistedAddressesAreRefused() throws Exception {
+		// A documentation-only address: the sender connects from 127.0.0.1 instead.
+		listen("192.0.2.1");
+		connect(SECRET);
+
+		assertFalse(sender.send(new byte[] {1}));
+		assertNull(received.poll(500, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void emptySecretIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new TcpTransport(
+			new InetSocketAddress("127.0.0.1", 0), List.of(), "", THREADS, LOGGER
+		));
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.storage;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Shares profiles between stores on one in-memory database, as servers
+ * sharing a database would.
+ */
+public class SqlProfileStoreTest {
+	private static final Logger LOGGER = Logger.getLogger(SqlProfileStoreTest.class.getName());
+	
+	private static String database() {
+		return "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+	}
+	
+	private static StoredProfile muted(UUID uuid) {
+		return new StoredProfile(uuid, null, null, true, null, null, false, List.of(), List.of("events"), List.of());
+	}
+	
+	private static Optional<StoredProfile> read(String url, UUID uuid) throws SQLException {
+		SqlProfileStore reader = new SqlProfileStore(url, "reader", LOGGER);
+		try {
+			reader.preload(uuid);
+			return reader.load(uuid);
+		} finally {
+			reader.close();
+		}
+	}
+	
+	@Test
+	public void profilesSurviveRoundTrip() throws SQLException {
+		String url = database();
+		UUID uuid = UUID.randomUUID();
+		StoredProfile profile = new StoredProfile(
+			uuid, Instant.ofEpochMilli(1000), null, true, null, Instant.ofEpochMilli(2000), false,
+			List.of("events"), List.of("builders", "events"), List.of("builders")
+		);
+		
+		SqlProfileStore store = new SqlProfileStore(url, "lobby", LOGGER);
+		store.save(profile);
+		store.flush();
+		store.close();
+		
+		assertEquals(Optional.of(profile), read(url, uuid));
+	}
+	
+	@Test
+	public void changesAreSeenByOtherServersOnly() throws SQLException {
+		String url = database();
+		UUID uuid = UUID.randomUUID();
+		SqlProfileStore lobby = new SqlProfileStore(url, "lobby", LOGGER);
+		SqlProfileStore survival = new SqlProfileStore(url, "survival", LOGGER);
+		
+		survival.preload(uuid);
+		lobby.preload(uuid);
+		lobby.save(muted(uuid));
+		lobby.flush();
+		
+		assertEquals(Set.of(), lobby.pollChanges());
+		assertEquals(Set.of(uuid), survival.pollChanges());
+		assertEquals(Optional.of(muted(uuid)), survival.load(uuid));
+		assertEquals(Set.of(), survival.pollChanges());
+		
+		lobby.close();
+		survival.close();
+	}
+	
+	@Test
+	public void savesBeforeReadingKeepStoredToggles() throws SQLException {
+		String url = database();
+		UUID uuid = UUID.randomUUID();
+		SqlProfileStore lobby = new SqlProfileStore(url, "lobby", LOGGER);
+		lobby.save(muted(uuid));
+		lobby.flush();
+		
+		// Loaded before the row was read, so the toggle below starts from defaults.
+		SqlProfileStore survival = new SqlProfileStore(url, "survival", LOGGER);
+		assertEquals(Optional.empty(), survival.load(uuid));
+		
+		StoredProfile teamMuted = new StoredProfile(uuid, null, null, false, null, null, true, List.of(), List.of(), List.of());
+		survival.save(teamMuted);
+		survival.flush();
+		assertEquals(Optional.of(muted(uuid)), read(url, uuid));
+		
+		assertTrue(survival.pollChanges().contains(uuid));
+		survival.flush();
+		
+		StoredProfile both = new StoredProfile(uuid, null, null, true, null, null, true, List.of(), List.of("events"), List.of());
+		assertEquals(Optional.of(both), survival.load(uuid));
+		assertEquals(Optional.of(both), read(url, uuid));
+		
+		lobby.close();
+		survival.close();
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ * Copyright © 2017-2024 RezzedUp and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.rezzedup.discordsrv.staffchat.util;
+
+import org.junit.jupiter.api.Test;
+
+import github.scarsz.discordsrv.dependencies.emoji.Emoji;
+import github.scarsz.discordsrv.dependencies.emoji.EmojiManager;
+import github.scarsz.discordsrv.dependencies.emoji.EmojiParser;
+import github.scarsz.discordsrv.dependencies.emoji.Fitzpatrick;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks that {@link EmojiAliases} matches {@link EmojiParser#parseToAliases(String)}
+ * for every emoji it knows about.
+ */
+public class EmojiAliasesTest {
+	private static void assertMatchesParser(String text) {
+		assertEquals(EmojiParser.parseToAliases(text), EmojiAliases.parseToAliases(text), () -> "Text: " + text);
+	}
+
+	@Test
+	public void asciiIsReturnedAsIs() {
+		String text = "nothing to see here :smile: <3";
+		assertSame(text, EmojiAliases.parseToAliases(text));
+	}
+
+	@Test
+	public void everyEmojiMatchesParser() {
+		for (Emoji emoji : EmojiManager.getAll()) {
+			String unicode = emoji.getUnicode();
+			assertMatchesParser(unicode);
+			assertMatchesParser("before " + unicode + " after");
+			assertMatchesParser(unicode + unicode);
+		}
+	}
+
+	@Test
+	public void everyFitzpatrickVariantMatchesParser() {
+		for (Emoji emoji : EmojiManager.getAll()) {
+			for (Fitzpatrick fitzpatrick : Fitzpatrick.values()) {
+				assertMatchesParser("hi " + emoji.getUnicode() + fitzpatrick.unicode + "!");
+			}
+		}
+	}
+
+	@Test
+	public void mixedTextMatchesParser() {
+		assertMatchesParser("héllo wörld");
+		assertMatchesParser("👍🏽 thanks ❤️ see you 😀😀");
+		assertMatchesParser("🏽 modifier on its own");
+		assertMatchesParser("unpaired \uD83D surrogate");
+	}
+}